@@ -0,0 +1,341 @@
+/*
+ * file: DendronBenchmarks.java
+ */
+
+package bench;
+
+import dendron.Operator;
+import dendron.Output;
+import dendron.Profile;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.VerifiedProgram;
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks for each stage of the Dendron system: building a ParseTree
+ * from source text, interpreting it, compiling it, assembling machine
+ * code with InstructionReader, verifying it, and executing it on a
+ * Machine, with and without a profile attached.
+ *
+ * Every stage is measured on the checked-in corpus (source for the tree
+ * stages, assy for the machine stages), one operation being the whole
+ * corpus, and on synthetic programs, one operation being one program.
+ * Synthetic programs are generated from a fixed seed and four
+ * parameters, which can be given JMH-style, e.g. -p depth=4,16:
+ * <ul>
+ *     <li>statements: how many assignments the program makes</li>
+ *     <li>depth: how deep each expression tree is</li>
+ *     <li>variables: how many variables the program uses</li>
+ *     <li>mix: "arith" for the original five operators, "all" for every
+ *         operator in the registry</li>
+ * </ul>
+ *
+ * The stages run silently. Interpretation uses ParseTree.run(), which is
+ * interpret() without its banners and symbol table dump, and execution
+ * uses Machine.run() on a program verified beforehand, which is
+ * Machine.execute() without its verification and report.
+ * Printed values are thrown away. Results from a run on a reference
+ * machine are kept in bench/baseline.txt for comparison.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class DendronBenchmarks {
+
+    /** the seed for every synthetic program */
+    private static final long SEED = 42;
+
+    /**
+     * Run the benchmarks.
+     * @param args harness options (see {@link Harness#configure}),
+     *             -p name=value,... to set synthetic parameters, and
+     *             -source and -assy to name the corpus directories
+     *             (default "source" and "assy")
+     */
+    public static void main( String... args ) throws IOException {
+        Harness harness = new Harness();
+        List< String > rest = harness.configure( args );
+
+        Map< String, List< String > > params = new LinkedHashMap<>();
+        params.put( "statements", Arrays.asList( "1000" ) );
+        params.put( "depth", Arrays.asList( "2", "8" ) );
+        params.put( "variables", Arrays.asList( "16" ) );
+        params.put( "mix", Arrays.asList( "arith", "all" ) );
+        String sourceDir = "source";
+        String assyDir = "assy";
+        for ( int i = 0; i + 1 < rest.size(); i += 2 ) {
+            String value = rest.get( i + 1 );
+            switch ( rest.get( i ) ) {
+                case "-source": sourceDir = value; break;
+                case "-assy": assyDir = value; break;
+                case "-p":
+                    String[] setting = value.split( "=", 2 );
+                    if ( !params.containsKey( setting[ 0 ] ) ) {
+                        throw new IllegalArgumentException(
+                                "no parameter " + setting[ 0 ] );
+                    }
+                    params.put( setting[ 0 ], Arrays.asList( setting[ 1 ].split( "," ) ) );
+                    break;
+                default:
+                    throw new IllegalArgumentException( "unknown option " + rest.get( i ) );
+            }
+        }
+
+        Output.capture( Output.DISCARD );
+
+        System.out.print( harness.settings() );
+        System.out.println( "# JVM: " + System.getProperty( "java.vm.name" ) +
+                            " " + System.getProperty( "java.version" ) );
+        System.out.println( "# Processors: " +
+                            Runtime.getRuntime().availableProcessors() );
+
+        List< String > sources = new ArrayList<>();
+        for ( File file: files( sourceDir, ".txt" ) ) {
+            sources.add( new String( Files.readAllBytes( file.toPath() ),
+                                     StandardCharsets.UTF_8 ) );
+        }
+        List< String > assemblies = new ArrayList<>();
+        for ( File file: files( assyDir, ".denm" ) ) {
+            assemblies.add( file.getPath() );
+        }
+        stages( harness, "corpus", sources, assemblies );
+
+        for ( String statements: params.get( "statements" ) ) {
+            for ( String depth: params.get( "depth" ) ) {
+                for ( String variables: params.get( "variables" ) ) {
+                    for ( String mix: params.get( "mix" ) ) {
+                        String source = generate( Integer.parseInt( statements ),
+                                                  Integer.parseInt( depth ),
+                                                  Integer.parseInt( variables ),
+                                                  mix );
+                        File assembly = File.createTempFile( "dendron", ".denm" );
+                        assembly.deleteOnExit();
+                        try ( PrintWriter out = new PrintWriter( assembly, "UTF-8" ) ) {
+                            for ( Machine.Instruction instr:
+                                    new ParseTree( new Lexer( source ) ).compile() ) {
+                                out.println( instr );
+                            }
+                        }
+                        stages( harness,
+                                String.join( " ", "statements=" + statements,
+                                             "depth=" + depth,
+                                             "variables=" + variables,
+                                             "mix=" + mix ),
+                                Arrays.asList( source ),
+                                Arrays.asList( assembly.getPath() ) );
+                    }
+                }
+            }
+        }
+
+        System.out.println();
+        harness.report();
+    }
+
+    /**
+     * Benchmark every stage on one set of programs.
+     * @param harness the harness
+     * @param params a description of the programs
+     * @param sources the programs' source text
+     * @param assemblies the names of the programs' assembly files
+     */
+    private static void stages( Harness harness, String params,
+                                List< String > sources, List< String > assemblies ) {
+        int count = sources.size();
+        ParseTree[] trees = new ParseTree[ count ];
+        for ( int i = 0; i < count; ++i ) {
+            trees[ i ] = new ParseTree( new Lexer( sources.get( i ) ) );
+        }
+        List< List< Machine.Instruction > > programs = new ArrayList<>();
+        List< VerifiedProgram > verified = new ArrayList<>();
+        for ( String assembly: assemblies ) {
+            programs.add( InstructionReader.assemble( assembly ) );
+            verified.add( VerifiedProgram.verify( programs.get( programs.size() - 1 ) ) );
+        }
+        Machine machine = new Machine();
+
+        harness.run( "parse", params, () -> {
+            int result = 0;
+            for ( String source: sources ) {
+                result += System.identityHashCode(
+                        new ParseTree( new Lexer( source ) ) );
+            }
+            return result;
+        } );
+
+        harness.run( "interpret", params, () -> {
+            int result = 0;
+            for ( ParseTree tree: trees ) {
+                result += tree.run().size();
+            }
+            return result;
+        } );
+
+        harness.run( "compile", params, new Harness.Benchmark() {
+            private ParseTree[][] fresh;
+            private int next;
+
+            @Override
+            public void setup( int batch ) {
+                this.fresh = new ParseTree[ batch ][ count ];
+                for ( int b = 0; b < batch; ++b ) {
+                    for ( int i = 0; i < count; ++i ) {
+                        this.fresh[ b ][ i ] =
+                                new ParseTree( new Lexer( sources.get( i ) ) );
+                    }
+                }
+                this.next = 0;
+            }
+
+            @Override
+            public int run() {
+                int result = 0;
+                for ( ParseTree tree: this.fresh[ this.next++ ] ) {
+                    result += tree.compile().size();
+                }
+                return result;
+            }
+        } );
+
+        harness.run( "assemble", params, () -> {
+            int result = 0;
+            for ( String assembly: assemblies ) {
+                result += InstructionReader.assemble( assembly ).size();
+            }
+            return result;
+        } );
+
+        harness.run( "verify", params, () -> {
+            int result = 0;
+            for ( List< Machine.Instruction > program: programs ) {
+                result += VerifiedProgram.verify( program ).getMaxDepth();
+            }
+            return result;
+        } );
+
+        harness.run( "execute", params, () -> {
+            int result = 0;
+            for ( VerifiedProgram program: verified ) {
+                machine.run( program );
+                result += machine.getStackSize() + machine.getTable().size();
+            }
+            return result;
+        } );
+
+        Machine profiled = new Machine();
+        profiled.setProfile( new Profile( "machine" ) );
+        harness.run( "execute-profiled", params, () -> {
+            int result = 0;
+            for ( VerifiedProgram program: verified ) {
+                profiled.run( program );
+                result += profiled.getStackSize() + profiled.getTable().size();
+            }
+            return result;
+        } );
+    }
+
+    /**
+     * List the files in a directory with a given extension, by name.
+     * @param dirName the directory
+     * @param extension the extension, including its dot
+     * @return the files
+     * @throws IOException if the directory does not exist
+     */
+    private static File[] files( String dirName, String extension )
+            throws IOException {
+        File[] files = new File( dirName ).listFiles(
+                ( dir, name ) -> name.endsWith( extension ) );
+        if ( files == null ) {
+            throw new IOException( "Provided directory " + dirName +
+                                   " does not exist." );
+        }
+        Arrays.sort( files );
+        return files;
+    }
+
+    /**
+     * Generate a program. It first gives every variable a value, and
+     * then makes the given number of assignments, each of a random
+     * expression tree of the given depth over variables and constants.
+     * Division and remainder always have a nonzero constant on the
+     * right, so the program cannot fail.
+     * @param statements how many assignments to make after the first
+     * @param depth the depth of every expression
+     * @param variables how many variables to use
+     * @param mix "arith" or "all"
+     * @return the program's source text, one statement per line
+     */
+    static String generate( int statements, int depth, int variables, String mix ) {
+        Random random = new Random( SEED );
+        List< Operator > binary = new ArrayList<>();
+        List< Operator > unary = new ArrayList<>();
+        for ( Operator op: Operator.values() ) {
+            if ( mix.equals( "all" ) || op.getOpcode() <= Operator.NEG.getOpcode() ) {
+                ( op.getArity() == 2 ? binary : unary ).add( op );
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for ( int v = 0; v < variables; ++v ) {
+            text.append( ":= v" ).append( v ).append( ' ' )
+                .append( random.nextInt( 1000 ) + 1 ).append( '\n' );
+        }
+        for ( int s = 0; s < statements; ++s ) {
+            text.append( ":= v" ).append( random.nextInt( variables ) );
+            expression( text, random, depth, variables, binary, unary );
+            text.append( '\n' );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Append a random expression, in prefix form, to a program.
+     * @param text the program so far
+     * @param random the source of choices
+     * @param depth how deep the expression must be
+     * @param variables how many variables there are
+     * @param binary the binary operators to choose from
+     * @param unary the unary operators to choose from
+     */
+    private static void expression( StringBuilder text, Random random,
+                                    int depth, int variables,
+                                    List< Operator > binary,
+                                    List< Operator > unary ) {
+        text.append( ' ' );
+        if ( depth == 0 ) {
+            if ( random.nextBoolean() ) {
+                text.append( 'v' ).append( random.nextInt( variables ) );
+            }
+            else {
+                text.append( random.nextInt( 100 ) );
+            }
+        }
+        else if ( random.nextInt( 4 ) == 0 ) {
+            text.append( unary.get( random.nextInt( unary.size() ) ).getSymbol() );
+            expression( text, random, depth - 1, variables, binary, unary );
+        }
+        else {
+            Operator op = binary.get( random.nextInt( binary.size() ) );
+            text.append( op.getSymbol() );
+            expression( text, random, depth - 1, variables, binary, unary );
+            if ( op.fails( 0 ) ) {
+                text.append( ' ' ).append( random.nextInt( 9 ) + 1 );
+            }
+            else {
+                expression( text, random, depth - 1, variables, binary, unary );
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * file: Harness.java
+ */
+
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness in the manner of JMH, for a tree that has
+ * no build system to bring JMH in. Each benchmark gets warmup
+ * iterations, whose results are thrown away, and then measured
+ * iterations of a fixed length. The average time per operation is
+ * reported as a mean and standard deviation over the measured
+ * iterations, in JMH's table layout, and with -prof gc the bytes
+ * allocated per operation (JMH's gc.alloc.rate.norm) as well.
+ *
+ * Only the operations themselves are timed. Work a benchmark needs done
+ * first, such as making fresh trees to compile, is done in
+ * {@link Benchmark#setup}, untimed, once per batch of operations.
+ * Unless a batch size is given, each benchmark's batches are sized to
+ * take about a millisecond, so the clock is read rarely for cheap
+ * operations and setup stays small for expensive ones.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class Harness {
+
+    /**
+     * One benchmark: an operation to time, and how to prepare for it.
+     */
+    public interface Benchmark {
+        /**
+         * Prepare for the next batch of operations. Not timed.
+         * @param batch how many operations will follow
+         */
+        default void setup( int batch ) {
+        }
+
+        /**
+         * Perform one operation.
+         * @return a value that depends on the work done, so the work
+         * cannot be optimized away
+         */
+        int run();
+    }
+
+    /** the measurements of one benchmark */
+    private static class Score {
+        private final String name;
+        private final String params;
+        private final double[] time;
+        private final double[] alloc;
+
+        private Score( String name, String params,
+                       double[] time, double[] alloc ) {
+            this.name = name;
+            this.params = params;
+            this.time = time;
+            this.alloc = alloc;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ( com.sun.management.ThreadMXBean )
+                    ManagementFactory.getThreadMXBean();
+
+    private int warmups = 5;
+    private int iterations = 10;
+    private long millis = 200;
+    private int batch = 0;
+    private boolean gc = false;
+    private Pattern filter = null;
+    private final List< Score > scores = new ArrayList<>();
+
+    /** consumes benchmark results so the JIT cannot discard them */
+    private volatile int blackhole;
+
+    /**
+     * Read the harness's options, which follow JMH's names where they
+     * can: -wi warmup iterations, -i measured iterations, -r iteration
+     * time in milliseconds, -bs operations per batch (0, the default,
+     * for automatic), -prof gc, and a
+     * regular expression that benchmark names must contain.
+     * @param args the command-line arguments
+     * @return the arguments that were not harness options
+     */
+    public List< String > configure( String... args ) {
+        List< String > rest = new ArrayList<>();
+        for ( int i = 0; i < args.length; ++i ) {
+            switch ( args[ i ] ) {
+                case "-wi": this.warmups = Integer.parseInt( args[ ++i ] ); break;
+                case "-i": this.iterations = Integer.parseInt( args[ ++i ] ); break;
+                case "-r": this.millis = Long.parseLong( args[ ++i ] ); break;
+                case "-bs": this.batch = Integer.parseInt( args[ ++i ] ); break;
+                case "-prof":
+                    this.gc = args[ ++i ].equals( "gc" );
+                    break;
+                default:
+                    if ( args[ i ].startsWith( "-" ) ) {
+                        rest.add( args[ i ] );
+                        if ( i + 1 < args.length ) {
+                            rest.add( args[ ++i ] );
+                        }
+                    }
+                    else {
+                        this.filter = Pattern.compile( args[ i ] );
+                    }
+            }
+        }
+        if ( this.gc ) {
+            THREADS.setThreadAllocatedMemoryEnabled( true );
+        }
+        return rest;
+    }
+
+    /**
+     * @return a description of the run settings, for the report heading
+     */
+    public String settings() {
+        return String.format( "# Warmup: %d iterations, %d ms each%n" +
+                              "# Measurement: %d iterations, %d ms each%n" +
+                              "# Batch: %s%n" +
+                              "# Mode: average time, us/op%s%n",
+                              this.warmups, this.millis, this.iterations,
+                              this.millis,
+                              this.batch > 0 ? this.batch + " operations" :
+                                               "about 1 ms of operations",
+                              this.gc ? ", with allocation per op" : "" );
+    }
+
+    /**
+     * Warm up and measure a benchmark, unless the filter excludes it.
+     * @param name the benchmark's name
+     * @param params a description of its parameters
+     * @param benchmark the benchmark
+     */
+    public void run( String name, String params, Benchmark benchmark ) {
+        if ( this.filter != null && !this.filter.matcher( name ).find() ) {
+            return;
+        }
+        System.err.println( "# Running " + name + " " + params );
+        int batch = this.batch > 0 ? this.batch : calibrate( benchmark );
+        for ( int i = 0; i < this.warmups; ++i ) {
+            iteration( benchmark, batch );
+        }
+        double[] time = new double[ this.iterations ];
+        double[] alloc = new double[ this.iterations ];
+        for ( int i = 0; i < this.iterations; ++i ) {
+            double[] result = iteration( benchmark, batch );
+            time[ i ] = result[ 0 ];
+            alloc[ i ] = result[ 1 ];
+        }
+        this.scores.add( new Score( name, params, time, alloc ) );
+    }
+
+    /**
+     * Choose how many operations make about a millisecond, from the
+     * fastest of a few single operations.
+     * @param benchmark the benchmark
+     * @return the batch size, from 1 to 1024
+     */
+    private int calibrate( Benchmark benchmark ) {
+        long fastest = Long.MAX_VALUE;
+        int sink = 0;
+        for ( int i = 0; i < 10; ++i ) {
+            benchmark.setup( 1 );
+            long start = System.nanoTime();
+            sink += benchmark.run();
+            fastest = Math.min( fastest, System.nanoTime() - start );
+        }
+        this.blackhole = sink;
+        return ( int )Math.max( 1, Math.min( 1024, 1_000_000 / Math.max( 1, fastest ) ) );
+    }
+
+    /**
+     * Run batches of operations until the iteration time is used up.
+     * @param benchmark the benchmark
+     * @param batch how many operations to run between setups
+     * @return the microseconds and the bytes allocated per operation
+     */
+    private double[] iteration( Benchmark benchmark, int batch ) {
+        long thread = Thread.currentThread().getId();
+        long target = this.millis * 1_000_000;
+        long nanos = 0;
+        long bytes = 0;
+        long ops = 0;
+        int sink = 0;
+        while ( nanos < target ) {
+            benchmark.setup( batch );
+            long allocated = this.gc ? THREADS.getThreadAllocatedBytes( thread ) : 0;
+            long start = System.nanoTime();
+            for ( int i = 0; i < batch; ++i ) {
+                sink += benchmark.run();
+            }
+            nanos += System.nanoTime() - start;
+            if ( this.gc ) {
+                bytes += THREADS.getThreadAllocatedBytes( thread ) - allocated;
+            }
+            ops += batch;
+        }
+        this.blackhole = sink;
+        return new double[] { nanos / 1e3 / ops, ( double )bytes / ops };
+    }
+
+    /**
+     * Print every score measured so far as a table.
+     */
+    public void report() {
+        int width = "Benchmark".length();
+        int paramWidth = "(params)".length();
+        for ( Score score: this.scores ) {
+            width = Math.max( width, score.name.length() +
+                              ( this.gc ? ":gc.alloc.rate.norm".length() : 0 ) );
+            paramWidth = Math.max( paramWidth, score.params.length() );
+        }
+        String format = "%-" + width + "s  %-" + paramWidth + "s  %4s  %3s  %12s   %10s  %s%n";
+        System.out.printf( format, "Benchmark", "(params)", "Mode", "Cnt",
+                           "Score", "Error", "Units" );
+        for ( Score score: this.scores ) {
+            line( format, score.name, score.params, score.time, "us/op" );
+            if ( this.gc ) {
+                line( format, score.name + ":gc.alloc.rate.norm",
+                      score.params, score.alloc, "B/op" );
+            }
+        }
+    }
+
+    /**
+     * Print one row of the table.
+     * @param format the row format
+     * @param name the benchmark's name
+     * @param params its parameters
+     * @param samples one measurement per iteration
+     * @param units the units of the measurements
+     */
+    private void line( String format, String name, String params,
+                       double[] samples, String units ) {
+        double sum = 0;
+        double sumSquares = 0;
+        for ( double sample: samples ) {
+            sum += sample;
+            sumSquares += sample * sample;
+        }
+        double mean = sum / samples.length;
+        double deviation = Math.sqrt(
+                Math.max( 0, sumSquares / samples.length - mean * mean ) );
+        System.out.printf( format, name, params, "avgt", samples.length,
+                           String.format( "%.3f", mean ),
+                           String.format( "+- %.3f", deviation ), units );
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * file: DendronException.java
+ */
+
+package dendron;
+
+/**
+ * An error in a Dendron program, as reported by {@link Errors#report}.
+ * It carries the kind of error, the extra information that goes with
+ * it, and, when known, where in the source it was found. Programs that
+ * embed Dendron can catch it and carry on; the command-line entry
+ * points pass it to {@link Errors#exit} to stop the way Dendron always
+ * has.
+ *
+ * Errors found while reading a program are {@link Syntax} exceptions,
+ * and errors found while running one are {@link Execution} exceptions.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class DendronException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Errors.Type type;
+    private final Object info;
+    private final String source;
+    private final int line;
+    private final int column;
+
+    /**
+     * Create an exception.
+     * @param type the kind of error
+     * @param info if not null, an additional value describing the error
+     * @param source the name of the file being read, or null
+     * @param line the line where the error was found, or 0 if unknown
+     * @param column the column where the error was found, or 0 if unknown
+     */
+    protected DendronException( Errors.Type type, Object info,
+                                String source, int line, int column ) {
+        super( info == null ? type.getMessage() : type.getMessage() + ": " + info );
+        this.type = type;
+        this.info = info;
+        this.source = source;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Make the right kind of exception for an error.
+     * @param type the kind of error
+     * @param info if not null, an additional value describing the error
+     * @param source the name of the file being read, or null
+     * @param line the line where the error was found, or 0 if unknown
+     * @param column the column where the error was found, or 0 if unknown
+     * @return a Syntax or Execution exception
+     */
+    public static DendronException of( Errors.Type type, Object info,
+                                       String source, int line, int column ) {
+        return type.isSyntax() ? new Syntax( type, info, source, line, column )
+                               : new Execution( type, info, source, line, column );
+    }
+
+    /**
+     * @return the kind of error
+     */
+    public Errors.Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the additional value describing the error, or null
+     */
+    public Object getInfo() {
+        return this.info;
+    }
+
+    /**
+     * @return the name of the file being read, or null
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return the line where the error was found, or 0 if unknown
+     */
+    public int getLine() {
+        return this.line;
+    }
+
+    /**
+     * @return the column where the error was found, or 0 if unknown
+     */
+    public int getColumn() {
+        return this.column;
+    }
+
+    /**
+     * @return the position as "source:line:column", leaving out what is
+     * not known, or null if nothing is
+     */
+    public String getPosition() {
+        String where = this.line > 0 ? this.line + ":" + this.column : null;
+        if ( this.source == null ) {
+            return where;
+        }
+        return where == null ? this.source : this.source + ":" + where;
+    }
+
+    /**
+     * An error found while reading a program: bad tokens, statements
+     * that end too soon or too late, and bad assembly instructions.
+     */
+    public static class Syntax extends DendronException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @see DendronException#of
+         */
+        public Syntax( Errors.Type type, Object info,
+                       String source, int line, int column ) {
+            super( type, info, source, line, column );
+        }
+    }
+
+    /**
+     * An error found while running a program: division by zero, use
+     * of an uninitialized variable, and stack underflow.
+     */
+    public static class Execution extends DendronException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @see DendronException#of
+         */
+        public Execution( Errors.Type type, Object info,
+                          String source, int line, int column ) {
+            super( type, info, source, line, column );
+        }
+    }
+}
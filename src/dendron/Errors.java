@@ -14,8 +14,16 @@ import java.util.Map;
  *     <li>uninitialized variable in expression</li>
  *     <li>premature end of statement</li>
  *     <li>extra tokens at end of statement</li>
+ *     <li>machine stack underflow</li>
+ *     <li>illegal assembly instruction</li>
+ *     <li>undefined or duplicate label</li>
+ *     <li>machine stack depth that differs where paths join</li>
  * </ul>
  *
+ * Errors are reported by throwing a {@link DendronException}, so one bad
+ * program does not stop the Java virtual machine. Command-line entry
+ * points catch it and call {@link #exit}.
+ *
  * @author James Heliotis
  */
 public class Errors {
@@ -27,30 +35,78 @@ public class Errors {
     public static final int DENDRON_ABORT = 1;
 
     public enum Type {
-        DIVIDE_BY_ZERO( "divide by zero" ),
-        ILLEGAL_VALUE( "illegal value encountered in source" ),
-        UNINITIALIZED( "uninitialized variable in expression" ),
-        PREMATURE_END( "premature end of statement" ),
-        EXTRA_TOKENS( "extra tokens at end of statement" );
+        DIVIDE_BY_ZERO( "divide by zero", false ),
+        ILLEGAL_VALUE( "illegal value encountered in source", true ),
+        UNINITIALIZED( "uninitialized variable in expression", false ),
+        PREMATURE_END( "premature end of statement", true ),
+        EXTRA_TOKENS( "extra tokens at end of statement", true ),
+        STACK_UNDERFLOW( "machine stack underflow", false ),
+        ILLEGAL_INSTRUCTION( "illegal assembly instruction", true ),
+        ILLEGAL_LABEL( "undefined or duplicate label", true ),
+        STACK_MISMATCH( "machine stack depth differs where paths join", false );
 
         private final String message;
+        private final boolean syntax;
 
-        Type( String message ) {
+        Type( String message, boolean syntax ) {
             this.message = message;
+            this.syntax = syntax;
+        }
+
+        /**
+         * @return the text that describes this kind of error
+         */
+        public String getMessage() {
+            return this.message;
+        }
+
+        /**
+         * @return true if this kind of error is found while reading a
+         * program rather than while running it
+         */
+        public boolean isSyntax() {
+            return this.syntax;
         }
     }
 
     /**
-     * Report an error and stop the program. All output goes to standard error.
+     * Report an error whose position is not known.
      *
-     * @param type The kind of error, printed first
-     * @param info if not null, an additional value to be printed after a colon
+     * @param type The kind of error
+     * @param info if not null, an additional value describing the error
+     * @throws DendronException always
      */
     public static void report( Type type, Object info ) {
-        System.err.print( type.message );
-        if ( info != null ) {
-            System.err.print( ": " + info );
+        throw DendronException.of( type, info, null, 0, 0 );
+    }
+
+    /**
+     * Report an error found at a place in the program's source.
+     *
+     * @param type The kind of error
+     * @param info if not null, an additional value describing the error
+     * @param line the line where the error was found
+     * @param column the column where the error was found
+     * @throws DendronException always
+     */
+    public static void report( Type type, Object info, int line, int column ) {
+        throw DendronException.of( type, info, null, line, column );
+    }
+
+    /**
+     * Show a reported error and stop the program, as a command-line
+     * entry point should. Values the program printed are flushed first.
+     * The message goes to standard error, preceded by the file and
+     * position when the error was found in a named file.
+     *
+     * @param e the error
+     */
+    public static void exit( DendronException e ) {
+        Output.flush();
+        if ( e.getSource() != null ) {
+            System.err.print( e.getPosition() + ": " );
         }
+        System.err.print( e.getMessage() );
         System.exit( DENDRON_ABORT );
     }
 
@@ -64,4 +120,13 @@ public class Errors {
             System.out.printf( "%12s : %11d\n", ident, table.get( ident ) );
         }
     }
+
+    /**
+     * Show on standard output the values of all the variables in the table,
+     * mapping each slot back to its identifier.
+     * @param table the program's slot-indexed symbol table
+     */
+    public static void dump( SymbolTable table ) {
+        dump( table.toMap() );
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * file: Opcodes.java
+ */
+
+package dendron;
+
+/**
+ * The numbers of the Machine's instructions, as binary programs and the
+ * packed and register back ends encode them, and the assembly mnemonics
+ * of the instructions that are not operators. The {@link Operator}
+ * registry takes each operator's opcode from here and holds its
+ * mnemonic; every other part of the system gets opcodes and mnemonics
+ * from one of the two.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public final class Opcodes {
+
+    /** the instructions that are not operators */
+    public static final int PUSH = 0, LOAD = 1, STORE = 2, PRINT = 9, DUP = 10,
+            LABEL = 28, JMP = 29, JZ = 30, JNZ = 31;
+
+    /** the operators */
+    public static final int ADD = 3, SUB = 4, MUL = 5, DIV = 6, NEG = 7,
+            SQRT = 8, MOD = 11, MIN = 12, MAX = 13, ABS = 14, SHL = 15,
+            SHR = 16, USHR = 17, AND = 18, OR = 19, XOR = 20, NOT = 21,
+            EQ = 22, NE = 23, LT = 24, LE = 25, GT = 26, GE = 27;
+
+    /** one more than the largest opcode */
+    public static final int LIMIT = 32;
+
+    /** the mnemonic of each instruction that is not an operator */
+    private static final String[] MNEMONICS = new String[ LIMIT ];
+    static {
+        MNEMONICS[ PUSH ] = "PUSH";
+        MNEMONICS[ LOAD ] = "LOAD";
+        MNEMONICS[ STORE ] = "STORE";
+        MNEMONICS[ PRINT ] = "PRINT";
+        MNEMONICS[ DUP ] = "DUP";
+        MNEMONICS[ LABEL ] = "LABEL";
+        MNEMONICS[ JMP ] = "JMP";
+        MNEMONICS[ JZ ] = "JZ";
+        MNEMONICS[ JNZ ] = "JNZ";
+    }
+
+    /** Do not instantiate this class. */
+    private Opcodes() {}
+
+    /**
+     * @param opcode an opcode
+     * @return the mnemonic of the instruction with that opcode, if it is
+     * not an operator; otherwise null, and the mnemonic is the
+     * operator's
+     * @see Operator#getMnemonic()
+     */
+    public static String getMnemonic( int opcode ) {
+        return opcode >= 0 && opcode < LIMIT ? MNEMONICS[ opcode ] : null;
+    }
+}
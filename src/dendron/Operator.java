@@ -0,0 +1,306 @@
+/*
+ * file: Operator.java
+ */
+
+package dendron;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The registry of Dendron operators. Each entry holds everything the
+ * parser, the tree interpreter, the code generator, the assembler and
+ * the Machine back ends need to know about one operator: its source
+ * symbol, its arity, the kernel that computes it, its Machine opcode
+ * and its assembly mnemonic. Adding an operator means adding an entry
+ * here, with an opcode from {@link Opcodes}, where the opcodes of the
+ * other instructions are.
+ *
+ * The comparison operators yield 1 for true and 0 for false, which is
+ * what JZ and JNZ test.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public enum Operator {
+    ADD( "+", "ADD", Opcodes.ADD, ( a, b ) -> a + b ),
+    SUB( "-", "SUB", Opcodes.SUB, ( a, b ) -> a - b ),
+    MUL( "*", "MUL", Opcodes.MUL, ( a, b ) -> a * b ),
+    DIV( "/", "DIV", Opcodes.DIV, Operator::divide ),
+    NEG( "_", "NEG", Opcodes.NEG, a -> -a ),
+    SQRT( "#", "SQRT", Opcodes.SQRT, a -> ( int )Math.sqrt( a ) ),
+    MOD( "%", "MOD", Opcodes.MOD, Operator::modulo ),
+    MIN( "<?", "MIN", Opcodes.MIN, ( a, b ) -> Math.min( a, b ) ),
+    MAX( ">?", "MAX", Opcodes.MAX, ( a, b ) -> Math.max( a, b ) ),
+    ABS( "||", "ABS", Opcodes.ABS, a -> Math.abs( a ) ),
+    SHL( "<<", "SHL", Opcodes.SHL, ( a, b ) -> a << b ),
+    SHR( ">>", "SHR", Opcodes.SHR, ( a, b ) -> a >> b ),
+    USHR( ">>>", "USHR", Opcodes.USHR, ( a, b ) -> a >>> b ),
+    AND( "&", "AND", Opcodes.AND, ( a, b ) -> a & b ),
+    OR( "|", "OR", Opcodes.OR, ( a, b ) -> a | b ),
+    XOR( "^", "XOR", Opcodes.XOR, ( a, b ) -> a ^ b ),
+    NOT( "~", "NOT", Opcodes.NOT, a -> ~a ),
+    EQ( "==", "EQ", Opcodes.EQ, ( a, b ) -> a == b ? 1 : 0 ),
+    NE( "!=", "NE", Opcodes.NE, ( a, b ) -> a != b ? 1 : 0 ),
+    LT( "<", "LT", Opcodes.LT, ( a, b ) -> a < b ? 1 : 0 ),
+    LE( "<=", "LE", Opcodes.LE, ( a, b ) -> a <= b ? 1 : 0 ),
+    GT( ">", "GT", Opcodes.GT, ( a, b ) -> a > b ? 1 : 0 ),
+    GE( ">=", "GE", Opcodes.GE, ( a, b ) -> a >= b ? 1 : 0 );
+
+    /** one more than the largest opcode, of an operator or not */
+    public static final int OPCODE_LIMIT = Opcodes.LIMIT;
+
+    private static final Map< String, Operator > BY_SYMBOL = new HashMap<>();
+    private static final Map< String, Operator > BY_MNEMONIC = new HashMap<>();
+    private static final Operator[] BY_OPCODE = new Operator[ OPCODE_LIMIT ];
+    /** the operators whose symbols start with each ASCII character */
+    private static final Operator[][] SYMBOL_BUCKETS = new Operator[ 128 ][];
+    /** the operators whose mnemonics start with each ASCII character */
+    private static final Operator[][] MNEMONIC_BUCKETS = new Operator[ 128 ][];
+    static {
+        for ( Operator op: values() ) {
+            BY_SYMBOL.put( op.symbol, op );
+            BY_MNEMONIC.put( op.mnemonic, op );
+            BY_OPCODE[ op.opcode ] = op;
+            add( SYMBOL_BUCKETS, op.symbol.charAt( 0 ), op );
+            add( MNEMONIC_BUCKETS, op.mnemonic.charAt( 0 ), op );
+        }
+    }
+
+    private final String symbol;
+    private final String mnemonic;
+    private final int opcode;
+    private final IntBinaryOperator binary;
+    private final IntUnaryOperator unary;
+
+    Operator( String symbol, String mnemonic, int opcode,
+              IntBinaryOperator kernel ) {
+        this.symbol = symbol;
+        this.mnemonic = mnemonic;
+        this.opcode = opcode;
+        this.binary = kernel;
+        this.unary = null;
+    }
+
+    Operator( String symbol, String mnemonic, int opcode,
+              IntUnaryOperator kernel ) {
+        this.symbol = symbol;
+        this.mnemonic = mnemonic;
+        this.opcode = opcode;
+        this.binary = null;
+        this.unary = kernel;
+    }
+
+    private static void add( Operator[][] buckets, char first, Operator op ) {
+        Operator[] bucket = buckets[ first ];
+        if ( bucket == null ) {
+            buckets[ first ] = new Operator[] { op };
+        }
+        else {
+            Operator[] grown = new Operator[ bucket.length + 1 ];
+            System.arraycopy( bucket, 0, grown, 0, bucket.length );
+            grown[ bucket.length ] = op;
+            buckets[ first ] = grown;
+        }
+    }
+
+    private static int divide( int a, int b ) {
+        if ( b == 0 ) {
+            Errors.report( Errors.Type.DIVIDE_BY_ZERO, a + "/" + b );
+        }
+        return a / b;
+    }
+
+    private static int modulo( int a, int b ) {
+        if ( b == 0 ) {
+            Errors.report( Errors.Type.DIVIDE_BY_ZERO, a + "%" + b );
+        }
+        return a % b;
+    }
+
+    /**
+     * @return the operator's symbol in Dendron source
+     */
+    public String getSymbol() {
+        return this.symbol;
+    }
+
+    /**
+     * @return the operator's Machine assembly mnemonic
+     */
+    public String getMnemonic() {
+        return this.mnemonic;
+    }
+
+    /**
+     * @return the operator's Machine opcode
+     */
+    public int getOpcode() {
+        return this.opcode;
+    }
+
+    /**
+     * @return the number of operands, 1 or 2
+     */
+    public int getArity() {
+        return this.binary != null ? 2 : 1;
+    }
+
+    /**
+     * @return the kernel of a binary operator
+     */
+    public IntBinaryOperator getBinary() {
+        return this.binary;
+    }
+
+    /**
+     * @return the kernel of a unary operator
+     */
+    public IntUnaryOperator getUnary() {
+        return this.unary;
+    }
+
+    /**
+     * Apply a binary operator. Errors such as division by zero are
+     * reported through {@link Errors}.
+     * @param a the left operand
+     * @param b the right operand
+     * @return the result
+     */
+    public int apply( int a, int b ) {
+        return this.binary.applyAsInt( a, b );
+    }
+
+    /**
+     * Apply a unary operator.
+     * @param a the operand
+     * @return the result
+     */
+    public int apply( int a ) {
+        return this.unary.applyAsInt( a );
+    }
+
+    /**
+     * @return true if swapping the operands never changes the result
+     */
+    public boolean isCommutative() {
+        switch ( this ) {
+            case ADD: case MUL: case MIN: case MAX: case AND: case OR: case XOR:
+            case EQ: case NE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param right the right operand
+     * @return true if applying this operator with that right operand
+     * reports an error
+     */
+    public boolean fails( int right ) {
+        return ( this == DIV || this == MOD ) && right == 0;
+    }
+
+    /**
+     * @param symbol a token
+     * @return the operator with that symbol, or null
+     */
+    public static Operator forSymbol( String symbol ) {
+        return BY_SYMBOL.get( symbol );
+    }
+
+    /**
+     * Find an operator by its symbol without making a String.
+     * @param text a buffer holding the token
+     * @param length how many characters of the buffer the token fills
+     * @return the operator with that symbol, or null
+     */
+    public static Operator forSymbol( char[] text, int length ) {
+        if ( length == 0 || text[ 0 ] >= 128 ) {
+            return null;
+        }
+        Operator[] bucket = SYMBOL_BUCKETS[ text[ 0 ] ];
+        if ( bucket != null ) {
+            for ( Operator op: bucket ) {
+                String symbol = op.symbol;
+                if ( symbol.length() == length ) {
+                    int i = 1;
+                    while ( i < length && symbol.charAt( i ) == text[ i ] ) {
+                        ++i;
+                    }
+                    if ( i == length ) {
+                        return op;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param mnemonic an assembly mnemonic
+     * @return the operator with that mnemonic, or null
+     */
+    public static Operator forMnemonic( String mnemonic ) {
+        return BY_MNEMONIC.get( mnemonic );
+    }
+
+    /**
+     * Find an operator by its mnemonic without making a String.
+     * @param bytes the ASCII text being assembled
+     * @param start the index of the mnemonic's first byte
+     * @param length the number of bytes in the mnemonic
+     * @return the operator with that mnemonic, or null
+     */
+    public static Operator forMnemonic( ByteBuffer bytes, int start, int length ) {
+        if ( length == 0 || bytes.get( start ) < 0 ) {
+            return null;
+        }
+        byte first = bytes.get( start );
+        Operator[] bucket = MNEMONIC_BUCKETS[ first ];
+        if ( bucket != null ) {
+            for ( Operator op: bucket ) {
+                String mnemonic = op.mnemonic;
+                if ( mnemonic.length() == length ) {
+                    int i = 1;
+                    while ( i < length &&
+                            mnemonic.charAt( i ) == bytes.get( start + i ) ) {
+                        ++i;
+                    }
+                    if ( i == length ) {
+                        return op;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param opcode a Machine opcode
+     * @return the operator with that opcode, or null
+     */
+    public static Operator forOpcode( int opcode ) {
+        return opcode >= 0 && opcode < OPCODE_LIMIT ? BY_OPCODE[ opcode ] : null;
+    }
+
+    /**
+     * @param arity 1 or 2
+     * @return the symbols of all operators with that many operands
+     */
+    public static Collection< String > symbols( int arity ) {
+        List< String > result = new ArrayList<>();
+        for ( Operator op: values() ) {
+            if ( op.getArity() == arity ) {
+                result.add( op.symbol );
+            }
+        }
+        return result;
+    }
+}
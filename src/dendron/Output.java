@@ -0,0 +1,502 @@
+/*
+ * file: Output.java
+ */
+
+package dendron;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The output sinks, and the one currently in use.
+ *
+ * The default sink writes each value straight to System.out, as Dendron
+ * always has. Setting the system property dendron.output to "buffered"
+ * or "async" selects one of the faster sinks for the whole run instead;
+ * it is flushed before any other output (reports, dumps, errors) and
+ * when the program exits.
+ *
+ * A thread can also send its own values to a sink of its own (see
+ * {@link #capture}), so that programs run side by side on different
+ * threads each keep their output apart.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public final class Output {
+
+    /** the property that chooses the initial sink */
+    public static final String PROPERTY = "dendron.output";
+
+    /** default number of characters a buffered sink holds */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** default number of values an asynchronous sink's queue holds */
+    public static final int DEFAULT_QUEUE = 1024;
+
+    /** a sink that throws every value away, for benchmarks and tests */
+    public static final OutputSink DISCARD = new OutputSink() {
+        @Override
+        public void print( String prefix, int value, String suffix ) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    private static volatile OutputSink current = initial();
+
+    private static final ThreadLocal< OutputSink > CAPTURED = new ThreadLocal<>();
+
+    /** Do not instantiate this class. */
+    private Output() {}
+
+    /**
+     * Choose the first sink from the dendron.output property.
+     * @return the sink
+     */
+    private static OutputSink initial() {
+        String mode = System.getProperty( PROPERTY, "console" );
+        OutputSink sink;
+        switch ( mode ) {
+            case "buffered":
+                sink = new Buffered( console(), DEFAULT_CAPACITY, Flush.WHEN_FULL );
+                break;
+            case "async":
+                sink = new Async( console(), DEFAULT_QUEUE );
+                break;
+            default:
+                return new Console();
+        }
+        Runtime.getRuntime().addShutdownHook( new Thread( sink::close ) );
+        return sink;
+    }
+
+    /**
+     * @return a Writer onto System.out that is not closed by its users
+     */
+    private static Writer console() {
+        return new OutputStreamWriter( System.out ) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * @return the sink that printed values currently go to: the calling
+     * thread's own sink if it has one, otherwise the shared one
+     */
+    public static OutputSink current() {
+        OutputSink captured = CAPTURED.get();
+        return captured != null ? captured : current;
+    }
+
+    /**
+     * Send the values printed by the calling thread to a sink of its
+     * own, or, given null, back to the shared sink. Other threads are
+     * not affected.
+     * @param sink the thread's sink, or null
+     * @return the thread's previous sink, or null if it had none
+     */
+    public static OutputSink capture( OutputSink sink ) {
+        OutputSink previous = CAPTURED.get();
+        if ( sink == null ) {
+            CAPTURED.remove();
+        }
+        else {
+            CAPTURED.set( sink );
+        }
+        return previous;
+    }
+
+    /**
+     * Send printed values somewhere else. The old sink is flushed, but
+     * not closed.
+     * @param sink the new sink
+     * @return the previous sink
+     */
+    public static OutputSink use( OutputSink sink ) {
+        OutputSink previous = current;
+        previous.flush();
+        current = sink;
+        return previous;
+    }
+
+    /**
+     * Flush the current sink.
+     */
+    public static void flush() {
+        current().flush();
+    }
+
+    /**
+     * When a buffered sink writes out what it holds.
+     */
+    public enum Flush {
+        /** after every value, so output is never delayed */
+        EACH_VALUE,
+        /** after every value that ends a line */
+        EACH_LINE,
+        /** only when the buffer fills, or on request */
+        WHEN_FULL
+    }
+
+    /**
+     * Print each value directly on System.out.
+     */
+    public static class Console implements OutputSink {
+        /**
+         * Print the value with its prefix and suffix.
+         */
+        @Override
+        public void print( String prefix, int value, String suffix ) {
+            System.out.print( prefix + value + suffix );
+        }
+
+        /**
+         * Flush System.out.
+         */
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Gather formatted values in a character buffer, and write them to a
+     * Writer according to a flush policy.
+     */
+    public static class Buffered implements OutputSink {
+        private final Writer out;
+        private final int capacity;
+        private final Flush policy;
+        private final StringBuilder buffer;
+
+        /**
+         * Create a buffered sink.
+         * @param out where the text finally goes
+         * @param capacity how many characters to hold before writing
+         * @param policy when else to write
+         */
+        public Buffered( Writer out, int capacity, Flush policy ) {
+            this.out = out;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.buffer = new StringBuilder( capacity + 32 );
+        }
+
+        /**
+         * Append the value to the buffer, writing the buffer out if the
+         * flush policy calls for it.
+         */
+        @Override
+        public synchronized void print( String prefix, int value, String suffix ) {
+            this.buffer.append( prefix ).append( value ).append( suffix );
+            if ( this.policy == Flush.EACH_VALUE ||
+                 ( this.policy == Flush.EACH_LINE && suffix.endsWith( "\n" ) ) ) {
+                flush();
+            }
+            else if ( this.buffer.length() >= this.capacity ) {
+                drain();
+            }
+        }
+
+        /**
+         * Write the buffer to the Writer, without flushing the Writer.
+         */
+        private void drain() {
+            try {
+                this.out.append( this.buffer );
+                this.buffer.setLength( 0 );
+            }
+            catch ( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+        }
+
+        /**
+         * Write out and flush everything buffered so far.
+         */
+        @Override
+        public synchronized void flush() {
+            drain();
+            try {
+                this.out.flush();
+            }
+            catch ( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+        }
+
+        /**
+         * Flush and close the Writer.
+         */
+        @Override
+        public synchronized void close() {
+            flush();
+            try {
+                this.out.close();
+            }
+            catch ( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+        }
+    }
+
+    /**
+     * Keep everything printed in memory, for tests and for programs that
+     * embed Dendron.
+     */
+    public static class Collector implements OutputSink {
+        private final StringBuilder text = new StringBuilder();
+        private int[] values = new int[ 16 ];
+        private int count = 0;
+
+        /**
+         * Record the value and its formatted text.
+         */
+        @Override
+        public synchronized void print( String prefix, int value, String suffix ) {
+            this.text.append( prefix ).append( value ).append( suffix );
+            if ( this.count == this.values.length ) {
+                this.values = Arrays.copyOf( this.values, 2 * this.count );
+            }
+            this.values[ this.count++ ] = value;
+        }
+
+        /**
+         * Nothing needs to be written.
+         */
+        @Override
+        public void flush() {
+        }
+
+        /**
+         * @return the printed values, in order
+         */
+        public synchronized int[] getValues() {
+            return Arrays.copyOf( this.values, this.count );
+        }
+
+        /**
+         * Forget everything collected so far.
+         */
+        public synchronized void clear() {
+            this.text.setLength( 0 );
+            this.count = 0;
+        }
+
+        /**
+         * @return all the printed text, formatted as it would have
+         * appeared on the console
+         */
+        @Override
+        public synchronized String toString() {
+            return this.text.toString();
+        }
+    }
+
+    /**
+     * Format values on the program's thread and hand them, through a
+     * bounded queue, to a daemon thread that writes them. The program
+     * only waits if the queue is full or it asks for a flush.
+     *
+     * If the Writer fails, the writer thread stops and the failure is
+     * thrown, as an UncheckedIOException, from the next print, flush or
+     * close, as Buffered would have thrown it. Printing after close also
+     * throws, rather than waiting for a thread that has gone.
+     */
+    public static class Async implements OutputSink {
+        /** a request, in the queue, to flush and then count down */
+        private static class Mark {
+            private final CountDownLatch done = new CountDownLatch( 1 );
+            private final boolean last;
+
+            private Mark( boolean last ) {
+                this.last = last;
+            }
+        }
+
+        /** how long a waiting program goes between checks on the writer */
+        private static final long POLL_MILLIS = 10;
+
+        private final Writer out;
+        private final BlockingQueue< Object > queue;
+        private final Thread writer;
+        private volatile boolean closed;
+        private volatile IOException failure;
+
+        /**
+         * Create an asynchronous sink and start its writer thread.
+         * @param out where the text finally goes
+         * @param capacity how many values may wait in the queue
+         */
+        public Async( Writer out, int capacity ) {
+            this.out = out;
+            this.queue = new ArrayBlockingQueue<>( capacity );
+            this.closed = false;
+            this.writer = new Thread( this::write, "dendron-output" );
+            this.writer.setDaemon( true );
+            this.writer.start();
+        }
+
+        /**
+         * The writer thread's loop: write each value, flushing the Writer
+         * whenever the queue runs dry or a flush is requested.
+         */
+        private void write() {
+            try {
+                while ( true ) {
+                    Object item = this.queue.take();
+                    if ( item instanceof Mark ) {
+                        this.out.flush();
+                        Mark mark = ( Mark )item;
+                        if ( mark.last ) {
+                            this.out.close();
+                        }
+                        mark.done.countDown();
+                        if ( mark.last ) {
+                            return;
+                        }
+                    }
+                    else {
+                        this.out.write( ( String )item );
+                        if ( this.queue.isEmpty() ) {
+                            this.out.flush();
+                        }
+                    }
+                }
+            }
+            catch ( IOException ioe ) {
+                this.failure = ioe;
+                release();
+            }
+            catch ( InterruptedException ie ) {
+                this.failure = new InterruptedIOException( "output thread interrupted" );
+                release();
+            }
+        }
+
+        /**
+         * Once nothing more can be written, empty the queue and wake up
+         * every program waiting for a flush, so it sees the failure.
+         */
+        private void release() {
+            Object item;
+            while ( ( item = this.queue.poll() ) != null ) {
+                if ( item instanceof Mark ) {
+                    ( ( Mark )item ).done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Throw the writer thread's failure, if it has had one.
+         * @throws UncheckedIOException if the Writer failed
+         */
+        private void check() {
+            IOException ioe = this.failure;
+            if ( ioe != null ) {
+                throw new UncheckedIOException( ioe );
+            }
+        }
+
+        /**
+         * @return the exception thrown for output after the sink is closed
+         */
+        private static UncheckedIOException closedError() {
+            return new UncheckedIOException( new IOException( "output sink is closed" ) );
+        }
+
+        /**
+         * Format the value and queue it, waiting if the queue is full.
+         * @throws UncheckedIOException if the Writer has failed or the
+         * sink is closed
+         */
+        @Override
+        public void print( String prefix, int value, String suffix ) {
+            check();
+            if ( this.closed ) {
+                throw closedError();
+            }
+            put( prefix + value + suffix );
+        }
+
+        /**
+         * Wait until everything queued so far has been written.
+         * @throws UncheckedIOException if the Writer has failed
+         */
+        @Override
+        public void flush() {
+            await( new Mark( false ) );
+        }
+
+        /**
+         * Write everything queued, close the Writer and stop the thread.
+         * @throws UncheckedIOException if the Writer has failed
+         */
+        @Override
+        public synchronized void close() {
+            if ( !this.closed ) {
+                this.closed = true;
+                await( new Mark( true ) );
+            }
+        }
+
+        /**
+         * Queue a flush request and wait until the writer thread has
+         * carried it out, or has stopped.
+         * @param mark the request
+         */
+        private void await( Mark mark ) {
+            check();
+            if ( !this.writer.isAlive() ) {
+                return;
+            }
+            put( mark );
+            try {
+                while ( !mark.done.await( POLL_MILLIS, TimeUnit.MILLISECONDS ) ) {
+                    check();
+                    if ( !this.writer.isAlive() ) {
+                        break;
+                    }
+                }
+            }
+            catch ( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+            }
+            check();
+        }
+
+        /**
+         * Queue a value or request, waiting while the queue is full but
+         * giving up if the writer thread stops.
+         * @param item the formatted value or the request
+         * @throws UncheckedIOException if the Writer has failed or the
+         * sink is closed
+         */
+        private void put( Object item ) {
+            try {
+                while ( !this.queue.offer( item, POLL_MILLIS, TimeUnit.MILLISECONDS ) ) {
+                    check();
+                    if ( !this.writer.isAlive() ) {
+                        throw closedError();
+                    }
+                }
+            }
+            catch ( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * file: OutputSink.java
+ */
+
+package dendron;
+
+/**
+ * Where the values printed by a Dendron program go. Both the tree
+ * interpreter's Print statement and the Machine's PRINT instruction
+ * write through the current sink (see {@link Output#current()}), each in
+ * its own format, so that output can be buffered, collected or written
+ * by another thread without changing what is printed.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public interface OutputSink {
+
+    /**
+     * Write one printed value.
+     * @param prefix the text before the value, e.g. "=== "
+     * @param value the value
+     * @param suffix the text after the value
+     */
+    void print( String prefix, int value, String suffix );
+
+    /**
+     * Make sure everything printed so far has been written out, so
+     * that other output to the console appears after it.
+     */
+    void flush();
+
+    /**
+     * Flush, and release anything the sink holds. By default this
+     * just flushes.
+     */
+    default void close() {
+        flush();
+    }
+}
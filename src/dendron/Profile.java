@@ -0,0 +1,364 @@
+/*
+ * file: Profile.java
+ */
+
+package dendron;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the time goes in one execution: how many times each opcode ran,
+ * how long each source statement took, and how many times each variable
+ * was loaded and stored.
+ *
+ * Profiling is off unless the system property dendron.profile is set. It
+ * is read once, so with it unset no engine does any profiling work beyond
+ * a single check per program run. The property's value chooses the form
+ * of the report, which is shown after the usual execution report and
+ * symbol table dump:
+ * <ul>
+ *     <li>"text": a table on standard output</li>
+ *     <li>"json": one line of JSON on standard output</li>
+ *     <li>"json:<i>file</i>": one line of JSON appended to the file</li>
+ * </ul>
+ *
+ * The stack {@link dendron.machine.Machine} fills in every part of a
+ * profile when it runs with one attached; a statement there is a range
+ * of instructions, given by where each statement's code starts. The tree
+ * interpreter fills in the statement times and, through a
+ * {@link CountingTable}, the variable counts. The other back ends are
+ * not profiled.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public final class Profile {
+
+    /** the property that turns profiling on and chooses the report form */
+    public static final String PROPERTY = "dendron.profile";
+
+    /** the property's value, or null if profiling is off */
+    private static final String MODE = System.getProperty( PROPERTY );
+
+    /**
+     * One statement's share of the time.
+     */
+    private static final class Statement {
+        private final int first;
+        private final int last;
+        private long nanos;
+        private long runs;
+
+        private Statement( int first, int last ) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private final String engine;
+    private final Map< String, long[] > opcodes;
+    private final List< Statement > statements;
+    private final Map< String, long[] > variables;
+    private int[] statementStarts;
+
+    /**
+     * Start an empty profile.
+     * @param engine what is being profiled, e.g. "machine" or "tree"
+     */
+    public Profile( String engine ) {
+        this.engine = engine;
+        this.opcodes = new LinkedHashMap<>();
+        this.statements = new ArrayList<>();
+        this.variables = new LinkedHashMap<>();
+        this.statementStarts = null;
+    }
+
+    /**
+     * @return true if the dendron.profile property turned profiling on
+     */
+    public static boolean isEnabled() {
+        return MODE != null;
+    }
+
+    /**
+     * Say where each statement's code starts in the program that will be
+     * run, so that instructions can be charged to statements.
+     * @param starts the index of each statement's first instruction, in
+     *               increasing order, or null to treat the whole program
+     *               as one statement
+     */
+    public void setStatementStarts( int[] starts ) {
+        this.statementStarts = starts == null ? null : starts.clone();
+    }
+
+    /**
+     * @return the index of each statement's first instruction, or null
+     * if the program is one statement
+     */
+    public int[] getStatementStarts() {
+        return this.statementStarts == null ? null : this.statementStarts.clone();
+    }
+
+    /**
+     * Count executions of an opcode.
+     * @param opcode the instruction's mnemonic
+     * @param times how many more times it ran
+     */
+    public void countOpcode( String opcode, long times ) {
+        this.opcodes.computeIfAbsent( opcode, k -> new long[ 1 ] )[ 0 ] += times;
+    }
+
+    /**
+     * Count loads of a variable.
+     * @param ident the variable
+     * @param times how many more times it was loaded
+     */
+    public void countLoads( String ident, long times ) {
+        this.variables.computeIfAbsent( ident, k -> new long[ 2 ] )[ 0 ] += times;
+    }
+
+    /**
+     * Count stores into a variable.
+     * @param ident the variable
+     * @param times how many more times it was stored into
+     */
+    public void countStores( String ident, long times ) {
+        this.variables.computeIfAbsent( ident, k -> new long[ 2 ] )[ 1 ] += times;
+    }
+
+    /**
+     * Charge time to a statement.
+     * @param index the statement's position in the program, from 0
+     * @param first the statement's first instruction, or -1 if it was
+     *              not compiled
+     * @param last the statement's last instruction, or -1
+     * @param nanos how long it ran
+     */
+    public void time( int index, int first, int last, long nanos ) {
+        while ( this.statements.size() <= index ) {
+            this.statements.add( null );
+        }
+        Statement statement = this.statements.get( index );
+        if ( statement == null ) {
+            statement = new Statement( first, last );
+            this.statements.set( index, statement );
+        }
+        statement.nanos += nanos;
+        ++statement.runs;
+    }
+
+    /**
+     * Show the profile in the form the dendron.profile property chose,
+     * or as text if profiling was turned on some other way.
+     */
+    public void report() {
+        Output.flush();
+        if ( MODE == null || !MODE.startsWith( "json" ) ) {
+            display();
+        }
+        else if ( MODE.startsWith( "json:" ) ) {
+            try ( PrintWriter out = new PrintWriter(
+                    new FileWriter( MODE.substring( 5 ), true ) ) ) {
+                out.println( toJson() );
+            }
+            catch ( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+        }
+        else {
+            System.out.println( toJson() );
+        }
+    }
+
+    /**
+     * Show the profile on standard output as tables.
+     */
+    public void display() {
+        String title = "Profile (" + this.engine + ")";
+        System.out.println( title + "\n" + "=".repeat( title.length() ) );
+        if ( !this.opcodes.isEmpty() ) {
+            long total = 0;
+            for ( long[] count: this.opcodes.values() ) {
+                total += count[ 0 ];
+            }
+            System.out.printf( "\n%12s : %12s %7s\n", "opcode", "executed", "share" );
+            List< Map.Entry< String, long[] > > byCount =
+                    new ArrayList<>( this.opcodes.entrySet() );
+            byCount.sort( ( a, b ) -> Long.compare( b.getValue()[ 0 ],
+                                                    a.getValue()[ 0 ] ) );
+            for ( Map.Entry< String, long[] > entry: byCount ) {
+                long count = entry.getValue()[ 0 ];
+                System.out.printf( "%12s : %12d %6.1f%%\n", entry.getKey(),
+                                   count, 100.0 * count / total );
+            }
+            System.out.printf( "%12s : %12d\n", "total", total );
+        }
+        if ( !this.statements.isEmpty() ) {
+            long total = 0;
+            for ( Statement statement: this.statements ) {
+                total += statement == null ? 0 : statement.nanos;
+            }
+            System.out.printf( "\n%9s %13s %14s %7s\n",
+                               "statement", "instructions", "nanoseconds", "share" );
+            for ( int i = 0; i < this.statements.size(); ++i ) {
+                Statement statement = this.statements.get( i );
+                if ( statement == null ) {
+                    continue;
+                }
+                String range = statement.first < 0 ? "" :
+                               statement.first + "-" + statement.last;
+                System.out.printf( "%9d %13s %14d %6.1f%%\n", i, range,
+                                   statement.nanos,
+                                   total == 0 ? 0.0 : 100.0 * statement.nanos / total );
+            }
+            System.out.printf( "%9s %13s %14d\n", "total", "", total );
+        }
+        if ( !this.variables.isEmpty() ) {
+            System.out.printf( "\n%12s : %12s %12s\n", "variable", "loads", "stores" );
+            for ( Map.Entry< String, long[] > entry: this.variables.entrySet() ) {
+                System.out.printf( "%12s : %12d %12d\n", entry.getKey(),
+                                   entry.getValue()[ 0 ], entry.getValue()[ 1 ] );
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Write the profile as a single JSON object:
+     * <pre>
+     * {"engine":"machine",
+     *  "opcodes":{"PUSH":12,...},
+     *  "statements":[{"index":0,"first":0,"last":4,"runs":1,"nanos":870},...],
+     *  "variables":{"x":{"loads":3,"stores":1},...}}
+     * </pre>
+     * "first" and "last" are -1 for statements that were not compiled.
+     * @return the JSON text, on one line
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder( "{\"engine\":" );
+        quote( json, this.engine );
+        json.append( ",\"opcodes\":{" );
+        String separator = "";
+        for ( Map.Entry< String, long[] > entry: this.opcodes.entrySet() ) {
+            json.append( separator );
+            quote( json, entry.getKey() );
+            json.append( ':' ).append( entry.getValue()[ 0 ] );
+            separator = ",";
+        }
+        json.append( "},\"statements\":[" );
+        separator = "";
+        for ( int i = 0; i < this.statements.size(); ++i ) {
+            Statement statement = this.statements.get( i );
+            if ( statement == null ) {
+                continue;
+            }
+            json.append( separator )
+                .append( "{\"index\":" ).append( i )
+                .append( ",\"first\":" ).append( statement.first )
+                .append( ",\"last\":" ).append( statement.last )
+                .append( ",\"runs\":" ).append( statement.runs )
+                .append( ",\"nanos\":" ).append( statement.nanos )
+                .append( '}' );
+            separator = ",";
+        }
+        json.append( "],\"variables\":{" );
+        separator = "";
+        for ( Map.Entry< String, long[] > entry: this.variables.entrySet() ) {
+            json.append( separator );
+            quote( json, entry.getKey() );
+            json.append( ":{\"loads\":" ).append( entry.getValue()[ 0 ] )
+                .append( ",\"stores\":" ).append( entry.getValue()[ 1 ] )
+                .append( '}' );
+            separator = ",";
+        }
+        return json.append( "}}" ).toString();
+    }
+
+    /**
+     * Append a string to JSON text as a quoted, escaped JSON string.
+     * @param json the text being built
+     * @param text the string
+     */
+    private static void quote( StringBuilder json, String text ) {
+        json.append( '"' );
+        for ( int i = 0; i < text.length(); ++i ) {
+            char c = text.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                json.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 ) {
+                json.append( String.format( "\\u%04x", ( int )c ) );
+            }
+            else {
+                json.append( c );
+            }
+        }
+        json.append( '"' );
+    }
+
+    /**
+     * A symbol table that counts the loads and stores of each slot, for
+     * engines that read variables straight from the table. It is only
+     * made when profiling, so ordinary tables pay nothing for it.
+     */
+    public static class CountingTable extends SymbolTable {
+        private long[] loads = new long[ 16 ];
+        private long[] stores = new long[ 16 ];
+
+        /**
+         * Count the load, then fetch the value as usual.
+         */
+        @Override
+        public int get( int slot ) {
+            if ( slot >= this.loads.length ) {
+                grow( slot );
+            }
+            ++this.loads[ slot ];
+            return super.get( slot );
+        }
+
+        /**
+         * Count the store, then store the value as usual.
+         */
+        @Override
+        public void put( int slot, int value ) {
+            if ( slot >= this.stores.length ) {
+                grow( slot );
+            }
+            ++this.stores[ slot ];
+            super.put( slot, value );
+        }
+
+        private void grow( int slot ) {
+            int capacity = Math.max( 2 * this.loads.length, slot + 1 );
+            this.loads = Arrays.copyOf( this.loads, capacity );
+            this.stores = Arrays.copyOf( this.stores, capacity );
+        }
+
+        /**
+         * Add the counts so far, other than those of temporaries, to a
+         * profile, and start counting again from zero.
+         * @param profile the profile to fill in
+         */
+        public void collect( Profile profile ) {
+            int slots = Math.min( size(), this.loads.length );
+            for ( int slot = 0; slot < slots; ++slot ) {
+                if ( name( slot ).startsWith( TEMPORARY_PREFIX ) ||
+                     ( this.loads[ slot ] == 0 && this.stores[ slot ] == 0 ) ) {
+                    continue;
+                }
+                profile.countLoads( name( slot ), this.loads[ slot ] );
+                profile.countStores( name( slot ), this.stores[ slot ] );
+            }
+            Arrays.fill( this.loads, 0 );
+            Arrays.fill( this.stores, 0 );
+        }
+    }
+}
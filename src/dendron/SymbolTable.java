@@ -0,0 +1,147 @@
+/*
+ * file: SymbolTable.java
+ */
+
+package dendron;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A slot-indexed table of variable values. Each identifier is resolved
+ * once, ahead of execution, to a dense integer slot; from then on values
+ * are read and written through a primitive int frame, and a separate
+ * bitmap records which slots have been initialized.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class SymbolTable {
+    /**
+     * The start of the name of every compiler-generated temporary.
+     * No identifier can begin this way, and temporaries are left out
+     * of {@link #toMap()}.
+     */
+    public static final String TEMPORARY_PREFIX = "$";
+
+    /** initial number of slots allocated */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> slots;
+    private String[] names;
+    private int[] values;
+    private long[] initialized;
+    private int size;
+
+    /**
+     * Create an empty symbol table.
+     */
+    public SymbolTable() {
+        this.slots = new HashMap<>();
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY];
+        this.initialized = new long[(INITIAL_CAPACITY + 63) >>> 6];
+        this.size = 0;
+    }
+
+    /**
+     * Find the slot of an identifier, giving it the next free slot if it
+     * has not been seen before.
+     *
+     * @param ident the variable name
+     * @return the variable's slot index
+     */
+    public int slot(String ident) {
+        Integer slot = this.slots.get(ident);
+        if (slot == null) {
+            if (this.size == this.names.length) {
+                int capacity = this.names.length * 2;
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+                this.initialized = Arrays.copyOf(this.initialized, (capacity + 63) >>> 6);
+            }
+            slot = this.size++;
+            this.names[slot] = ident;
+            this.slots.put(ident, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Forget all identifiers and values, keeping the storage for reuse.
+     */
+    public void clear() {
+        this.slots.clear();
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.initialized, 0L);
+        this.size = 0;
+    }
+
+    /**
+     * Map a slot back to the identifier it was resolved from.
+     *
+     * @param slot a slot returned by {@link #slot(String)}
+     * @return the variable name
+     */
+    public String name(int slot) {
+        return this.names[slot];
+    }
+
+    /**
+     * @return the number of slots that have been resolved
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Tell whether a slot has been given a value.
+     *
+     * @param slot the slot index
+     * @return true if the slot has been assigned
+     */
+    public boolean isInitialized(int slot) {
+        return (this.initialized[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Fetch the value held in a slot. An uninitialized slot is reported
+     * as an error.
+     *
+     * @param slot the slot index
+     * @return the slot's current value
+     */
+    public int get(int slot) {
+        if ((this.initialized[slot >>> 6] & (1L << slot)) == 0) {
+            Errors.report(Errors.Type.UNINITIALIZED, this.names[slot]);
+        }
+        return this.values[slot];
+    }
+
+    /**
+     * Store a value into a slot, marking it initialized.
+     *
+     * @param slot the slot index
+     * @param value the new value
+     */
+    public void put(int slot, int value) {
+        this.values[slot] = value;
+        this.initialized[slot >>> 6] |= 1L << slot;
+    }
+
+    /**
+     * Copy the initialized variables, other than temporaries, into a
+     * name-keyed map, for display.
+     *
+     * @return a map from each assigned identifier to its value
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> result = new HashMap<>();
+        for (int slot = 0; slot < this.size; slot++) {
+            if (isInitialized(slot) && !this.names[slot].startsWith(TEMPORARY_PREFIX)) {
+                result.put(this.names[slot], this.values[slot]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * file: BinaryProgram.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Opcodes;
+import dendron.Operator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Save and load Machine programs in a compact binary form, so that large
+ * programs need not be re-assembled from text every time they are run.
+ *
+ * The format (version 2) is:
+ * <pre>
+ *   "DNDB"  version(1 byte)
+ *   identifier count (varint)
+ *   for each identifier: byte length (varint), UTF-8 bytes
+ *   instruction count (varint)
+ *   for each instruction: opcode (1 byte; see {@link Opcodes}), then
+ *       PUSH: the constant (zigzag varint)
+ *       LOAD, STORE: index into the identifier table (varint)
+ *       LABEL, JMP, JZ, JNZ: index into the identifier table (varint)
+ * </pre>
+ * Version 1 is the same without the label and branch instructions. A
+ * program with none of them is still written as version 1, so that it
+ * stays readable by older readers.
+ * A varint is an unsigned number in 7-bit groups, least significant
+ * first, with the high bit set on every byte but the last.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class BinaryProgram {
+
+    /** the first bytes of every binary program file */
+    private static final byte[] MAGIC = { 'D', 'N', 'D', 'B' };
+
+    /** the newest format version written and read by this class */
+    public static final int VERSION = 2;
+
+    /** Do not instantiate this class. */
+    private BinaryProgram() {}
+
+    /**
+     * Write a program to a file.
+     * @param program the instructions, e.g. from ParseTree.compile()
+     * @param fileName the name of the file to create
+     * @throws IOException if the file cannot be written
+     */
+    public static void write( List< Machine.Instruction > program,
+                              String fileName ) throws IOException {
+        try ( OutputStream out = new BufferedOutputStream(
+                new FileOutputStream( fileName ) ) ) {
+            write( program, out );
+        }
+    }
+
+    /**
+     * Write a program to a stream.
+     * @param program the instructions
+     * @param stream where to write them
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if the program contains an
+     * instruction the format cannot represent
+     */
+    public static void write( List< Machine.Instruction > program,
+                              OutputStream stream ) throws IOException {
+        Map< String, Integer > idents = new HashMap<>();
+        List< String > identList = new ArrayList<>();
+        int version = 1;
+        for ( Machine.Instruction instr: program ) {
+            String name = Machine.variable( instr );
+            if ( name == null ) {
+                name = label( instr );
+                if ( name != null ) {
+                    version = VERSION;
+                }
+            }
+            if ( name != null && !idents.containsKey( name ) ) {
+                idents.put( name, identList.size() );
+                identList.add( name );
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream( stream );
+        out.write( MAGIC );
+        out.writeByte( version );
+        writeVarint( out, identList.size() );
+        for ( String ident: identList ) {
+            byte[] bytes = ident.getBytes( StandardCharsets.UTF_8 );
+            writeVarint( out, bytes.length );
+            out.write( bytes );
+        }
+        writeVarint( out, program.size() );
+        for ( Machine.Instruction instr: program ) {
+            int opcode = opcode( instr );
+            out.writeByte( opcode );
+            if ( opcode == Opcodes.PUSH ) {
+                int value = ( ( Machine.PushConst )instr ).getConstant();
+                writeVarint( out, ( value << 1 ) ^ ( value >> 31 ) );
+            }
+            else if ( opcode == Opcodes.LOAD || opcode == Opcodes.STORE ) {
+                writeVarint( out, idents.get( Machine.variable( instr ) ) );
+            }
+            else if ( opcode >= Opcodes.LABEL ) {
+                writeVarint( out, idents.get( label( instr ) ) );
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Load a program by memory-mapping a file.
+     * @param fileName the name of a file made by {@link #write}
+     * @return a list of Machine instructions, ready to execute
+     * @throws IOException if the file cannot be read or is not a valid
+     * binary program
+     */
+    public static List< Machine.Instruction > load( String fileName )
+            throws IOException {
+        try ( FileChannel channel = FileChannel.open(
+                Paths.get( fileName ), StandardOpenOption.READ ) ) {
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            return decode( buffer );
+        }
+    }
+
+    /**
+     * Decode a program from its binary form.
+     * @param in the bytes, positioned at the start of the program
+     * @return a list of Machine instructions
+     * @throws IOException if the bytes are not a valid binary program
+     */
+    public static List< Machine.Instruction > decode( ByteBuffer in )
+            throws IOException {
+        try {
+            for ( byte b: MAGIC ) {
+                if ( in.get() != b ) {
+                    throw new IOException( "not a Dendron binary program" );
+                }
+            }
+            int version = in.get();
+            if ( version < 1 || version > VERSION ) {
+                throw new IOException(
+                        "unsupported binary program version " + version );
+            }
+
+            // Every occurrence of a variable can share one LOAD and one
+            // STORE instruction, since they resolve to the same slot.
+            int identCount = readVarint( in );
+            String[] idents = new String[ identCount ];
+            Machine.Load[] loads = new Machine.Load[ identCount ];
+            Machine.Store[] stores = new Machine.Store[ identCount ];
+            for ( int i = 0; i < identCount; ++i ) {
+                byte[] bytes = new byte[ readVarint( in ) ];
+                in.get( bytes );
+                String ident = new String( bytes, StandardCharsets.UTF_8 );
+                idents[ i ] = ident;
+                loads[ i ] = new Machine.Load( ident );
+                stores[ i ] = new Machine.Store( ident );
+            }
+
+            Machine.Instruction print = new Machine.Print();
+            Machine.Instruction dup = new Machine.Dup();
+            Machine.Instruction[] operators =
+                    new Machine.Instruction[ Operator.OPCODE_LIMIT ];
+
+            int count = readVarint( in );
+            List< Machine.Instruction > result = new ArrayList<>( count );
+            for ( int i = 0; i < count; ++i ) {
+                int opcode = in.get();
+                switch ( opcode ) {
+                    case Opcodes.PUSH:
+                        int zigzag = readVarint( in );
+                        result.add( new Machine.PushConst(
+                                ( zigzag >>> 1 ) ^ -( zigzag & 1 ) ) );
+                        break;
+                    case Opcodes.LOAD:
+                        result.add( loads[ readVarint( in ) ] );
+                        break;
+                    case Opcodes.STORE:
+                        result.add( stores[ readVarint( in ) ] );
+                        break;
+                    case Opcodes.PRINT: result.add( print ); break;
+                    case Opcodes.DUP: result.add( dup ); break;
+                    case Opcodes.LABEL:
+                        result.add( new Machine.Label(
+                                idents[ readVarint( in ) ] ) );
+                        break;
+                    case Opcodes.JMP:
+                        result.add( new Machine.Jump(
+                                idents[ readVarint( in ) ] ) );
+                        break;
+                    case Opcodes.JZ:
+                        result.add( new Machine.JumpIfZero(
+                                idents[ readVarint( in ) ] ) );
+                        break;
+                    case Opcodes.JNZ:
+                        result.add( new Machine.JumpIfNotZero(
+                                idents[ readVarint( in ) ] ) );
+                        break;
+                    default:
+                        Operator op = Operator.forOpcode( opcode );
+                        if ( op == null ) {
+                            throw new IOException( "bad opcode " + opcode +
+                                                   " at instruction " + i );
+                        }
+                        if ( operators[ opcode ] == null ) {
+                            operators[ opcode ] = Machine.instruction( op );
+                        }
+                        result.add( operators[ opcode ] );
+                }
+            }
+            return result;
+        }
+        catch ( RuntimeException e ) {
+            throw new IOException( "corrupt binary program", e );
+        }
+    }
+
+    /**
+     * @param instr an instruction
+     * @return its opcode
+     */
+    static int opcode( Machine.Instruction instr ) {
+        if ( instr instanceof Machine.PushConst ) return Opcodes.PUSH;
+        if ( instr instanceof Machine.Load ) return Opcodes.LOAD;
+        if ( instr instanceof Machine.Store ) return Opcodes.STORE;
+        if ( instr instanceof Machine.BinaryOp ) {
+            return ( ( Machine.BinaryOp )instr ).getOperator().getOpcode();
+        }
+        if ( instr instanceof Machine.UnaryOp ) {
+            return ( ( Machine.UnaryOp )instr ).getOperator().getOpcode();
+        }
+        if ( instr instanceof Machine.Print ) return Opcodes.PRINT;
+        if ( instr instanceof Machine.Dup ) return Opcodes.DUP;
+        if ( instr instanceof Machine.Label ) return Opcodes.LABEL;
+        if ( instr instanceof Machine.Jump ) return Opcodes.JMP;
+        if ( instr instanceof Machine.JumpIfZero ) return Opcodes.JZ;
+        if ( instr instanceof Machine.JumpIfNotZero ) return Opcodes.JNZ;
+        throw new IllegalArgumentException( "no opcode for " + instr );
+    }
+
+    /**
+     * @param instr an instruction
+     * @return the label a LABEL defines or a branch names, or null
+     */
+    static String label( Machine.Instruction instr ) {
+        if ( instr instanceof Machine.Label ) {
+            return ( ( Machine.Label )instr ).getName();
+        }
+        if ( instr instanceof Machine.Branch ) {
+            return ( ( Machine.Branch )instr ).getLabel();
+        }
+        return null;
+    }
+
+    private static void writeVarint( DataOutputStream out, int value )
+            throws IOException {
+        while ( ( value & ~0x7F ) != 0 ) {
+            out.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( value );
+    }
+
+    private static int readVarint( ByteBuffer in ) throws IOException {
+        int result = 0;
+        for ( int shift = 0; shift < 35; shift += 7 ) {
+            int b = in.get();
+            result |= ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 ) {
+                return result;
+            }
+        }
+        throw new IOException( "malformed varint" );
+    }
+
+    /**
+     * Convert an assembly file to binary, or load and execute a
+     * binary program.
+     * @param args an assembly file and the binary file to create, or
+     *             just a binary file to execute
+     */
+    public static void main( String[] args ) {
+        try {
+            if ( args.length == 2 ) {
+                List< Machine.Instruction > code =
+                        InstructionReader.assemble( args[ 0 ] );
+                if ( code != null ) {
+                    write( code, args[ 1 ] );
+                }
+            }
+            else if ( args.length == 1 ) {
+                Machine.execute( load( args[ 0 ] ) );
+            }
+            else {
+                System.err.println( "Usage: java BinaryProgram " +
+                        "[assembly-code-file] binary-code-file" );
+                System.exit( 1 );
+            }
+        }
+        catch ( IOException ioe ) {
+            System.err.println( ioe.getMessage() );
+            System.exit( 1 );
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
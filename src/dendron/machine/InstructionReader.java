@@ -4,38 +4,79 @@
 
 package dendron.machine;
 
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Opcodes;
+import dendron.Operator;
 import dendron.machine.Machine;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.function.Function;
 
 /**
  * Assemble instructions from a file.
  * This is a project debugging aid.
  *
+ * The file is memory-mapped and scanned byte by byte. Mnemonics are
+ * recognized, operators through the {@link Operator} registry, and
+ * numbers are converted where they lie, without making Strings; only
+ * variable and label names are decoded. The first problem found stops assembly
+ * with a {@link DendronException} that gives the file, line and column
+ * where it occurred. A label defined twice is reported where it is
+ * defined again, and a branch to a label that is never defined where
+ * the branch is.
+ *
  * @author James Heliotis
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
  */
 public class InstructionReader {
 
-    private static Map< String, Function< Scanner, Machine.Instruction> > gen
-            = new HashMap< String, Function< Scanner, Machine.Instruction > >()
-    {{
-        put( "PUSH", in -> { int i = in.nextInt();
-                             return new Machine.PushConst( i ); } );
-        put( "LOAD", in -> { String v = in.next();
-                             return new Machine.Load( v ); } );
-        put( "STORE", in -> { String v = in.next();
-                              return new Machine.Store( v ); } );
-        put( "ADD", in -> new Machine.Add() );
-        put( "SUB", in -> new Machine.Subtract() );
-        put( "MUL", in -> new Machine.Multiply() );
-        put( "DIV", in -> new Machine.Divide() );
-        put( "NEG", in -> new Machine.Negate() );
-        put( "SQRT", in -> new Machine.SquareRoot() );
-        put( "PRINT", in -> new Machine.Print() );
-    }};
+    /** the mnemonics of the instructions that are not operators, by opcode */
+    private static final byte[][] MNEMONICS = new byte[ Opcodes.LIMIT ][];
+    static {
+        for ( int opcode = 0; opcode < Opcodes.LIMIT; ++opcode ) {
+            String mnemonic = Opcodes.getMnemonic( opcode );
+            if ( mnemonic != null ) {
+                MNEMONICS[ opcode ] = ascii( mnemonic );
+            }
+        }
+    }
+
+    private final String fileName;
+    private final ByteBuffer in;
+    private final int end;
+    private int position;
+    private int line;
+    private int lineStart;
+    private int tokenStart;
+    private int tokenEnd;
+    private final Map< String, Machine.Load > loads;
+    private final Map< String, Machine.Store > stores;
+    private final Set< String > labels;
+    /** the line and column where each label not yet defined is first used */
+    private final Map< String, int[] > references;
+
+    private static byte[] ascii( String text ) {
+        return text.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    private InstructionReader( String fileName, ByteBuffer in ) {
+        this.fileName = fileName;
+        this.in = in;
+        this.end = in.limit();
+        this.position = 0;
+        this.line = 1;
+        this.lineStart = 0;
+        this.loads = new HashMap<>();
+        this.stores = new HashMap<>();
+        this.labels = new HashSet<>();
+        this.references = new LinkedHashMap<>();
+    }
 
     /**
      * Read instructions from the named file and translate them
@@ -44,19 +85,15 @@ public class InstructionReader {
      * @return a list of Machine.Instruction objects, ready to execute
      */
     public static List< Machine.Instruction > assemble( String assyFile ) {
-        try ( FileInputStream fileStr = new FileInputStream( assyFile ) ) {
-            List< Machine.Instruction > result = new LinkedList<>();
-            Scanner in = new Scanner( fileStr );
-            while ( in.hasNext() ) {
-                String mnemonic = in.next();
-                if ( gen.containsKey( mnemonic ) ) {
-                    result.add( gen.get( mnemonic ).apply( in ) );
-                }
-                else {
-                    System.err.println( "Illegal assembly instr " + mnemonic );
-                }
+        try ( FileChannel channel = FileChannel.open(
+                Paths.get( assyFile ), StandardOpenOption.READ ) ) {
+            if ( channel.size() > Integer.MAX_VALUE ) {
+                System.err.println( "File too large to assemble " + assyFile );
+                return null;
             }
-            return result;
+            ByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            return new InstructionReader( assyFile, buffer ).assemble();
         }
         catch( IOException ioe ) {
             System.err.println( "Could not open file " + assyFile );
@@ -64,6 +101,226 @@ public class InstructionReader {
         return null;
     }
 
+    /**
+     * Assemble every instruction in the buffer.
+     * @return the instructions, in order
+     */
+    private List< Machine.Instruction > assemble() {
+        Machine.Instruction print = new Machine.Print();
+        Machine.Instruction dup = new Machine.Dup();
+        Machine.Instruction[] operators =
+                new Machine.Instruction[ Operator.OPCODE_LIMIT ];
+
+        List< Machine.Instruction > result = new ArrayList<>();
+        while ( nextToken() ) {
+            int mnemonic = mnemonic();
+            switch ( mnemonic ) {
+                case Opcodes.PUSH:
+                    operand( Opcodes.PUSH );
+                    long value = number();
+                    if ( value == Long.MIN_VALUE ) {
+                        throw error( Errors.Type.ILLEGAL_VALUE, token() );
+                    }
+                    result.add( new Machine.PushConst( ( int )value ) );
+                    break;
+                case Opcodes.LOAD:
+                    operand( Opcodes.LOAD );
+                    result.add( this.loads.computeIfAbsent(
+                            token(), Machine.Load::new ) );
+                    break;
+                case Opcodes.STORE:
+                    operand( Opcodes.STORE );
+                    result.add( this.stores.computeIfAbsent(
+                            token(), Machine.Store::new ) );
+                    break;
+                case Opcodes.PRINT: result.add( print ); break;
+                case Opcodes.DUP: result.add( dup ); break;
+                case Opcodes.LABEL:
+                    operand( Opcodes.LABEL );
+                    String name = token();
+                    if ( !this.labels.add( name ) ) {
+                        throw error( Errors.Type.ILLEGAL_LABEL,
+                                     name + " is already defined" );
+                    }
+                    this.references.remove( name );
+                    result.add( new Machine.Label( name ) );
+                    break;
+                case Opcodes.JMP:
+                    result.add( new Machine.Jump( label( Opcodes.JMP ) ) );
+                    break;
+                case Opcodes.JZ:
+                    result.add( new Machine.JumpIfZero( label( Opcodes.JZ ) ) );
+                    break;
+                case Opcodes.JNZ:
+                    result.add( new Machine.JumpIfNotZero( label( Opcodes.JNZ ) ) );
+                    break;
+                default:
+                    Operator op = Operator.forMnemonic( this.in, this.tokenStart,
+                            this.tokenEnd - this.tokenStart );
+                    if ( op == null ) {
+                        throw error( Errors.Type.ILLEGAL_INSTRUCTION, token() );
+                    }
+                    if ( operators[ op.getOpcode() ] == null ) {
+                        operators[ op.getOpcode() ] = Machine.instruction( op );
+                    }
+                    result.add( operators[ op.getOpcode() ] );
+            }
+        }
+        if ( !this.references.isEmpty() ) {
+            Map.Entry< String, int[] > undefined =
+                    this.references.entrySet().iterator().next();
+            int[] where = undefined.getValue();
+            throw DendronException.of( Errors.Type.ILLEGAL_LABEL,
+                                       undefined.getKey() + " is never defined",
+                                       this.fileName, where[ 0 ], where[ 1 ] );
+        }
+        return result;
+    }
+
+    /**
+     * Read the label a branch names, remembering where it was first
+     * used if it is not yet defined.
+     * @param opcode the branch's opcode, for the error message
+     * @return the label's name
+     */
+    private String label( int opcode ) {
+        operand( opcode );
+        String name = token();
+        if ( !this.labels.contains( name ) ) {
+            this.references.putIfAbsent( name, new int[] { this.line, column() } );
+        }
+        return name;
+    }
+
+    /**
+     * Move to the next white-space-delimited token, keeping track of
+     * line numbers.
+     * @return false if the end of the file has been reached
+     */
+    private boolean nextToken() {
+        while ( this.position < this.end ) {
+            byte b = this.in.get( this.position );
+            if ( b == '\n' ) {
+                ++this.line;
+                this.lineStart = this.position + 1;
+            }
+            else if ( b != ' ' && b != '\t' && b != '\r' && b != '\f' ) {
+                break;
+            }
+            ++this.position;
+        }
+        if ( this.position == this.end ) {
+            return false;
+        }
+        this.tokenStart = this.position;
+        while ( this.position < this.end ) {
+            byte b = this.in.get( this.position );
+            if ( b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == '\n' ) {
+                break;
+            }
+            ++this.position;
+        }
+        this.tokenEnd = this.position;
+        return true;
+    }
+
+    /**
+     * Move to the operand of an instruction, reporting its absence at
+     * the instruction's mnemonic, since the file has nothing after it.
+     * @param opcode the instruction's opcode, for the error message
+     */
+    private void operand( int opcode ) {
+        int line = this.line;
+        int column = column();
+        if ( !nextToken() ) {
+            throw DendronException.of( Errors.Type.PREMATURE_END,
+                                       "missing operand for " +
+                                       Opcodes.getMnemonic( opcode ),
+                                       this.fileName, line, column );
+        }
+    }
+
+    /**
+     * @return the opcode of the instruction the current token names, if
+     * it is not an operator, or else -1
+     */
+    private int mnemonic() {
+        int length = this.tokenEnd - this.tokenStart;
+        for ( int m = 0; m < MNEMONICS.length; ++m ) {
+            byte[] name = MNEMONICS[ m ];
+            if ( name != null && name.length == length ) {
+                int i = 0;
+                while ( i < length &&
+                        this.in.get( this.tokenStart + i ) == name[ i ] ) {
+                    ++i;
+                }
+                if ( i == length ) {
+                    return m;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Convert the current token to an int where it lies.
+     * @return the value, or Long.MIN_VALUE if the token is not an int
+     */
+    private long number() {
+        int i = this.tokenStart;
+        boolean negative = false;
+        byte first = this.in.get( i );
+        if ( first == '-' || first == '+' ) {
+            negative = first == '-';
+            ++i;
+        }
+        if ( i == this.tokenEnd ) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for ( ; i < this.tokenEnd; ++i ) {
+            byte b = this.in.get( i );
+            if ( b < '0' || b > '9' ) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + ( b - '0' );
+            if ( value > ( long )Integer.MAX_VALUE + 1 ) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    /**
+     * @return the current token's text
+     */
+    private String token() {
+        byte[] bytes = new byte[ this.tokenEnd - this.tokenStart ];
+        for ( int i = 0; i < bytes.length; ++i ) {
+            bytes[ i ] = this.in.get( this.tokenStart + i );
+        }
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * @return the column where the current token starts, counting from 1
+     */
+    private int column() {
+        return this.tokenStart - this.lineStart + 1;
+    }
+
+    /**
+     * Make the report of a problem at the current token's location.
+     * @param type the kind of problem
+     * @param info what is wrong
+     * @return the exception to throw
+     */
+    private DendronException error( Errors.Type type, Object info ) {
+        return DendronException.of( type, info, this.fileName, this.line,
+                                    column() );
+    }
+
     /**
      * Assemble and execute some Dendron machine code.
      * @param args the name of the assembly language source file
@@ -74,7 +331,12 @@ public class InstructionReader {
                     "Usage: java InstructionReader assembly-code-file" );
             System.exit( 1 );
         }
-        List< Machine.Instruction > code = assemble( args[ 0 ] );
-        Machine.execute( code );
+        try {
+            List< Machine.Instruction > code = assemble( args[ 0 ] );
+            Machine.execute( code );
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
     }
 }
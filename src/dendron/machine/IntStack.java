@@ -0,0 +1,101 @@
+/*
+ * file: IntStack.java
+ */
+
+package dendron.machine;
+
+import dendron.Errors;
+
+import java.util.Arrays;
+
+/**
+ * The Machine's operand stack: a growable stack of primitive ints.
+ * Unlike java.util.Stack, nothing is boxed and no method is synchronized.
+ *
+ * The Machine itself only runs {@link VerifiedProgram}s. It reserves the
+ * room a program needs before the program starts, and its instructions
+ * then use {@link #pushUnchecked} and {@link #popUnchecked}, which check
+ * nothing.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class IntStack {
+    /** initial number of elements the stack can hold before growing */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] elements;
+    private int size;
+
+    /**
+     * Create an empty stack.
+     */
+    public IntStack() {
+        this.elements = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Put a value on top of the stack, doubling the storage if it is full.
+     * @param value the value to push
+     */
+    public void push( int value ) {
+        if ( this.size == this.elements.length ) {
+            this.elements = Arrays.copyOf( this.elements, this.size * 2 );
+        }
+        this.elements[ this.size++ ] = value;
+    }
+
+    /**
+     * Remove and return the value on top of the stack. Popping an empty
+     * stack is reported as an error.
+     * @return the former top value
+     */
+    public int pop() {
+        if ( this.size == 0 ) {
+            Errors.report( Errors.Type.STACK_UNDERFLOW, null );
+        }
+        return this.elements[ --this.size ];
+    }
+
+    /**
+     * Make sure the stack can hold a number of values without growing.
+     * @param capacity the number of values
+     */
+    public void reserve( int capacity ) {
+        if ( capacity > this.elements.length ) {
+            this.elements = Arrays.copyOf( this.elements, capacity );
+        }
+    }
+
+    /**
+     * Put a value on top of the stack, which must have room for it.
+     * @param value the value to push
+     * @see #reserve
+     */
+    public void pushUnchecked( int value ) {
+        this.elements[ this.size++ ] = value;
+    }
+
+    /**
+     * Remove and return the value on top of the stack, which must not
+     * be empty.
+     * @return the former top value
+     */
+    public int popUnchecked() {
+        return this.elements[ --this.size ];
+    }
+
+    /**
+     * @return the number of values on the stack
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Empty the stack, keeping its storage for reuse.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+}
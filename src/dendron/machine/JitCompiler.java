@@ -0,0 +1,551 @@
+/*
+ * file: JitCompiler.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Operator;
+import dendron.SymbolTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A back end that translates a list of Machine instructions into
+ * JVM bytecode and loads it as a hidden class, so that the whole
+ * program runs as a single method HotSpot can optimize.
+ *
+ * Because Machine programs are straight-line code, the stack depth and
+ * which variables have been stored are known at every instruction.
+ * Programs are checked by {@link VerifiedProgram} first, so one that
+ * would underflow the stack is never compiled. Each variable lives in a
+ * JVM local, arithmetic compiles to the matching JVM instruction, and a
+ * load of a variable that cannot yet have a value compiles to the same
+ * error report the interpreting Machine would make at that point.
+ * Division, square root and printing call small static helpers here
+ * so the generated method needs no branches (and hence no stack map
+ * frames); HotSpot inlines them.
+ *
+ * Variables are copied back to the symbol table at the end. A helper
+ * that can report an error (division, modulus, printing and the load
+ * of an uninitialized variable) is preceded by a copy of the variables
+ * stored since the last copy, so an error leaves the symbol table as
+ * the interpreting Machine would. Each store is copied back at most
+ * once, as on the Machine.
+ *
+ * Programs with labels and branches are not compiled; callers fall back
+ * to the interpreting Machine for them, as for any other instruction
+ * this back end does not know.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class JitCompiler {
+
+    /** the most bytecode one JVM method may have */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /** the most locals one JVM method may have */
+    private static final int MAX_LOCALS = 65535;
+
+    /** class file version 52 (Java 8) requires no frames for branch-free code */
+    private static final int CLASS_VERSION = 52;
+
+    /** descriptor of the generated entry point */
+    private static final String RUN_DESCRIPTOR = "(Ldendron/SymbolTable;)V";
+
+    /** internal name of this class, where the runtime helpers live */
+    private static final String HELPERS = "dendron/machine/JitCompiler";
+
+    /**
+     * A Machine program that has been compiled to a hidden class.
+     */
+    public static class Program {
+        private final MethodHandle entry;
+        private final String[] idents;
+        private final int stackSize;
+
+        private Program( MethodHandle entry, String[] idents, int stackSize ) {
+            this.entry = entry;
+            this.idents = idents;
+            this.stackSize = stackSize;
+        }
+
+        /**
+         * Reset a Machine and run this program against its symbol table.
+         * Variables are resolved in the same order the interpreting
+         * Machine resolves them.
+         * @param machine the execution context
+         */
+        public void run( Machine machine ) {
+            machine.reset();
+            SymbolTable table = machine.getTable();
+            for ( String ident: this.idents ) {
+                table.slot( ident );
+            }
+            try {
+                this.entry.invokeExact( table );
+            }
+            catch ( RuntimeException | Error e ) {
+                throw e;
+            }
+            catch ( Throwable t ) {
+                throw new IllegalStateException( t );
+            }
+        }
+
+        /**
+         * @return the number of values the program leaves on the stack
+         */
+        public int getStackSize() {
+            return this.stackSize;
+        }
+
+        /**
+         * Run this program on the calling thread's Machine and report
+         * the results exactly as {@link Machine#execute} does.
+         */
+        public void execute() {
+            Machine machine = Machine.local();
+            System.out.println( "Executing compiled code..." );
+            run( machine );
+            Machine.report( this.stackSize, machine.getTable() );
+        }
+    }
+
+    /**
+     * Translate a program into a hidden class.
+     * @param program a list of Machine instructions
+     * @return the compiled program, or null if the program branches,
+     * uses an instruction this back end does not know, or is too large
+     * for a single JVM method
+     * @throws DendronException if the program would underflow the stack
+     */
+    public static Program compile( List< Machine.Instruction > program ) {
+        VerifiedProgram verified = VerifiedProgram.verify( program );
+        if ( verified.hasBranches() ) {
+            return null;
+        }
+        Map< String, Integer > locals = new LinkedHashMap<>();
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.Load ) {
+                locals.putIfAbsent( ( ( Machine.Load )instr ).getName(),
+                                    locals.size() + 1 );
+            }
+            else if ( instr instanceof Machine.Store ) {
+                locals.putIfAbsent( ( ( Machine.Store )instr ).getName(),
+                                    locals.size() + 1 );
+            }
+        }
+
+        ClassWriter cw = new ClassWriter();
+        Code code = new Code();
+        boolean[] stored = new boolean[ locals.size() + 1 ];
+        Dirty dirty = new Dirty( stored.length );
+        int depth = 0;
+        for ( Machine.Instruction instr: program ) {
+            int pops = instr.pops();
+            if ( instr instanceof Machine.PushConst ) {
+                code.pushInt( cw, ( ( Machine.PushConst )instr ).getConstant() );
+            }
+            else if ( instr instanceof Machine.Load ) {
+                int local = locals.get( ( ( Machine.Load )instr ).getName() );
+                if ( !stored[ local ] ) {
+                    code.track( depth );
+                    dirty.flush( cw, code, depth );
+                    code.op( 0x2a );                     // aload_0
+                    code.pushInt( cw, local - 1 );
+                    code.call( cw, "uninitialized", "(Ldendron/SymbolTable;I)V" );
+                    break;
+                }
+                code.local( 0x15, local );               // iload
+            }
+            else if ( instr instanceof Machine.Store ) {
+                int local = locals.get( ( ( Machine.Store )instr ).getName() );
+                code.local( 0x36, local );               // istore
+                stored[ local ] = true;
+                dirty.add( local );
+            }
+            else if ( instr instanceof Machine.Add ) {
+                code.op( 0x60 );                         // iadd
+            }
+            else if ( instr instanceof Machine.Subtract ) {
+                code.op( 0x64 );                         // isub
+            }
+            else if ( instr instanceof Machine.Multiply ) {
+                code.op( 0x68 );                         // imul
+            }
+            else if ( instr instanceof Machine.Negate ) {
+                code.op( 0x74 );                         // ineg
+            }
+            else if ( instr instanceof Machine.Divide ) {
+                dirty.flush( cw, code, depth );
+                code.call( cw, "divide", "(II)I" );
+            }
+            else if ( instr instanceof Machine.SquareRoot ) {
+                code.call( cw, "sqrt", "(I)I" );
+            }
+            else if ( instr instanceof Machine.BinaryOp ) {
+                Operator op = ( ( Machine.BinaryOp )instr ).getOperator();
+                if ( op.fails( 0 ) ) {               // it can report an error
+                    dirty.flush( cw, code, depth );
+                }
+                code.pushInt( cw, op.getOpcode() );
+                code.track( depth + 1 );
+                code.call( cw, "binary", "(III)I" );
+            }
+            else if ( instr instanceof Machine.UnaryOp ) {
+                code.pushInt( cw, ( ( Machine.UnaryOp )instr )
+                        .getOperator().getOpcode() );
+                code.track( depth + 1 );
+                code.call( cw, "unary", "(II)I" );
+            }
+            else if ( instr instanceof Machine.Print ) {
+                dirty.flush( cw, code, depth );
+                code.call( cw, "print", "(I)V" );
+            }
+            else if ( instr instanceof Machine.Dup ) {
+                code.op( 0x59 );                         // dup
+            }
+            else if ( instr instanceof Machine.Label ) {
+                // no branch names it
+            }
+            else {
+                return null;
+            }
+            depth += instr.pushes() - pops;
+            code.track( depth );
+        }
+
+        // Copy the variables stored since the last copy back into the
+        // symbol table.
+        dirty.flush( cw, code, depth );
+        code.op( 0xb1 );                                 // return
+
+        if ( code.length() > MAX_CODE_LENGTH || stored.length > MAX_LOCALS ) {
+            return null;
+        }
+        byte[] bytes = cw.toByteArray( code, stored.length );
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass( bytes, true );
+            MethodHandle entry = lookup.findStatic( lookup.lookupClass(), "run",
+                    MethodType.methodType( void.class, SymbolTable.class ) );
+            return new Program( entry, locals.keySet().toArray( new String[ 0 ] ),
+                                verified.getStackSize() );
+        }
+        catch ( IllegalAccessException | NoSuchMethodException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    //
+    // Runtime helpers called from generated code
+    //
+
+    /**
+     * Divide, reporting division by zero as the DIVIDE instruction does.
+     * @param op1 the dividend
+     * @param op2 the divisor
+     * @return the quotient
+     */
+    static int divide( int op1, int op2 ) {
+        return Operator.DIV.apply( op1, op2 );
+    }
+
+    /**
+     * @param op the operand
+     * @return the integer square root, as SQRT computes it
+     */
+    static int sqrt( int op ) {
+        return ( int )Math.sqrt( op );
+    }
+
+    /**
+     * Apply a binary operator that has no JVM instruction of its own.
+     * @param op1 the left operand
+     * @param op2 the right operand
+     * @param opcode the operator's opcode
+     * @return the result
+     */
+    static int binary( int op1, int op2, int opcode ) {
+        return Operator.forOpcode( opcode ).apply( op1, op2 );
+    }
+
+    /**
+     * Apply a unary operator that has no JVM instruction of its own.
+     * @param op the operand
+     * @param opcode the operator's opcode
+     * @return the result
+     */
+    static int unary( int op, int opcode ) {
+        return Operator.forOpcode( opcode ).apply( op );
+    }
+
+    /**
+     * Output a value as the PRINT instruction does.
+     * @param op the value to print
+     */
+    static void print( int op ) {
+        Machine.print( op );
+    }
+
+    /**
+     * Report a load of a variable that has not been stored.
+     * @param table the symbol table
+     * @param slot the variable's slot
+     */
+    static void uninitialized( SymbolTable table, int slot ) {
+        table.get( slot );
+    }
+
+    /**
+     * The locals stored since they were last copied back to the symbol
+     * table.
+     */
+    private static class Dirty {
+        private final boolean[] marked;
+        private final int[] locals;
+        private int count = 0;
+
+        Dirty( int maxLocals ) {
+            this.marked = new boolean[ maxLocals ];
+            this.locals = new int[ maxLocals ];
+        }
+
+        void add( int local ) {
+            if ( !this.marked[ local ] ) {
+                this.marked[ local ] = true;
+                this.locals[ this.count++ ] = local;
+            }
+        }
+
+        /**
+         * Emit a SymbolTable.put of each local, and forget them.
+         * @param cw the class being written
+         * @param code the method's code
+         * @param depth how deep the operand stack is here
+         */
+        void flush( ClassWriter cw, Code code, int depth ) {
+            if ( this.count == 0 ) {
+                return;
+            }
+            int putRef = cw.methodRef( "dendron/SymbolTable", "put", "(II)V" );
+            for ( int i = 0; i < this.count; ++i ) {
+                int local = this.locals[ i ];
+                code.op( 0x2a );                         // aload_0
+                code.pushInt( cw, local - 1 );
+                code.local( 0x15, local );               // iload
+                code.op( 0xb6 );                         // invokevirtual
+                code.u2( putRef );
+                this.marked[ local ] = false;
+            }
+            this.count = 0;
+            code.track( depth + 1 );
+        }
+    }
+
+    /**
+     * The bytecode of the single generated method.
+     */
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int maxStack = 0;
+
+        void op( int opcode ) {
+            this.bytes.write( opcode );
+        }
+
+        void u2( int value ) {
+            this.bytes.write( value >>> 8 );
+            this.bytes.write( value );
+        }
+
+        void local( int opcode, int index ) {
+            if ( index > 255 ) {
+                op( 0xc4 );                              // wide
+                op( opcode );
+                u2( index );
+            }
+            else {
+                op( opcode );
+                op( index );
+            }
+        }
+
+        void pushInt( ClassWriter cw, int value ) {
+            if ( value >= -1 && value <= 5 ) {
+                op( 0x03 + value );                      // iconst_<n>
+            }
+            else if ( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+                op( 0x10 );                              // bipush
+                op( value );
+            }
+            else if ( value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ) {
+                op( 0x11 );                              // sipush
+                u2( value );
+            }
+            else {
+                op( 0x13 );                              // ldc_w
+                u2( cw.integer( value ) );
+            }
+        }
+
+        void call( ClassWriter cw, String name, String descriptor ) {
+            op( 0xb8 );                                  // invokestatic
+            u2( cw.methodRef( HELPERS, name, descriptor ) );
+        }
+
+        void track( int depth ) {
+            this.maxStack = Math.max( this.maxStack, depth + 2 );
+        }
+
+        int length() {
+            return this.bytes.size();
+        }
+    }
+
+    /**
+     * Just enough of a class file writer to produce one class with one
+     * static method.
+     */
+    private static class ClassWriter {
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream( pool );
+        private final Map< String, Integer > entries = new HashMap<>();
+        private int count = 1;
+
+        private int entry( String key, byte[] encoding ) {
+            Integer index = this.entries.get( key );
+            if ( index == null ) {
+                index = this.count++;
+                this.pool.write( encoding, 0, encoding.length );
+                this.entries.put( key, index );
+            }
+            return index;
+        }
+
+        private static byte[] encode( int tag, int... u2s ) {
+            byte[] result = new byte[ 1 + 2 * u2s.length ];
+            result[ 0 ] = ( byte )tag;
+            for ( int i = 0; i < u2s.length; ++i ) {
+                result[ 1 + 2 * i ] = ( byte )( u2s[ i ] >>> 8 );
+                result[ 2 + 2 * i ] = ( byte )u2s[ i ];
+            }
+            return result;
+        }
+
+        int utf8( String text ) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream( buf );
+                out.writeByte( 1 );
+                out.writeUTF( text );
+            }
+            catch ( IOException ioe ) {
+                throw new IllegalStateException( ioe );
+            }
+            return entry( "U" + text, buf.toByteArray() );
+        }
+
+        int integer( int value ) {
+            return entry( "I" + value, new byte[] { 3,
+                    ( byte )( value >>> 24 ), ( byte )( value >>> 16 ),
+                    ( byte )( value >>> 8 ), ( byte )value } );
+        }
+
+        int classRef( String internalName ) {
+            int name = utf8( internalName );
+            return entry( "C" + internalName, encode( 7, name ) );
+        }
+
+        int methodRef( String owner, String name, String descriptor ) {
+            int ownerRef = classRef( owner );
+            int nameRef = utf8( name );
+            int descRef = utf8( descriptor );
+            int nameAndType = entry( "N" + name + descriptor,
+                                     encode( 12, nameRef, descRef ) );
+            return entry( "M" + owner + "." + name + descriptor,
+                          encode( 10, ownerRef, nameAndType ) );
+        }
+
+        byte[] toByteArray( Code code, int maxLocals ) {
+            int thisClass = classRef( "dendron/machine/JitProgram" );
+            int superClass = classRef( "java/lang/Object" );
+            int runName = utf8( "run" );
+            int runDesc = utf8( RUN_DESCRIPTOR );
+            int codeName = utf8( "Code" );
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try ( DataOutputStream out = new DataOutputStream( buf ) ) {
+                out.writeInt( 0xCAFEBABE );
+                out.writeShort( 0 );
+                out.writeShort( CLASS_VERSION );
+                out.writeShort( this.count );
+                this.pool.writeTo( out );
+                out.writeShort( 0x0030 );                // final, super
+                out.writeShort( thisClass );
+                out.writeShort( superClass );
+                out.writeShort( 0 );                     // interfaces
+                out.writeShort( 0 );                     // fields
+                out.writeShort( 1 );                     // methods
+                out.writeShort( 0x0009 );                // public static
+                out.writeShort( runName );
+                out.writeShort( runDesc );
+                out.writeShort( 1 );                     // attributes
+                out.writeShort( codeName );
+                out.writeInt( 12 + code.length() );
+                out.writeShort( code.maxStack );
+                out.writeShort( maxLocals );
+                out.writeInt( code.length() );
+                code.bytes.writeTo( out );
+                out.writeShort( 0 );                     // exception table
+                out.writeShort( 0 );                     // code attributes
+                out.writeShort( 0 );                     // class attributes
+            }
+            catch ( IOException ioe ) {
+                throw new IllegalStateException( ioe );
+            }
+            return buf.toByteArray();
+        }
+    }
+
+    /**
+     * Assemble, compile and execute some Dendron machine code,
+     * falling back to the interpreting Machine if it cannot be compiled.
+     * @param args the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        if ( args.length != 1 ) {
+            System.err.println( "Usage: java JitCompiler assembly-code-file" );
+            System.err.println( "Programs with branches are not compiled; " +
+                                "they run on the interpreting Machine." );
+            System.exit( 1 );
+        }
+        try {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( args[ 0 ] );
+            Program compiled = compile( code );
+            if ( compiled == null ) {
+                System.err.println( "JitCompiler: " + args[ 0 ] +
+                                    " branches or is too large to compile;" +
+                                    " interpreting it instead" );
+                Machine.execute( code );
+            }
+            else {
+                compiled.execute();
+            }
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
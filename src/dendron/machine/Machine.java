@@ -4,11 +4,14 @@
 
 package dendron.machine;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
-import java.util.Map;
-import java.util.HashMap;
 import dendron.Errors;
+import dendron.Opcodes;
+import dendron.Operator;
+import dendron.Output;
+import dendron.Profile;
+import dendron.SymbolTable;
 
 /**
  * An abstraction of a computing machine that reads instructions
@@ -16,9 +19,26 @@ import dendron.Errors;
  * for variables (instead of general-purpose memory), and a
  * value stack on which calculations are performed.
  *
- * (Everything is static to avoid the need to master the subtleties
- * of nested class instantiation or to pass the symbol table and
- * stack into every instruction when it executes.)
+ * Each Machine instance is an independent execution context, and
+ * instructions are handed the Machine they run on, so different
+ * threads can execute programs at the same time. A thread's Machine
+ * is pooled and reused: resetting it empties the stack and symbol
+ * table without reallocating them.
+ *
+ * Every program is checked by {@link VerifiedProgram} before it runs, so
+ * a program that would underflow the stack is rejected before it starts,
+ * and the stack is reserved at the program's maximum depth beforehand.
+ * Instructions therefore push and pop with no checks.
+ *
+ * Programs may branch to LABELs with JMP, JZ and JNZ. A program with
+ * branches is run with a program counter that indexes an array of its
+ * instructions, and every branch that jumps backwards (the back edge of a
+ * loop) counts how many times it is taken, so hot loops can be reported.
+ *
+ * A Machine with a {@link Profile} attached runs programs in a separate
+ * loop that also counts each instruction and times each statement, and
+ * adds the results to the profile. Without one, the only cost is a single
+ * check when each program starts.
  *
  * THIS CLASS IS INCOMPLETE. The student must add code to it.
  *
@@ -27,15 +47,23 @@ import dendron.Errors;
  */
 public class Machine {
 
-    /** Do not instantiate this class. */
-    private Machine() {}
-
     public static interface Instruction {
         /**
-         * Run this instruction on the Machine, using the Machine's
+         * Run this instruction on a Machine, using that Machine's
          * value stack and symbol table.
+         * @param machine the execution context
+         */
+        void execute( Machine machine );
+
+        /**
+         * @return how many values this instruction takes off the stack
          */
-        void execute();
+        int pops();
+
+        /**
+         * @return how many values this instruction puts on the stack
+         */
+        int pushes();
 
         /**
          * Show the instruction using text so it can be understood
@@ -46,16 +74,91 @@ public class Machine {
         String toString();
     }
 
-    private static Map< String, Integer > table = null;
-    private static Stack< Integer > stack = null;
+    /** one reusable Machine per thread, for the static entry points */
+    private static final ThreadLocal< Machine > POOL =
+            ThreadLocal.withInitial( Machine::new );
+
+    /** what follows each value the PRINT instruction outputs */
+    private static final String PRINT_SUFFIX = " " + System.lineSeparator();
+
+    private final SymbolTable table;
+    private final IntStack stack;
+
+    /** the index of the next instruction to run */
+    private int pc;
+    /** the symbol table slot each LOAD or STORE of the running program uses */
+    private int[] slots;
+    /** the program running or last run */
+    private VerifiedProgram program;
+    /** for each branch, how many times it has jumped backwards */
+    private int[] backEdges;
+    /** where to record what runs, or null if this Machine is not profiling */
+    private Profile profile;
+
+    /**
+     * Create a Machine with an empty stack and symbol table.
+     */
+    public Machine() {
+        this.table = new SymbolTable();
+        this.stack = new IntStack();
+        this.slots = new int[ 0 ];
+    }
+
+    /**
+     * Get the calling thread's pooled Machine.
+     * @return a Machine owned by the current thread
+     */
+    public static Machine local() {
+        return POOL.get();
+    }
+
+    /**
+     * Reset the Machine to a pristine state, reusing its storage.
+     * @see Machine#run
+     */
+    public void reset() {
+        this.stack.clear();
+        this.table.clear();
+    }
+
+    /**
+     * Resolve every variable name in a program to a slot in this
+     * Machine's symbol table, in program order, before any instruction
+     * runs. The slots are kept here, indexed by instruction, and not in
+     * the instructions, which may be shared by many Machines.
+     * @param code the instructions in the program
+     */
+    private void resolve( Instruction[] code ) {
+        if ( this.slots.length < code.length ) {
+            this.slots = new int[ code.length ];
+        }
+        for ( int i = 0; i < code.length; ++i ) {
+            String name = variable( code[ i ] );
+            if ( name != null ) {
+                this.slots[ i ] = this.table.slot( name );
+            }
+        }
+    }
 
     /**
-     * Reset the Machine to a pristine state.
-     * @see Machine#execute
+     * @param instr an instruction
+     * @return the variable a LOAD or STORE uses, or null
      */
-    private static void reset() {
-        stack = new Stack<>();
-        table = new HashMap<>();
+    static String variable( Instruction instr ) {
+        if ( instr instanceof Load ) {
+            return ( ( Load )instr ).getName();
+        }
+        if ( instr instanceof Store ) {
+            return ( ( Store )instr ).getName();
+        }
+        return null;
+    }
+
+    /**
+     * @return the slot of the variable used by the instruction running now
+     */
+    private int slot() {
+        return this.slots[ this.pc - 1 ];
     }
 
     /**
@@ -75,45 +178,526 @@ public class Machine {
     }
 
     /**
-     * Run a "compiled" program by executing in order each instruction
-     * contained therein.
-     * Report on the final size of the stack (should normally be empty)
-     * and the contents of the symbol table.
+     * Reset this Machine and then run a "compiled" program on it by
+     * executing in order each instruction contained therein. Nothing is
+     * reported; the final state can be examined afterwards.
      * @param program a list of Machine instructions
+     * @throws dendron.DendronException if the program would underflow
+     * the stack; nothing is run
+     * @see Machine#getTable
+     * @see Machine#getStackSize
      */
-    public static void execute( List< Instruction > program ) {
+    public void run( List< Instruction > program ) {
+        run( VerifiedProgram.verify( program ) );
+    }
+
+    /**
+     * Reset this Machine and then run a program that has already been
+     * verified, so that it can be run many times but verified once.
+     * @param program a program verified to start on an empty stack
+     */
+    public void run( VerifiedProgram program ) {
         reset();
-        System.out.println("Executing compiled code...");
-        for ( Instruction instr: program ) {
-            instr.execute();
+        resume( program );
+    }
+
+    /**
+     * Run more instructions on this Machine without resetting it, so
+     * they see the stack and symbol table left by earlier ones.
+     * @param program a list of Machine instructions
+     * @throws dendron.DendronException if the program would underflow
+     * the stack; nothing is run
+     */
+    public void resume( List< Instruction > program ) {
+        resume( VerifiedProgram.verify( program, this.stack.size() ) );
+    }
+
+    /**
+     * Run more instructions, already verified, on this Machine without
+     * resetting it.
+     * @param program a program verified to start on a stack as deep as
+     * this Machine's is now
+     * @throws IllegalArgumentException if the program was verified for a
+     * stack of a different depth
+     */
+    public void resume( VerifiedProgram program ) {
+        if ( program.getInitialDepth() != this.stack.size() ) {
+            throw new IllegalArgumentException(
+                    "program verified for a stack of " +
+                    program.getInitialDepth() + ", not " + this.stack.size() );
+        }
+        Instruction[] code = program.getInstructions();
+        this.stack.reserve( program.getMaxDepth() );
+        resolve( code );
+        this.program = program;
+        this.backEdges = program.hasBranches() ? new int[ code.length ] : null;
+        if ( this.profile != null ) {
+            runProfiled( code );
+            return;
+        }
+        this.pc = 0;
+        while ( this.pc < code.length ) {
+            code[ this.pc++ ].execute( this );
+        }
+    }
+
+    /**
+     * Run a program's instructions, counting each one and timing each
+     * statement, and add the results to the profile. The clock is read
+     * only when control passes from one statement to another.
+     * @param code the instructions
+     */
+    private void runProfiled( Instruction[] code ) {
+        int[] starts = this.profile.getStatementStarts();
+        if ( starts == null || starts.length == 0 ) {
+            starts = new int[] { 0 };
+        }
+        int[] statementOf = new int[ code.length ];
+        for ( int s = 0; s < starts.length; ++s ) {
+            int end = s + 1 < starts.length ? starts[ s + 1 ] : code.length;
+            for ( int i = starts[ s ]; i < end && i < code.length; ++i ) {
+                statementOf[ i ] = s;
+            }
+        }
+        long[] counts = new long[ code.length ];
+        long[] nanos = new long[ starts.length ];
+        long[] runs = new long[ starts.length ];
+        int current = -1;
+        long mark = System.nanoTime();
+        this.pc = 0;
+        try {
+            while ( this.pc < code.length ) {
+                int at = this.pc;
+                int statement = statementOf[ at ];
+                if ( statement != current ) {
+                    long now = System.nanoTime();
+                    if ( current >= 0 ) {
+                        nanos[ current ] += now - mark;
+                    }
+                    mark = now;
+                    current = statement;
+                    ++runs[ current ];
+                }
+                ++counts[ at ];
+                code[ this.pc++ ].execute( this );
+            }
+        }
+        finally {
+            if ( current >= 0 ) {
+                nanos[ current ] += System.nanoTime() - mark;
+            }
+            record( code, counts, starts, nanos, runs );
+        }
+    }
+
+    /**
+     * Add what a profiled run counted to the profile.
+     * @param code the instructions
+     * @param counts how many times each instruction ran
+     * @param starts where each statement's code starts
+     * @param nanos how long control spent in each statement
+     * @param runs how many times control entered each statement
+     */
+    private void record( Instruction[] code, long[] counts, int[] starts,
+                         long[] nanos, long[] runs ) {
+        for ( int i = 0; i < code.length; ++i ) {
+            if ( counts[ i ] == 0 ) {
+                continue;
+            }
+            String text = code[ i ].toString();
+            int space = text.indexOf( ' ' );
+            this.profile.countOpcode( space < 0 ? text : text.substring( 0, space ),
+                                      counts[ i ] );
+            if ( code[ i ] instanceof Load ) {
+                this.profile.countLoads( ( ( Load )code[ i ] ).getName(), counts[ i ] );
+            }
+            else if ( code[ i ] instanceof Store ) {
+                this.profile.countStores( ( ( Store )code[ i ] ).getName(), counts[ i ] );
+            }
+        }
+        for ( int s = 0; s < starts.length; ++s ) {
+            int last = ( s + 1 < starts.length ? starts[ s + 1 ] : code.length ) - 1;
+            if ( runs[ s ] > 0 ) {
+                this.profile.time( s, starts[ s ], last, nanos[ s ] );
+            }
+        }
+    }
+
+    /**
+     * Attach a profile to this Machine, or detach it.
+     * @param profile where every later run adds what it counts, or null
+     *                to stop profiling
+     */
+    public void setProfile( Profile profile ) {
+        this.profile = profile;
+    }
+
+    /**
+     * @return the profile attached to this Machine, or null
+     */
+    public Profile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Continue at the target of the branch being executed, counting the
+     * jump if it goes backwards.
+     */
+    private void branch() {
+        int from = this.pc - 1;
+        int to = this.program.getTarget( from );
+        if ( to <= from ) {
+            ++this.backEdges[ from ];
         }
+        this.pc = to + 1;
+    }
+
+    /**
+     * @return for each instruction of the program last run, how many
+     * times it jumped backwards (0 for instructions that are not
+     * branches), or null if the program had no branches
+     */
+    public int[] getBackEdgeCounts() {
+        return this.backEdges == null ? null : this.backEdges.clone();
+    }
+
+    /**
+     * Take the back edges of a program run by another back end against
+     * this Machine's symbol table, so that {@link #getBackEdgeCounts()}
+     * and {@link #reportLoops()} describe that run.
+     * @param program the program that was run
+     * @param backEdges for each of its instructions, how many times it
+     *                  jumped backwards, or null if it has no branches
+     */
+    void setBackEdges( VerifiedProgram program, int[] backEdges ) {
+        this.program = program;
+        this.backEdges = backEdges;
+    }
+
+    /**
+     * Show on standard output every back edge the program last run took,
+     * the most taken first. Nothing is shown if it took none.
+     */
+    public void reportLoops() {
+        if ( this.backEdges == null ) {
+            return;
+        }
+        List< Integer > taken = new ArrayList<>();
+        for ( int from = 0; from < this.backEdges.length; ++from ) {
+            if ( this.backEdges[ from ] > 0 ) {
+                taken.add( from );
+            }
+        }
+        if ( taken.isEmpty() ) {
+            return;
+        }
+        taken.sort( ( a, b ) -> Integer.compare( this.backEdges[ b ],
+                                                 this.backEdges[ a ] ) );
+        Instruction[] code = this.program.getInstructions();
+        System.out.println( "Loops (back edges taken):" );
+        for ( int from: taken ) {
+            int to = this.program.getTarget( from );
+            System.out.printf( "%10d : %d %s -> %d %s\n", this.backEdges[ from ],
+                               from, code[ from ], to, code[ to ] );
+        }
+        System.out.println();
+    }
+
+    /**
+     * Report on the final size of the stack (should normally be empty)
+     * and the contents of the symbol table.
+     */
+    public void report() {
+        report( this.stack.size(), this.table );
+    }
+
+    /**
+     * Report on a final stack size and symbol table, in the same
+     * form for every back end that executes Machine programs.
+     * @param stackSize the number of values left on the stack
+     * @param table the final symbol table
+     */
+    static void report( int stackSize, SymbolTable table ) {
+        Output.flush();
         System.out.println( "Machine: execution ended with " +
-                stack.size() + " items left on the stack." );
+                stackSize + " items left on the stack." );
         System.out.println();
         Errors.dump( table );
     }
 
     /**
-     * The ADD instruction
+     * @return this Machine's symbol table
+     */
+    public SymbolTable getTable() {
+        return this.table;
+    }
+
+    /**
+     * @return the number of values left on this Machine's stack
+     */
+    public int getStackSize() {
+        return this.stack.size();
+    }
+
+    /**
+     * Output a value in the form the PRINT instruction uses, "*** "
+     * followed by the value on a line of its own, to the current
+     * {@link dendron.OutputSink}.
+     * @param value the value to print
+     */
+    static void print( int value ) {
+        Output.current().print( "*** ", value, PRINT_SUFFIX );
+    }
+
+    /**
+     * Run a "compiled" program on the calling thread's Machine by
+     * executing in order each instruction contained therein.
+     * Report on the final size of the stack (should normally be empty),
+     * as found by verifying the program, and the contents of the symbol
+     * table.
+     * @param program a list of Machine instructions
+     */
+    public static void execute( List< Instruction > program ) {
+        execute( program, null );
+    }
+
+    /**
+     * Run a "compiled" program as {@link #execute(List)} does. If the
+     * dendron.profile property is set, the run is profiled and the
+     * profile is reported last.
+     * @param program a list of Machine instructions
+     * @param statements where each source statement's code starts in
+     *                   the program, to charge time to, or null
+     * @see Profile
+     */
+    public static void execute( List< Instruction > program, int[] statements ) {
+        VerifiedProgram verified = VerifiedProgram.verify( program );
+        Machine machine = local();
+        Profile profile = null;
+        if ( Profile.isEnabled() ) {
+            profile = new Profile( "machine" );
+            profile.setStatementStarts( statements );
+        }
+        machine.setProfile( profile );
+        System.out.println("Executing compiled code...");
+        try {
+            machine.run( verified );
+        }
+        finally {
+            machine.setProfile( null );
+        }
+        report( verified.getStackSize(), machine.getTable() );
+        machine.reportLoops();
+        if ( profile != null ) {
+            profile.report();
+        }
+    }
+
+    /**
+     * An instruction that applies a binary operator from the
+     * {@link Operator} registry to the top two values on the stack.
      */
-    public static class Add implements Instruction {
+    public static class BinaryOp implements Instruction {
+        private final Operator operator;
+
         /**
-         * Run the microsteps for the ADD instruction.
+         * Create an instruction for a binary operator.
+         * @param operator the operator; its arity must be 2
+         */
+        public BinaryOp( Operator operator ) {
+            this.operator = operator;
+        }
+
+        /**
+         * @return the operator this instruction applies
+         */
+        public Operator getOperator() {
+            return this.operator;
+        }
+
+        /**
+         * Pop the right and then the left operand, and push the result
+         * of the operator's kernel.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            int op2 = machine.stack.popUnchecked();
+            int op1 = machine.stack.popUnchecked();
+            machine.stack.pushUnchecked( this.operator.apply( op1, op2 ) );
+        }
+
+        /**
+         * @return 2
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 + op2 );
+        public int pops() {
+            return 2;
         }
 
         /**
-         * Show the ADD instruction as plain text.
-         * @return "ADD"
+         * @return 1
+         */
+        @Override
+        public int pushes() {
+            return 1;
+        }
+
+        /**
+         * Show the instruction as plain text.
+         * @return the operator's mnemonic
          */
         @Override
         public String toString() {
-            return "ADD";
+            return this.operator.getMnemonic();
+        }
+    }
+
+    /**
+     * An instruction that applies a unary operator from the
+     * {@link Operator} registry to the top value on the stack.
+     */
+    public static class UnaryOp implements Instruction {
+        private final Operator operator;
+
+        /**
+         * Create an instruction for a unary operator.
+         * @param operator the operator; its arity must be 1
+         */
+        public UnaryOp( Operator operator ) {
+            this.operator = operator;
+        }
+
+        /**
+         * @return the operator this instruction applies
+         */
+        public Operator getOperator() {
+            return this.operator;
+        }
+
+        /**
+         * Replace the top value with the result of the operator's kernel.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            machine.stack.pushUnchecked(
+                    this.operator.apply( machine.stack.popUnchecked() ) );
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int pops() {
+            return 1;
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int pushes() {
+            return 1;
+        }
+
+        /**
+         * Show the instruction as plain text.
+         * @return the operator's mnemonic
+         */
+        @Override
+        public String toString() {
+            return this.operator.getMnemonic();
+        }
+    }
+
+    /**
+     * Make the instruction that applies an operator.
+     * @param operator the operator
+     * @return an instance of the operator's own class if it has one,
+     * such as Add, and otherwise a BinaryOp or UnaryOp
+     */
+    public static Instruction instruction( Operator operator ) {
+        switch ( operator ) {
+            case ADD: return new Add();
+            case SUB: return new Subtract();
+            case MUL: return new Multiply();
+            case DIV: return new Divide();
+            case NEG: return new Negate();
+            case SQRT: return new SquareRoot();
+            default:
+                return operator.getArity() == 2 ? new BinaryOp( operator )
+                                                : new UnaryOp( operator );
+        }
+    }
+
+    /**
+     * The ADD instruction
+     */
+    public static class Add extends BinaryOp {
+        /**
+         * Create an ADD instruction.
+         */
+        public Add() {
+            super( Operator.ADD );
+        }
+    }
+
+    /**
+     * The DIVIDE instruction. Division by zero is reported.
+     */
+    public static class Divide extends BinaryOp {
+        /**
+         * Create a DIV instruction.
+         */
+        public Divide() {
+            super( Operator.DIV );
+        }
+    }
+
+    /**
+     * The MULTIPLY instruction
+     */
+    public static class Multiply extends BinaryOp {
+        /**
+         * Create a MUL instruction.
+         */
+        public Multiply() {
+            super( Operator.MUL );
+        }
+    }
+
+    /**
+     * The NEGATE instruction
+     */
+    public static class Negate extends UnaryOp {
+        /**
+         * Create a NEG instruction.
+         */
+        public Negate() {
+            super( Operator.NEG );
+        }
+    }
+
+    /**
+     * The SQUAREROOT instruction
+     */
+    public static class SquareRoot extends UnaryOp {
+        /**
+         * Create a SQRT instruction.
+         */
+        public SquareRoot() {
+            super( Operator.SQRT );
+        }
+    }
+
+    /**
+     * The SUBTRACT instruction
+     */
+    public static class Subtract extends BinaryOp {
+        /**
+         * Create a SUB instruction.
+         */
+        public Subtract() {
+            super( Operator.SUB );
         }
     }
 
@@ -131,47 +715,45 @@ public class Machine {
         public Store( String ident ) {
             this.name = ident;
         }
+
+        /**
+         * @return the name of the target variable
+         */
+        public String getName() {
+            return this.name;
+        }
+
         /**
          * Run the microsteps for the STORE instruction.
          */
         @Override
-        public void execute() {
-            table.put( this.name, stack.pop() );
+        public void execute( Machine machine ) {
+            machine.table.put( machine.slot(), machine.stack.popUnchecked() );
         }
+
         /**
-         * Show the STORE instruction as plain text.
-         * @return "STORE" followed by the target variable name
+         * @return 1
          */
         @Override
-        public String toString() {
-            return "STORE " + this.name;
+        public int pops() {
+            return 1;
         }
-    }
 
-    /**
-     * The DIVIDE instruction
-     */
-    public static class Divide implements Instruction {
         /**
-         * Run the microsteps for the DIVIDE instruction.
+         * @return 0
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            if (op2 == 0) {
-                Errors.report(Errors.Type.DIVIDE_BY_ZERO,op1 + "/" + op2);
-            }
-            stack.push((int) op1 / op2 );
+        public int pushes() {
+            return 0;
         }
 
         /**
-         * Show the DIVIDE instruction as plain text.
-         * @return "DIV"
+         * Show the STORE instruction as plain text.
+         * @return "STORE" followed by the target variable name
          */
         @Override
         public String toString() {
-            return "DIV";
+            return Opcodes.getMnemonic( Opcodes.STORE ) + " " + this.name;
         }
     }
 
@@ -190,85 +772,73 @@ public class Machine {
             this.name = ident;
         }
 
+        /**
+         * @return the name of the target variable
+         */
+        public String getName() {
+            return this.name;
+        }
+
         /**
          * Run the microsteps for the LOAD instruction.
          */
         @Override
-        public void execute() {
-            if (!table.containsKey(this.name)) {
-                Errors.report(Errors.Type.UNINITIALIZED,this.name);
-            }
-            stack.push(table.get(this.name));
+        public void execute( Machine machine ) {
+            machine.stack.pushUnchecked(machine.table.get(machine.slot()));
         }
 
         /**
-         * Show the LOAD instruction as plain text.
-         * @return "LOAD" followed by the target variable name
+         * @return 0
          */
         @Override
-        public String toString() {
-            return "LOAD " + this.name;
+        public int pops() {
+            return 0;
         }
-    }
 
-    /**
-     * The MULTIPLY instruction
-     */
-    public static class Multiply implements Instruction {
         /**
-         * Run the microsteps for the MULTIPLY instruction.
+         * @return 1
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 * op2 );
+        public int pushes() {
+            return 1;
         }
 
         /**
-         * Show the MULTIPLY instruction as plain text.
-         * @return "MUL"
+         * Show the LOAD instruction as plain text.
+         * @return "LOAD" followed by the target variable name
          */
         @Override
         public String toString() {
-            return "MUL";
+            return Opcodes.getMnemonic( Opcodes.LOAD ) + " " + this.name;
         }
     }
 
     /**
-     * The NEGATE instruction
+     * The PRINT instruction
      */
-    public static class Negate implements  Instruction {
+    public static class Print implements Instruction {
         /**
-         * Run the microsteps for the NEGATE instruction.
+         * Output "*** " followed by the value popped from the stack.
          */
         @Override
-        public void execute() {
-            int op = stack.pop();
-            stack.push(-op);
+        public void execute( Machine machine ) {
+            print( machine.stack.popUnchecked() );
         }
 
         /**
-         * Show the NEGATE instruction as plain text.
-         * @return "NEG"
+         * @return 1
          */
         @Override
-        public String toString() {
-            return "NEG";
+        public int pops() {
+            return 1;
         }
-    }
 
-    /**
-     * The PRINT instruction
-     */
-    public static class Print implements Instruction {
         /**
-         * Output "*** " followed by the value popped from the stack.
+         * @return 0
          */
         @Override
-        public void execute() {
-            int op = stack.pop();
-            System.out.println("*** " + op + " ");
+        public int pushes() {
+            return 0;
         }
 
         /**
@@ -277,7 +847,7 @@ public class Machine {
          */
         @Override
         public String toString() {
-            return "PRINT";
+            return Opcodes.getMnemonic( Opcodes.PRINT );
         }
     }
 
@@ -296,12 +866,35 @@ public class Machine {
             this.constant = constant;
         }
 
+        /**
+         * @return the constant this instruction pushes
+         */
+        public int getConstant() {
+            return this.constant;
+        }
+
         /**
          * Run the microsteps for the PUSHCONST instruction.
          */
         @Override
-        public void execute() {
-            stack.push(this.constant);
+        public void execute( Machine machine ) {
+            machine.stack.pushUnchecked(this.constant);
+        }
+
+        /**
+         * @return 0
+         */
+        @Override
+        public int pops() {
+            return 0;
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int pushes() {
+            return 1;
         }
 
         /**
@@ -310,54 +903,235 @@ public class Machine {
          */
         @Override
         public String toString() {
-            return "PUSH " + this.constant;
+            return Opcodes.getMnemonic( Opcodes.PUSH ) + " " + this.constant;
         }
     }
 
     /**
-     * The SQUAREROOT instruction
+     * The DUP instruction
      */
-    public static class SquareRoot implements Instruction {
+    public static class Dup implements Instruction {
         /**
-         * Run the microsteps for the SQUAREROOT instruction.
+         * Push a second copy of the value on top of the stack.
          */
         @Override
-        public void execute() {
-            int op = stack.pop();
-            stack.push((int) Math.sqrt(op));
+        public void execute( Machine machine ) {
+            int op = machine.stack.popUnchecked();
+            machine.stack.pushUnchecked( op );
+            machine.stack.pushUnchecked( op );
         }
 
         /**
-         * Show the SQUAREROOT instruction as plain text.
-         * @return "SQRT"
+         * @return 1
+         */
+        @Override
+        public int pops() {
+            return 1;
+        }
+
+        /**
+         * @return 2
+         */
+        @Override
+        public int pushes() {
+            return 2;
+        }
+
+        /**
+         * Show the DUP instruction as plain text.
+         * @return "DUP"
          */
         @Override
         public String toString() {
-            return "SQRT";
+            return Opcodes.getMnemonic( Opcodes.DUP );
         }
     }
 
     /**
-     * The SUBTRACT instruction
+     * The LABEL instruction, which marks a place branches can jump to.
+     * It does nothing when it is executed.
+     */
+    public static class Label implements Instruction {
+        private final String name;
+
+        /**
+         * Create a LABEL instruction.
+         * @param name the label's name
+         */
+        public Label( String name ) {
+            this.name = name;
+        }
+
+        /**
+         * @return the label's name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Do nothing.
+         */
+        @Override
+        public void execute( Machine machine ) {
+        }
+
+        /**
+         * @return 0
+         */
+        @Override
+        public int pops() {
+            return 0;
+        }
+
+        /**
+         * @return 0
+         */
+        @Override
+        public int pushes() {
+            return 0;
+        }
+
+        /**
+         * Show the LABEL instruction as plain text.
+         * @return "LABEL" followed by the label's name
+         */
+        @Override
+        public String toString() {
+            return Opcodes.getMnemonic( Opcodes.LABEL ) + " " + this.name;
+        }
+    }
+
+    /**
+     * An instruction that can continue at a LABEL instead of at the
+     * next instruction.
      */
-    public static class Subtract implements Instruction {
+    public static abstract class Branch implements Instruction {
+        private final String label;
+        private final String mnemonic;
+
+        /**
+         * @param mnemonic the instruction's assembly name
+         * @param label the name of the LABEL to jump to
+         */
+        protected Branch( String mnemonic, String label ) {
+            this.mnemonic = mnemonic;
+            this.label = label;
+        }
+
         /**
-         * Run the microsteps for the SUBTRACT instruction.
+         * @return the name of the LABEL this instruction jumps to
+         */
+        public String getLabel() {
+            return this.label;
+        }
+
+        /**
+         * @return 0
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push(op1 - op2 );
+        public int pushes() {
+            return 0;
         }
 
         /**
-         * Show the SUBTRACT instruction as plain text.
-         * @return "SUB"
+         * Show the branch as plain text.
+         * @return the mnemonic followed by the label's name
          */
         @Override
         public String toString() {
-            return "SUB";
+            return this.mnemonic + " " + this.label;
+        }
+    }
+
+    /**
+     * The JMP instruction, which always jumps.
+     */
+    public static class Jump extends Branch {
+        /**
+         * Create a JMP instruction.
+         * @param label the name of the LABEL to jump to
+         */
+        public Jump( String label ) {
+            super( Opcodes.getMnemonic( Opcodes.JMP ), label );
+        }
+
+        /**
+         * Continue at the label.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            machine.branch();
+        }
+
+        /**
+         * @return 0
+         */
+        @Override
+        public int pops() {
+            return 0;
+        }
+    }
+
+    /**
+     * The JZ instruction, which pops a value and jumps if it is zero.
+     */
+    public static class JumpIfZero extends Branch {
+        /**
+         * Create a JZ instruction.
+         * @param label the name of the LABEL to jump to
+         */
+        public JumpIfZero( String label ) {
+            super( Opcodes.getMnemonic( Opcodes.JZ ), label );
+        }
+
+        /**
+         * Pop a value, and continue at the label if it is zero.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            if ( machine.stack.popUnchecked() == 0 ) {
+                machine.branch();
+            }
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int pops() {
+            return 1;
+        }
+    }
+
+    /**
+     * The JNZ instruction, which pops a value and jumps if it is not zero.
+     */
+    public static class JumpIfNotZero extends Branch {
+        /**
+         * Create a JNZ instruction.
+         * @param label the name of the LABEL to jump to
+         */
+        public JumpIfNotZero( String label ) {
+            super( Opcodes.getMnemonic( Opcodes.JNZ ), label );
+        }
+
+        /**
+         * Pop a value, and continue at the label if it is not zero.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            if ( machine.stack.popUnchecked() != 0 ) {
+                machine.branch();
+            }
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int pops() {
+            return 1;
         }
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * file: PackedProgram.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Opcodes;
+import dendron.Operator;
+import dendron.SymbolTable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Machine program lowered to a packed array of ints and run by a single
+ * switch loop, instead of one interface call per instruction object.
+ *
+ * Each instruction is its opcode (from {@link Opcodes}) followed,
+ * for PUSH, by the constant, for LOAD and STORE, by the variable's slot
+ * and, for JMP, JZ and JNZ, by the index in the packed code where the
+ * branch continues. LABELs take no space. Slots are numbered in the
+ * order the interpreting Machine would resolve the variables, so the
+ * final symbol table is the same. The
+ * arithmetic instructions are handled in the loop itself; any other
+ * operator is applied through its {@link Operator} kernel.
+ *
+ * The program is checked by {@link VerifiedProgram} when it is lowered,
+ * so a program that would underflow the stack is never lowered. The value
+ * stack is allocated at the maximum depth found by the verifier, and the
+ * loop checks nothing.
+ *
+ * A branch that jumps backwards is counted, as on the Machine, and the
+ * counts are handed to the Machine the program ran on when it stops, so
+ * {@link Machine#reportLoops()} shows the loops of either back end.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class PackedProgram {
+
+    private final int[] code;
+    private final String[] idents;
+    private final int maxDepth;
+    private final int stackSize;
+
+    /** the program before lowering */
+    private final VerifiedProgram verified;
+
+    /** the index in the packed code of each instruction before lowering */
+    private final int[] offsets;
+
+    private PackedProgram( int[] code, String[] idents,
+                           VerifiedProgram verified, int[] offsets ) {
+        this.code = code;
+        this.idents = idents;
+        this.maxDepth = verified.getMaxDepth();
+        this.stackSize = verified.getStackSize();
+        this.verified = verified;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Lower a list of instructions to packed form.
+     * @param program a list of Machine instructions
+     * @return the packed program
+     * @throws IllegalArgumentException if the program contains an
+     * instruction that has no opcode
+     * @throws DendronException if the program would underflow the stack
+     */
+    public static PackedProgram lower( List< Machine.Instruction > program ) {
+        VerifiedProgram verified = VerifiedProgram.verify( program );
+        Map< String, Integer > slots = new LinkedHashMap<>();
+        int[] code = new int[ 2 * program.size() ];
+        int[] offsets = new int[ program.size() ];
+        int pc = 0;
+        int index = 0;
+        for ( Machine.Instruction instr: program ) {
+            int opcode = BinaryProgram.opcode( instr );
+            offsets[ index++ ] = pc;
+            if ( opcode == Opcodes.LABEL ) {
+                continue;
+            }
+            code[ pc++ ] = opcode;
+            if ( opcode == Opcodes.PUSH ) {
+                code[ pc++ ] = ( ( Machine.PushConst )instr ).getConstant();
+            }
+            else if ( opcode == Opcodes.LOAD ||
+                      opcode == Opcodes.STORE ) {
+                String name = Machine.variable( instr );
+                Integer slot = slots.get( name );
+                if ( slot == null ) {
+                    slot = slots.size();
+                    slots.put( name, slot );
+                }
+                code[ pc++ ] = slot;
+            }
+            else if ( opcode > Opcodes.LABEL ) {
+                // the instruction index of the label, fixed up below
+                code[ pc++ ] = verified.getTarget( index - 1 );
+            }
+        }
+        if ( verified.hasBranches() ) {
+            for ( int i = 0; i < offsets.length; ++i ) {
+                int target = verified.getTarget( i );
+                if ( target >= 0 ) {
+                    code[ offsets[ i ] + 1 ] = offsets[ target ];
+                }
+            }
+        }
+        return new PackedProgram( Arrays.copyOf( code, pc ),
+                                  slots.keySet().toArray( new String[ 0 ] ),
+                                  verified, offsets );
+    }
+
+    /**
+     * Reset a Machine and run this program against its symbol table,
+     * leaving the back edges it took in the Machine.
+     * @param machine the execution context
+     */
+    public void run( Machine machine ) {
+        machine.reset();
+        SymbolTable table = machine.getTable();
+        for ( String ident: this.idents ) {
+            table.slot( ident );
+        }
+        int[] backEdges = this.verified.hasBranches() ?
+                          new int[ this.code.length ] : null;
+        try {
+            run( table, backEdges );
+        }
+        finally {
+            machine.setBackEdges( this.verified, unpack( backEdges ) );
+        }
+    }
+
+    /**
+     * Run this program.
+     * @param table the symbol table, with a slot for each variable
+     * @param backEdges where to count the backward jumps of each branch,
+     *                  indexed by packed code, or null if there are no
+     *                  branches
+     */
+    private void run( SymbolTable table, int[] backEdges ) {
+        int[] code = this.code;
+        int[] stack = new int[ this.maxDepth ];
+        int sp = 0;
+        int pc = 0;
+        while ( pc < code.length ) {
+            int opcode = code[ pc++ ];
+            switch ( opcode ) {
+                case Opcodes.PUSH:
+                    stack[ sp++ ] = code[ pc++ ];
+                    break;
+                case Opcodes.LOAD:
+                    stack[ sp++ ] = table.get( code[ pc++ ] );
+                    break;
+                case Opcodes.STORE:
+                    table.put( code[ pc++ ], stack[ --sp ] );
+                    break;
+                case Opcodes.ADD:
+                    --sp;
+                    stack[ sp - 1 ] += stack[ sp ];
+                    break;
+                case Opcodes.SUB:
+                    --sp;
+                    stack[ sp - 1 ] -= stack[ sp ];
+                    break;
+                case Opcodes.MUL:
+                    --sp;
+                    stack[ sp - 1 ] *= stack[ sp ];
+                    break;
+                case Opcodes.DIV:
+                    --sp;
+                    stack[ sp - 1 ] = Operator.DIV.apply( stack[ sp - 1 ], stack[ sp ] );
+                    break;
+                case Opcodes.NEG:
+                    stack[ sp - 1 ] = -stack[ sp - 1 ];
+                    break;
+                case Opcodes.SQRT:
+                    stack[ sp - 1 ] = ( int )Math.sqrt( stack[ sp - 1 ] );
+                    break;
+                case Opcodes.PRINT:
+                    Machine.print( stack[ --sp ] );
+                    break;
+                case Opcodes.DUP:
+                    stack[ sp ] = stack[ sp - 1 ];
+                    ++sp;
+                    break;
+                case Opcodes.JMP:
+                    pc = jump( pc, backEdges );
+                    break;
+                case Opcodes.JZ:
+                    pc = stack[ --sp ] == 0 ? jump( pc, backEdges ) : pc + 1;
+                    break;
+                case Opcodes.JNZ:
+                    pc = stack[ --sp ] != 0 ? jump( pc, backEdges ) : pc + 1;
+                    break;
+                default:
+                    Operator op = Operator.forOpcode( opcode );
+                    if ( op.getArity() == 2 ) {
+                        --sp;
+                        stack[ sp - 1 ] = op.apply( stack[ sp - 1 ], stack[ sp ] );
+                    }
+                    else {
+                        stack[ sp - 1 ] = op.apply( stack[ sp - 1 ] );
+                    }
+            }
+        }
+    }
+
+    /**
+     * Take the branch whose operand is at pc, counting the jump if it
+     * goes backwards.
+     * @param pc the index of the branch's operand in the packed code
+     * @param backEdges the backward jumps of each branch so far
+     * @return the index in the packed code where the branch continues
+     */
+    private int jump( int pc, int[] backEdges ) {
+        int to = this.code[ pc ];
+        if ( to < pc ) {
+            ++backEdges[ pc - 1 ];
+        }
+        return to;
+    }
+
+    /**
+     * @param packed backward jumps indexed by packed code, or null
+     * @return the same counts indexed by instruction before lowering,
+     * or null
+     */
+    private int[] unpack( int[] packed ) {
+        if ( packed == null ) {
+            return null;
+        }
+        int[] counts = new int[ this.offsets.length ];
+        for ( int i = 0; i < counts.length; ++i ) {
+            if ( this.verified.getTarget( i ) >= 0 ) {
+                counts[ i ] = packed[ this.offsets[ i ] ];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of values the program leaves on the stack
+     */
+    public int getStackSize() {
+        return this.stackSize;
+    }
+
+    /**
+     * @return the number of ints in the packed code
+     */
+    public int length() {
+        return this.code.length;
+    }
+
+    /**
+     * Run this program on the calling thread's Machine and report
+     * the results and loops exactly as {@link Machine#execute} does.
+     */
+    public void execute() {
+        Machine machine = Machine.local();
+        System.out.println( "Executing compiled code..." );
+        run( machine );
+        Machine.report( this.stackSize, machine.getTable() );
+        machine.reportLoops();
+    }
+
+    /**
+     * Assemble, lower and execute some Dendron machine code.
+     * @param args the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        if ( args.length != 1 ) {
+            System.err.println( "Usage: java PackedProgram assembly-code-file" );
+            System.exit( 1 );
+        }
+        try {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( args[ 0 ] );
+            lower( code ).execute();
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
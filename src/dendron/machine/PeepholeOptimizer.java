@@ -0,0 +1,276 @@
+/*
+ * file: PeepholeOptimizer.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shorten a Machine program by rewriting short instruction sequences
+ * into cheaper equivalents. Instructions are copied to an output list
+ * one at a time, and after each one the enabled rules are tried on the
+ * window at the end of the output until none applies. Whole passes are
+ * repeated until a pass changes nothing.
+ *
+ * Rules that remove a pop only fire when the stack is known to hold
+ * enough values there, so a malformed program stays malformed and is
+ * still rejected by {@link VerifiedProgram}.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * The rewrite rules the optimizer knows.
+     */
+    public enum Rule {
+        /** PUSH a; PUSH b; op becomes PUSH (a op b) for any binary operator, unless b is a zero divisor */
+        FOLD_BINARY,
+        /** PUSH a; op becomes PUSH (op a) for any unary operator */
+        FOLD_UNARY,
+        /** NEG; NEG is removed */
+        DOUBLE_NEGATION,
+        /** PUSH 0; ADD|SUB and PUSH 1; MUL|DIV are removed */
+        IDENTITY,
+        /** STORE x; LOAD x becomes DUP; STORE x */
+        STORE_LOAD
+    }
+
+    private final Set< Rule > rules;
+    private final Map< Rule, Integer > hits;
+
+    private List< Machine.Instruction > out;
+    private int[] depths;
+
+    /**
+     * Create an optimizer that uses every rule.
+     */
+    public PeepholeOptimizer() {
+        this( EnumSet.allOf( Rule.class ) );
+    }
+
+    /**
+     * Create an optimizer that uses only some rules.
+     * @param rules the rules to enable
+     */
+    public PeepholeOptimizer( Set< Rule > rules ) {
+        this.rules = EnumSet.copyOf( rules );
+        this.hits = new EnumMap<>( Rule.class );
+        for ( Rule rule: Rule.values() ) {
+            this.hits.put( rule, 0 );
+        }
+    }
+
+    /**
+     * Optimize a program. The original list is not changed.
+     * @param program a list of Machine instructions
+     * @return an equivalent, usually shorter, list of instructions
+     */
+    public List< Machine.Instruction > optimize(
+            List< Machine.Instruction > program ) {
+        List< Machine.Instruction > result = program;
+        boolean changed;
+        do {
+            int before = totalHits();
+            result = pass( result );
+            changed = totalHits() != before;
+        } while ( changed );
+        return result;
+    }
+
+    /**
+     * @return how many times each rule has fired, over every program
+     * this optimizer has processed
+     */
+    public Map< Rule, Integer > getHits() {
+        return new EnumMap<>( this.hits );
+    }
+
+    /**
+     * Show the rule hit counts on standard output.
+     */
+    public void displayHits() {
+        System.out.println( "Peephole rule hits:" );
+        for ( Rule rule: Rule.values() ) {
+            System.out.printf( "%16s : %6d\n", rule, this.hits.get( rule ) );
+        }
+        System.out.println();
+    }
+
+    private int totalHits() {
+        int total = 0;
+        for ( int count: this.hits.values() ) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Copy a program once through the sliding window.
+     * @param program the instructions to copy
+     * @return the rewritten instructions
+     */
+    private List< Machine.Instruction > pass( List< Machine.Instruction > program ) {
+        this.out = new ArrayList<>( program.size() );
+        this.depths = new int[ program.size() + 1 ];
+        for ( Machine.Instruction instr: program ) {
+            append( instr );
+            while ( rewrite() ) {
+                // keep reducing the end of the window
+            }
+        }
+        List< Machine.Instruction > result = this.out;
+        this.out = null;
+        this.depths = null;
+        return result;
+    }
+
+    /**
+     * Add an instruction to the output, recording the stack depth
+     * before it.
+     * @param instr the instruction
+     */
+    private void append( Machine.Instruction instr ) {
+        int n = this.out.size();
+        if ( n + 1 >= this.depths.length ) {
+            this.depths = Arrays.copyOf( this.depths, 2 * ( n + 1 ) );
+        }
+        this.out.add( instr );
+        this.depths[ n + 1 ] = this.depths[ n ] - instr.pops() + instr.pushes();
+    }
+
+    /**
+     * Remove instructions from the end of the output.
+     * @param count how many
+     */
+    private void drop( int count ) {
+        for ( int i = 0; i < count; ++i ) {
+            this.out.remove( this.out.size() - 1 );
+        }
+    }
+
+    /**
+     * Look back from the end of the output.
+     * @param back 0 for the last instruction, 1 for the one before, ...
+     * @return that instruction, or null if there is none
+     */
+    private Machine.Instruction tail( int back ) {
+        int index = this.out.size() - 1 - back;
+        return index >= 0 ? this.out.get( index ) : null;
+    }
+
+    /**
+     * @param back as for {@link #tail(int)}
+     * @return the stack depth before that instruction
+     */
+    private int depthBefore( int back ) {
+        return this.depths[ this.out.size() - 1 - back ];
+    }
+
+    /**
+     * Apply the first enabled rule that matches the end of the output.
+     * @return true if a rule fired
+     */
+    private boolean rewrite() {
+        Machine.Instruction last = tail( 0 );
+        Machine.Instruction prev = tail( 1 );
+        if ( prev == null ) {
+            return false;
+        }
+        if ( enabled( Rule.FOLD_BINARY ) && last instanceof Machine.BinaryOp &&
+             prev instanceof Machine.PushConst &&
+             tail( 2 ) instanceof Machine.PushConst ) {
+            Operator operator = ( ( Machine.BinaryOp )last ).getOperator();
+            int op1 = ( ( Machine.PushConst )tail( 2 ) ).getConstant();
+            int op2 = ( ( Machine.PushConst )prev ).getConstant();
+            if ( !operator.fails( op2 ) ) {
+                drop( 3 );
+                append( new Machine.PushConst( operator.apply( op1, op2 ) ) );
+                return hit( Rule.FOLD_BINARY );
+            }
+        }
+        if ( enabled( Rule.FOLD_UNARY ) && prev instanceof Machine.PushConst &&
+             last instanceof Machine.UnaryOp ) {
+            Operator operator = ( ( Machine.UnaryOp )last ).getOperator();
+            int op = ( ( Machine.PushConst )prev ).getConstant();
+            drop( 2 );
+            append( new Machine.PushConst( operator.apply( op ) ) );
+            return hit( Rule.FOLD_UNARY );
+        }
+        if ( enabled( Rule.DOUBLE_NEGATION ) &&
+             last instanceof Machine.Negate && prev instanceof Machine.Negate &&
+             depthBefore( 1 ) >= 1 ) {
+            drop( 2 );
+            return hit( Rule.DOUBLE_NEGATION );
+        }
+        if ( enabled( Rule.IDENTITY ) && prev instanceof Machine.PushConst &&
+             depthBefore( 1 ) >= 1 ) {
+            int op = ( ( Machine.PushConst )prev ).getConstant();
+            if ( ( op == 0 && ( last instanceof Machine.Add ||
+                                last instanceof Machine.Subtract ) ) ||
+                 ( op == 1 && ( last instanceof Machine.Multiply ||
+                                last instanceof Machine.Divide ) ) ) {
+                drop( 2 );
+                return hit( Rule.IDENTITY );
+            }
+        }
+        if ( enabled( Rule.STORE_LOAD ) && last instanceof Machine.Load &&
+             prev instanceof Machine.Store && depthBefore( 1 ) >= 1 &&
+             ( ( Machine.Load )last ).getName().equals(
+                     ( ( Machine.Store )prev ).getName() ) ) {
+            drop( 2 );
+            append( new Machine.Dup() );
+            append( prev );
+            return hit( Rule.STORE_LOAD );
+        }
+        return false;
+    }
+
+    private boolean enabled( Rule rule ) {
+        return this.rules.contains( rule );
+    }
+
+    private boolean hit( Rule rule ) {
+        this.hits.merge( rule, 1, Integer::sum );
+        return true;
+    }
+
+    /**
+     * Assemble, optimize, list and execute some Dendron machine code,
+     * then show how often each rule fired.
+     * @param args the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        if ( args.length != 1 ) {
+            System.err.println(
+                    "Usage: java PeepholeOptimizer assembly-code-file" );
+            System.exit( 1 );
+        }
+        try {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( args[ 0 ] );
+            PeepholeOptimizer optimizer = new PeepholeOptimizer();
+            List< Machine.Instruction > optimized = optimizer.optimize( code );
+            System.out.println( code.size() + " instructions reduced to " +
+                                optimized.size() );
+            Machine.displayInstructions( optimized );
+            Machine.execute( optimized );
+            System.out.println();
+            optimizer.displayHits();
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * file: RegisterProgram.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.Opcodes;
+import dendron.Operator;
+import dendron.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Machine program translated to three-address register code, such as
+ * r3 = r1 * r2, and run by a single switch loop over a packed int array.
+ *
+ * Every operand is a register. The first registers hold the variables,
+ * one per symbol table slot, numbered in the order the interpreting
+ * Machine would resolve them. Temporaries come next, one for each stack
+ * position the program uses ({@link VerifiedProgram#getMaxDepth}). The
+ * last registers hold the constants the program pushes; they are loaded
+ * before the program starts.
+ *
+ * The translator runs the stack program symbolically, keeping a stack of
+ * registers instead of values. PUSH, LOAD and DUP only push a register
+ * and emit nothing. An operation pops its operands' registers, writes a
+ * temporary, and pushes it. A STORE that follows an operation becomes
+ * that operation's destination, so x := a*b + c*d is three instructions
+ * rather than eight. A variable still waiting on the symbolic stack is
+ * copied to a temporary before the variable is stored over.
+ *
+ * Variables are copied back to the symbol table when the program ends,
+ * so the symbol table dump and the printed output match the stack
+ * Machine's. If it ends with an error, only the variables the stack
+ * Machine would have stored by then are copied back. As in {@link JitCompiler}, a load of a variable that cannot
+ * yet have a value is translated to the same error report the stack
+ * Machine would make at that point, and translation stops there.
+ *
+ * Only straight-line programs are translated, since the symbolic stack
+ * would have to be merged where branches join. A program with labels
+ * and branches is refused; run it on the stack Machine or as a
+ * {@link PackedProgram}.
+ *
+ * The code is made of these instructions:
+ * <pre>
+ *   MOVE d a             rd = ra
+ *   (binary op) d a b    rd = ra op rb, opcode as in {@link Operator}
+ *   (unary op) d a       rd = op ra
+ *   PRINT a              print ra
+ *   UNINITIALIZED s      report the variable in slot s uninitialized
+ * </pre>
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class RegisterProgram {
+
+    /**
+     * opcodes of the instructions only register code has, which reuse
+     * those of PUSH and LOAD, since register code has neither
+     */
+    private static final int MOVE = Opcodes.PUSH, UNINITIALIZED = Opcodes.LOAD;
+
+    private final int[] code;
+    private final int[] registers;
+    private final String[] idents;
+    private final int[] stored;
+    private final int[] storedAt;
+    private final int temporaries;
+    private final int instructions;
+    private final int stackSize;
+
+    private RegisterProgram( int[] code, int[] registers, String[] idents,
+                             int[] stored, int[] storedAt, int temporaries,
+                             int instructions, int stackSize ) {
+        this.code = code;
+        this.registers = registers;
+        this.idents = idents;
+        this.stored = stored;
+        this.storedAt = storedAt;
+        this.temporaries = temporaries;
+        this.instructions = instructions;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Translate a stack program to register code.
+     * @param program a list of Machine instructions
+     * @return the register program
+     * @throws IllegalArgumentException if the program branches, or
+     * contains an instruction that has no opcode
+     * @throws DendronException if the program would underflow the stack
+     */
+    public static RegisterProgram translate( List< Machine.Instruction > program ) {
+        VerifiedProgram verified = VerifiedProgram.verify( program );
+        if ( verified.hasBranches() ) {
+            throw new IllegalArgumentException(
+                    "register code cannot be made for a program with branches" );
+        }
+        return new Translator( verified ).translate();
+    }
+
+    /**
+     * The state of one translation: the symbolic stack of registers and
+     * the code emitted so far.
+     */
+    private static class Translator {
+        private final VerifiedProgram verified;
+        private final Map< String, Integer > variables = new LinkedHashMap<>();
+        private final Map< Integer, Integer > constantRegisters = new HashMap<>();
+        private final List< Integer > constants = new ArrayList<>();
+        private final int firstTemporary;
+        private final int[] stack;
+        private final boolean[] stored;
+        /** where in the code each variable is first written */
+        private final int[] storedAt;
+        private int sp = 0;
+        private int[] code;
+        private int pc = 0;
+        private int instructions = 0;
+        /** where in the code the last operation's destination is, or -1 */
+        private int lastDestination = -1;
+
+        /**
+         * Prepare to translate a program, giving each of its variables a
+         * register.
+         * @param verified the program
+         */
+        private Translator( VerifiedProgram verified ) {
+            this.verified = verified;
+            for ( Machine.Instruction instr: verified.getProgram() ) {
+                String name = Machine.variable( instr );
+                if ( name != null ) {
+                    this.variables.putIfAbsent( name, this.variables.size() );
+                }
+            }
+            this.firstTemporary = this.variables.size();
+            this.stack = new int[ verified.getMaxDepth() ];
+            this.stored = new boolean[ this.variables.size() ];
+            this.storedAt = new int[ this.variables.size() ];
+            this.code = new int[ 4 * verified.getProgram().size() ];
+        }
+
+        /**
+         * Run the program symbolically, emitting register code.
+         * @return the register program
+         */
+        private RegisterProgram translate() {
+            for ( Machine.Instruction instr: this.verified.getProgram() ) {
+                int opcode = BinaryProgram.opcode( instr );
+                if ( opcode == Opcodes.PUSH ) {
+                    push( constant( ( ( Machine.PushConst )instr ).getConstant() ) );
+                }
+                else if ( opcode == Opcodes.LOAD ) {
+                    int var = this.variables.get( Machine.variable( instr ) );
+                    if ( !this.stored[ var ] ) {
+                        emit( UNINITIALIZED, var );
+                        break;
+                    }
+                    push( var );
+                }
+                else if ( opcode == Opcodes.STORE ) {
+                    store( this.variables.get( Machine.variable( instr ) ) );
+                }
+                else if ( opcode == Opcodes.PRINT ) {
+                    emit( Opcodes.PRINT, this.stack[ --this.sp ] );
+                }
+                else if ( opcode == Opcodes.DUP ) {
+                    push( this.stack[ this.sp - 1 ] );
+                }
+                else if ( opcode == Opcodes.LABEL ) {
+                    // a label no branch names; nothing to do
+                }
+                else if ( Operator.forOpcode( opcode ).getArity() == 2 ) {
+                    int b = this.stack[ --this.sp ];
+                    int a = this.stack[ --this.sp ];
+                    int d = temporary( this.sp );
+                    emit( opcode, d, a, b );
+                    this.lastDestination = this.pc - 3;
+                    push( d );
+                }
+                else {
+                    int a = this.stack[ --this.sp ];
+                    int d = temporary( this.sp );
+                    emit( opcode, d, a );
+                    this.lastDestination = this.pc - 2;
+                    push( d );
+                }
+            }
+
+            int firstConstant = this.firstTemporary + this.stack.length;
+            int[] registers = new int[ firstConstant + this.constants.size() ];
+            for ( int c = 0; c < this.constants.size(); ++c ) {
+                registers[ firstConstant + c ] = this.constants.get( c );
+            }
+            int[] code = Arrays.copyOf( this.code, this.pc );
+            for ( int i = 0; i < code.length; i += width( code[ i ] ) ) {
+                for ( int j = i + 1; j < i + width( code[ i ] ); ++j ) {
+                    if ( code[ i ] != UNINITIALIZED && code[ j ] < 0 ) {
+                        code[ j ] = firstConstant + ~code[ j ];
+                    }
+                }
+            }
+            int count = 0;
+            for ( boolean isStored: this.stored ) {
+                count += isStored ? 1 : 0;
+            }
+            int[] stored = new int[ count ];
+            int[] storedAt = new int[ count ];
+            count = 0;
+            for ( int var = 0; var < this.stored.length; ++var ) {
+                if ( this.stored[ var ] ) {
+                    storedAt[ count ] = this.storedAt[ var ];
+                    stored[ count++ ] = var;
+                }
+            }
+            return new RegisterProgram( code, registers,
+                                        this.variables.keySet().toArray( new String[ 0 ] ),
+                                        stored, storedAt, this.stack.length,
+                                        this.instructions, this.verified.getStackSize() );
+        }
+
+        /**
+         * Find the register that holds a constant. Constant registers are
+         * numbered only once the number of temporaries is known, so until
+         * then constant c is written as ~c.
+         * @param value the constant
+         * @return the (provisional) register
+         */
+        private int constant( int value ) {
+            Integer index = this.constantRegisters.get( value );
+            if ( index == null ) {
+                index = this.constants.size();
+                this.constantRegisters.put( value, index );
+                this.constants.add( value );
+            }
+            return ~index;
+        }
+
+        /**
+         * @param position a stack position
+         * @return the temporary that holds values at that position
+         */
+        private int temporary( int position ) {
+            return this.firstTemporary + position;
+        }
+
+        /**
+         * Push a register on the symbolic stack.
+         * @param register the register
+         */
+        private void push( int register ) {
+            this.stack[ this.sp++ ] = register;
+        }
+
+        /**
+         * Store the top of the symbolic stack in a variable. If the
+         * value was just computed, the computation writes the variable
+         * directly; otherwise it is moved there.
+         * @param var the variable's register
+         */
+        private void store( int var ) {
+            int source = this.stack[ --this.sp ];
+            boolean retarget = this.lastDestination >= 0 &&
+                               this.code[ this.lastDestination ] == source &&
+                               source >= this.firstTemporary && !waiting( var );
+            if ( retarget ) {
+                if ( !this.stored[ var ] ) {
+                    this.storedAt[ var ] = this.lastDestination - 1;
+                }
+                this.code[ this.lastDestination ] = var;
+                for ( int i = 0; i < this.sp; ++i ) {
+                    if ( this.stack[ i ] == source ) {
+                        this.stack[ i ] = var;
+                    }
+                }
+            }
+            else {
+                for ( int i = 0; i < this.sp; ++i ) {
+                    if ( this.stack[ i ] == var ) {
+                        emit( MOVE, temporary( i ), var );
+                        this.stack[ i ] = temporary( i );
+                    }
+                }
+                emit( MOVE, var, source );
+                if ( !this.stored[ var ] ) {
+                    this.storedAt[ var ] = this.pc - 3;
+                }
+            }
+            this.stored[ var ] = true;
+        }
+
+        /**
+         * @param var a variable's register
+         * @return true if the variable's current value is still on the
+         * symbolic stack, waiting to be used
+         */
+        private boolean waiting( int var ) {
+            for ( int i = 0; i < this.sp; ++i ) {
+                if ( this.stack[ i ] == var ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Append an instruction to the code.
+         * @param operands the opcode and then its operands
+         */
+        private void emit( int... operands ) {
+            if ( this.pc + operands.length > this.code.length ) {
+                this.code = Arrays.copyOf( this.code, 2 * this.code.length + 4 );
+            }
+            for ( int operand: operands ) {
+                this.code[ this.pc++ ] = operand;
+            }
+            ++this.instructions;
+            this.lastDestination = -1;
+        }
+    }
+
+    /**
+     * @param opcode an instruction's opcode
+     * @return how many ints the instruction takes up in the code
+     */
+    private static int width( int opcode ) {
+        switch ( opcode ) {
+            case MOVE: return 3;
+            case UNINITIALIZED:
+            case Opcodes.PRINT: return 2;
+            default: return Operator.forOpcode( opcode ).getArity() + 2;
+        }
+    }
+
+    /**
+     * Reset a Machine and run this program against its symbol table. If
+     * the program reports an error, the variables stored before it are
+     * still copied back, as the stack Machine would have left them.
+     * @param machine the execution context
+     */
+    public void run( Machine machine ) {
+        machine.reset();
+        SymbolTable table = machine.getTable();
+        for ( String ident: this.idents ) {
+            table.slot( ident );
+        }
+        int[] code = this.code;
+        int[] r = this.registers.clone();
+        int pc = 0;
+        try {
+            while ( pc < code.length ) {
+                int opcode = code[ pc ];
+                switch ( opcode ) {
+                    case MOVE:
+                        r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ];
+                        pc += 3;
+                        break;
+                    case Opcodes.ADD:
+                        r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] + r[ code[ pc + 3 ] ];
+                        pc += 4;
+                        break;
+                    case Opcodes.SUB:
+                        r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] - r[ code[ pc + 3 ] ];
+                        pc += 4;
+                        break;
+                    case Opcodes.MUL:
+                        r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] * r[ code[ pc + 3 ] ];
+                        pc += 4;
+                        break;
+                    case Opcodes.DIV:
+                        r[ code[ pc + 1 ] ] = Operator.DIV.apply( r[ code[ pc + 2 ] ],
+                                                                  r[ code[ pc + 3 ] ] );
+                        pc += 4;
+                        break;
+                    case Opcodes.NEG:
+                        r[ code[ pc + 1 ] ] = -r[ code[ pc + 2 ] ];
+                        pc += 3;
+                        break;
+                    case Opcodes.SQRT:
+                        r[ code[ pc + 1 ] ] = ( int )Math.sqrt( r[ code[ pc + 2 ] ] );
+                        pc += 3;
+                        break;
+                    case Opcodes.PRINT:
+                        Machine.print( r[ code[ pc + 1 ] ] );
+                        pc += 2;
+                        break;
+                    case UNINITIALIZED:
+                        table.get( code[ pc + 1 ] );
+                        return;
+                    default:
+                        Operator op = Operator.forOpcode( opcode );
+                        if ( op.getArity() == 2 ) {
+                            r[ code[ pc + 1 ] ] = op.apply( r[ code[ pc + 2 ] ],
+                                                            r[ code[ pc + 3 ] ] );
+                            pc += 4;
+                        }
+                        else {
+                            r[ code[ pc + 1 ] ] = op.apply( r[ code[ pc + 2 ] ] );
+                            pc += 3;
+                        }
+                }
+            }
+        }
+        finally {
+            writeBack( table, r, pc );
+        }
+    }
+
+    /**
+     * Copy back to the symbol table every variable first written before
+     * a point in the code.
+     * @param table the symbol table
+     * @param r the registers
+     * @param end where the program stopped: the length of the code, or
+     *            the instruction that reported an error
+     */
+    private void writeBack( SymbolTable table, int[] r, int end ) {
+        for ( int i = 0; i < this.stored.length; ++i ) {
+            if ( this.storedAt[ i ] < end ) {
+                table.put( this.stored[ i ], r[ this.stored[ i ] ] );
+            }
+        }
+    }
+
+    /**
+     * @return the number of values the program leaves on the stack
+     */
+    public int getStackSize() {
+        return this.stackSize;
+    }
+
+    /**
+     * @return the number of register instructions, each of which is one
+     * dispatch of the loop
+     */
+    public int length() {
+        return this.instructions;
+    }
+
+    /**
+     * @return the number of registers: variables, temporaries and
+     * constants
+     */
+    public int getRegisterCount() {
+        return this.registers.length;
+    }
+
+    /**
+     * Run this program on the calling thread's Machine and report
+     * the results exactly as {@link Machine#execute} does.
+     */
+    public void execute() {
+        Machine machine = Machine.local();
+        System.out.println( "Executing compiled code..." );
+        run( machine );
+        Machine.report( this.stackSize, machine.getTable() );
+    }
+
+    /**
+     * Disassemble the program: first what each variable and constant
+     * register holds, then one line per instruction.
+     * @return the lines of the listing
+     */
+    public List< String > disassemble() {
+        List< String > lines = new ArrayList<>();
+        for ( int var = 0; var < this.idents.length; ++var ) {
+            lines.add( "; r" + var + " is " + this.idents[ var ] );
+        }
+        int firstConstant = this.idents.length + this.temporaries;
+        if ( this.temporaries > 0 ) {
+            lines.add( "; r" + this.idents.length + ".." + ( firstConstant - 1 ) +
+                       " are temporaries" );
+        }
+        for ( int reg = firstConstant; reg < this.registers.length; ++reg ) {
+            lines.add( "; r" + reg + " is " + this.registers[ reg ] );
+        }
+        int[] code = this.code;
+        for ( int pc = 0; pc < code.length; pc += width( code[ pc ] ) ) {
+            switch ( code[ pc ] ) {
+                case MOVE:
+                    lines.add( "r" + code[ pc + 1 ] + " = r" + code[ pc + 2 ] );
+                    break;
+                case Opcodes.PRINT:
+                    lines.add( Opcodes.getMnemonic( Opcodes.PRINT ) + " r" + code[ pc + 1 ] );
+                    break;
+                case UNINITIALIZED:
+                    lines.add( "UNINITIALIZED " + this.idents[ code[ pc + 1 ] ] );
+                    break;
+                default:
+                    Operator op = Operator.forOpcode( code[ pc ] );
+                    if ( op.getArity() == 2 ) {
+                        lines.add( "r" + code[ pc + 1 ] + " = r" + code[ pc + 2 ] +
+                                   " " + op.getSymbol() + " r" + code[ pc + 3 ] );
+                    }
+                    else {
+                        lines.add( "r" + code[ pc + 1 ] + " = " + op.getMnemonic() +
+                                   " r" + code[ pc + 2 ] );
+                    }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Generate a listing of this program on standard output, in the
+     * style of {@link Machine#displayInstructions}.
+     */
+    public void displayInstructions() {
+        System.out.println( "\nRegister code:" );
+        for ( String line: disassemble() ) {
+            System.out.println( line );
+        }
+        System.out.println();
+    }
+
+    /**
+     * Assemble, translate and execute some Dendron machine code.
+     * @param args optionally -list, to show the register code first, and
+     *             the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        boolean list = args.length == 2 && args[ 0 ].equals( "-list" );
+        if ( args.length != ( list ? 2 : 1 ) ) {
+            System.err.println(
+                    "Usage: java RegisterProgram [-list] assembly-code-file" );
+            System.err.println( "Programs with branches cannot be " +
+                                "translated; run them with PackedProgram." );
+            System.exit( 1 );
+        }
+        try {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( args[ args.length - 1 ] );
+            RegisterProgram program = translate( code );
+            if ( list ) {
+                program.displayInstructions();
+            }
+            program.execute();
+        }
+        catch ( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
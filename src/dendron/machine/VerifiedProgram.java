@@ -0,0 +1,291 @@
+/*
+ * file: VerifiedProgram.java
+ */
+
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Machine program whose use of the value stack has been checked before
+ * it runs.
+ *
+ * In straight-line code the stack depth before each instruction follows
+ * from the pops and pushes of the instructions before it, and verification
+ * walks the program once. When the program branches, every label is first
+ * matched with the branches that name it, and depths are then carried
+ * along every path; two paths that reach an instruction with different
+ * depths are rejected. Either way verification proves that no instruction
+ * takes more values than the stack holds, and it finds the greatest depth
+ * the stack reaches and how many values are left on it at the end. A
+ * program that would underflow is rejected before any of it runs, with
+ * the offset of the instruction at fault.
+ *
+ * A Machine runs a verified program on a stack reserved once at exactly
+ * its maximum depth, so no instruction checks the stack's bounds. The
+ * other back ends take their stack figures from here too.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class VerifiedProgram {
+
+    private final List< Machine.Instruction > program;
+    private final Machine.Instruction[] instructions;
+    private final int[] targets;
+    private final int initialDepth;
+    private final int maxDepth;
+    private final int stackSize;
+
+    private VerifiedProgram( List< Machine.Instruction > program,
+                             Machine.Instruction[] instructions, int[] targets,
+                             int initialDepth, int maxDepth, int stackSize ) {
+        this.program = program;
+        this.instructions = instructions;
+        this.targets = targets;
+        this.initialDepth = initialDepth;
+        this.maxDepth = maxDepth;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Verify a program that starts on an empty stack.
+     * @param program a list of Machine instructions
+     * @return the verified program
+     * @throws DendronException if an instruction would pop an empty stack,
+     * a label is undefined or defined twice, or paths that join disagree
+     * on the stack depth
+     */
+    public static VerifiedProgram verify( List< Machine.Instruction > program ) {
+        return verify( program, 0 );
+    }
+
+    /**
+     * Verify a program that starts with values already on the stack.
+     * @param program a list of Machine instructions
+     * @param initialDepth how many values the stack holds at the start
+     * @return the verified program
+     * @throws DendronException if an instruction would pop an empty stack,
+     * a label is undefined or defined twice, or paths that join disagree
+     * on the stack depth
+     */
+    public static VerifiedProgram verify( List< Machine.Instruction > program,
+                                          int initialDepth ) {
+        Machine.Instruction[] code =
+                program.toArray( new Machine.Instruction[ 0 ] );
+        int[] targets = link( code );
+        if ( targets == null ) {
+            int depth = initialDepth;
+            int maxDepth = initialDepth;
+            for ( int offset = 0; offset < code.length; ++offset ) {
+                depth = step( code, offset, depth );
+                maxDepth = Math.max( maxDepth, depth );
+            }
+            return new VerifiedProgram( program, code, null, initialDepth,
+                                        maxDepth, depth );
+        }
+
+        // depths[ i ] is the depth before instruction i, or -1 until some
+        // path reaches it; depths[ code.length ] is the depth at the end.
+        int[] depths = new int[ code.length + 1 ];
+        Arrays.fill( depths, -1 );
+        int[] work = new int[ code.length + 1 ];
+        int pending = 0;
+        depths[ 0 ] = initialDepth;
+        work[ pending++ ] = 0;
+        int maxDepth = initialDepth;
+        while ( pending > 0 ) {
+            int offset = work[ --pending ];
+            if ( offset == code.length ) {
+                continue;
+            }
+            int depth = step( code, offset, depths[ offset ] );
+            maxDepth = Math.max( maxDepth, depth );
+            Machine.Instruction instr = code[ offset ];
+            // The fall-through path is pushed last so it is followed first.
+            if ( targets[ offset ] >= 0 &&
+                 flow( depths, targets[ offset ], depth, offset ) ) {
+                work[ pending++ ] = targets[ offset ];
+            }
+            if ( !( instr instanceof Machine.Jump ) &&
+                 flow( depths, offset + 1, depth, offset ) ) {
+                work[ pending++ ] = offset + 1;
+            }
+        }
+        int stackSize = Math.max( depths[ code.length ], 0 );
+        return new VerifiedProgram( program, code, targets, initialDepth,
+                                    maxDepth, stackSize );
+    }
+
+    /**
+     * Check one instruction against the stack depth before it.
+     * @param code the program
+     * @param offset the instruction's index
+     * @param depth the stack depth before it
+     * @return the stack depth after it
+     * @throws DendronException if the instruction would pop an empty stack
+     */
+    private static int step( Machine.Instruction[] code, int offset,
+                             int depth ) {
+        Machine.Instruction instr = code[ offset ];
+        int pops = instr.pops();
+        if ( depth < pops ) {
+            Errors.report( Errors.Type.STACK_UNDERFLOW,
+                           "instruction " + offset + " (" + instr +
+                           ") needs " + pops + " but the stack holds " +
+                           depth );
+        }
+        return depth + instr.pushes() - pops;
+    }
+
+    /**
+     * Carry a stack depth along a path to an instruction.
+     * @param depths the depth known before each instruction, or -1
+     * @param to the index of the instruction reached
+     * @param depth the depth the path arrives with
+     * @param from the index of the instruction the path leaves
+     * @return true if the instruction was not reached before
+     * @throws DendronException if the instruction was reached before
+     * with a different depth
+     */
+    private static boolean flow( int[] depths, int to, int depth, int from ) {
+        if ( depths[ to ] < 0 ) {
+            depths[ to ] = depth;
+            return true;
+        }
+        if ( depths[ to ] != depth ) {
+            Errors.report( Errors.Type.STACK_MISMATCH,
+                           "instruction " + to + " is reached with " +
+                           depths[ to ] + " and, from instruction " + from +
+                           ", with " + depth );
+        }
+        return false;
+    }
+
+    /**
+     * Match every branch with the label it names.
+     * @param code the program
+     * @return for each instruction, the index of the label it branches
+     * to, or -1 if it is not a branch; null if the program has no branches
+     * @throws DendronException if a label is defined twice, or a branch
+     * names a label that is not defined
+     */
+    private static int[] link( Machine.Instruction[] code ) {
+        Map< String, Integer > labels = null;
+        boolean branches = false;
+        for ( int offset = 0; offset < code.length; ++offset ) {
+            Machine.Instruction instr = code[ offset ];
+            if ( instr instanceof Machine.Label ) {
+                if ( labels == null ) {
+                    labels = new HashMap<>();
+                }
+                String name = ( ( Machine.Label )instr ).getName();
+                if ( labels.put( name, offset ) != null ) {
+                    Errors.report( Errors.Type.ILLEGAL_LABEL,
+                                   "instruction " + offset + " defines " +
+                                   name + " again" );
+                }
+            }
+            else if ( instr instanceof Machine.Branch ) {
+                branches = true;
+            }
+        }
+        if ( !branches ) {
+            return null;
+        }
+        int[] targets = new int[ code.length ];
+        for ( int offset = 0; offset < code.length; ++offset ) {
+            targets[ offset ] = -1;
+            if ( code[ offset ] instanceof Machine.Branch ) {
+                String name = ( ( Machine.Branch )code[ offset ] ).getLabel();
+                Integer target = labels == null ? null : labels.get( name );
+                if ( target == null ) {
+                    Errors.report( Errors.Type.ILLEGAL_LABEL,
+                                   "instruction " + offset + " (" +
+                                   code[ offset ] + ") names no label" );
+                }
+                targets[ offset ] = target;
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return the instructions
+     */
+    public List< Machine.Instruction > getProgram() {
+        return this.program;
+    }
+
+    /**
+     * @return the instructions, indexed by offset; not to be modified
+     */
+    public Machine.Instruction[] getInstructions() {
+        return this.instructions;
+    }
+
+    /**
+     * @return true if the program contains any branch
+     */
+    public boolean hasBranches() {
+        return this.targets != null;
+    }
+
+    /**
+     * @param offset the index of an instruction
+     * @return the index of the label the instruction branches to, or -1
+     * if it is not a branch
+     */
+    public int getTarget( int offset ) {
+        return this.targets == null ? -1 : this.targets[ offset ];
+    }
+
+    /**
+     * @return the number of values the stack holds when the program starts
+     */
+    public int getInitialDepth() {
+        return this.initialDepth;
+    }
+
+    /**
+     * @return the greatest number of values the stack holds at any point
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return the number of values the program leaves on the stack
+     */
+    public int getStackSize() {
+        return this.stackSize;
+    }
+
+    /**
+     * Assemble and verify some Dendron machine code, and show its
+     * stack figures.
+     * @param args the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        if ( args.length != 1 ) {
+            System.err.println( "Usage: java VerifiedProgram assembly-code-file" );
+            System.exit( 1 );
+        }
+        try {
+            VerifiedProgram verified =
+                    verify( InstructionReader.assemble( args[ 0 ] ) );
+            System.out.println( verified.program.size() + " instructions, " +
+                                "maximum stack depth " + verified.maxDepth +
+                                ", " + verified.stackSize +
+                                " items left on the stack." );
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
+    }
+}
@@ -4,7 +4,9 @@
 
 package dendron.tree;
 
-import java.util.Map;
+import dendron.SymbolTable;
+
+import java.util.Set;
 
 /**
  * A dendron.tree.DendronNode that performs an action but does not
@@ -20,5 +22,36 @@ public interface ActionNode extends DendronNode {
      * things like changing variable values.
      * @param symTab the table where variable values are stored
      */
-    void execute( Map< String, Integer > symTab );
+    void execute( SymbolTable symTab );
+
+    /**
+     * Simplify the expressions used by this action.
+     * @param assigned the variables that are certain to have a value
+     *                 when this action runs; updated with any variable
+     *                 the action assigns
+     * @see ExpressionNode#optimize(Set)
+     */
+    void optimize( Set< String > assigned );
+
+    /**
+     * Give value numbers to the expressions used by this action.
+     * @param vn the numbering being built
+     * @see ExpressionNode#number(ValueNumbering)
+     */
+    void number( ValueNumbering vn );
+
+    /**
+     * Eliminate common subexpressions from the expressions used by
+     * this action.
+     * @param vn the numbering built for the whole program
+     * @see ExpressionNode#eliminate(ValueNumbering)
+     */
+    void eliminate( ValueNumbering vn );
+
+    /**
+     * Compile this action into a closure that has the same effect as
+     * {@link #execute}. Identifiers must already be resolved.
+     * @return the closure
+     */
+    Closure.Action closure();
 }
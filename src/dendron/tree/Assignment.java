@@ -1,11 +1,11 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.SymbolTable;
 import dendron.Errors;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * An ActionNode that represents the assignment of the value of an expression
@@ -16,6 +16,7 @@ import java.util.Map;
 public class Assignment implements ActionNode {
     private String ident;
     private ExpressionNode rhs;
+    private int slot;
     /**
      * Set up an Assignment node. Note that the identifier is not turned into a
      * Variable node. The reason is that the variable's value is not needed;
@@ -27,11 +28,19 @@ public class Assignment implements ActionNode {
      * assignment statement
      */
     public Assignment(String ident, ExpressionNode rhs) {
-        if (!ident.matches( "^[a-zA-Z].*" )) {
+        if (!Lexer.isIdentifier(ident)) {
             Errors.report(Errors.Type.ILLEGAL_VALUE, ident + " :=");
         }
         this.ident = ident;
         this.rhs = rhs;
+        this.slot = -1;
+    }
+
+    /**
+     * @return the name of the variable being assigned
+     */
+    String getIdent() {
+        return this.ident;
     }
 
     /**
@@ -40,9 +49,9 @@ public class Assignment implements ActionNode {
      * @param symTab the table where variable values are stored
      */
     @Override
-    public void execute(Map<String, Integer> symTab) {
+    public void execute(SymbolTable symTab) {
         int result = this.rhs.evaluate(symTab);
-        symTab.put(this.ident,result);
+        symTab.put(this.slot,result);
     }
 
     /**
@@ -57,18 +66,81 @@ public class Assignment implements ActionNode {
     }
 
     /**
-     * This method returns a STORE instruction for the variable in question
+     * This method appends a STORE instruction for the variable in question
      * preceded by the code emitted by the RHS node that eventually pushes the
      * value of the expression onto the stack.
      *
-     * @return a list of instructions ending in one that stores the top value
-     * on the stack to this node's variable
+     * @param code the buffer to which the instructions are appended, ending
+     * in one that stores the top value on the stack to this node's variable
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.rhs.emit(code);
+        code.add(new Machine.Store(this.ident));
+    }
+
+    /**
+     * Resolve the RHS expression, then give the target variable its slot.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        this.rhs.resolve(symTab);
+        this.slot = symTab.slot(this.ident);
+    }
+
+    /**
+     * Simplify the RHS expression. Once this statement has run, its
+     * variable is certain to have a value.
+     *
+     * @param assigned the variables certain to have a value so far
+     */
+    @Override
+    public void optimize(Set<String> assigned) {
+        this.rhs = this.rhs.optimize(assigned);
+        assigned.add(this.ident);
+    }
+
+    /**
+     * Number the RHS expression, then record that the variable has a
+     * new value.
+     *
+     * @param vn the numbering being built
+     */
+    @Override
+    public void number(ValueNumbering vn) {
+        this.rhs.number(vn);
+        vn.assign(this.ident);
+    }
+
+    /**
+     * Eliminate common subexpressions from the RHS expression.
+     *
+     * @param vn the numbering built for the whole program
+     */
+    @Override
+    public void eliminate(ValueNumbering vn) {
+        this.rhs = this.rhs.eliminate(vn);
+    }
+
+    /**
+     * @return a closure that stores the RHS closure's value in the
+     * variable's slot
+     * @see TreeWalker#closure
+     */
+    @Override
+    public Closure.Action closure() {
+        Closure.Expression rhs = TreeWalker.closure(this.rhs);
+        int slot = this.slot;
+        return symTab -> symTab.put(slot, rhs.evaluate(symTab));
+    }
+
+    /**
+     * @return one more than the size of the RHS expression
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        instructions.addAll(this.rhs.emit());
-        instructions.add(new Machine.Store(this.ident));
-        return instructions;
+    public int size() {
+        return 1 + this.rhs.size();
     }
 }
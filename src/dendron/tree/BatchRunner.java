@@ -0,0 +1,347 @@
+/*
+ * file: BatchRunner.java
+ */
+
+package dendron.tree;
+
+import dendron.DendronException;
+import dendron.Output;
+import dendron.OutputSink;
+import dendron.SymbolTable;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run a whole batch of Dendron programs in one Java virtual machine, on
+ * a pool of worker threads, instead of starting a new one per program.
+ *
+ * Files ending in ".denm" are assembled and run on a Machine. Any other
+ * file holds a program in Dendron's token language; it is parsed, given
+ * the optimizations named by the dendron.optimize property, and then
+ * either compiled and run on a Machine or, with -tree, run by the tree
+ * interpreter. Each program runs on its worker's own Machine (or its
+ * own tree's symbol table), with its printed values captured by a sink
+ * of its own, so programs cannot see each other's state. A program that
+ * fails is reported as failed, and the rest of the batch carries on.
+ *
+ * Results are shown in the order the programs were listed: each
+ * program's status and latency, what it printed and its final
+ * variables, followed by the batch's aggregate throughput.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class BatchRunner {
+
+    /**
+     * What happened when one program was run.
+     */
+    public static class Result {
+        private final String name;
+        private final long nanos;
+        private final String output;
+        private final Map<String,Integer> variables;
+        private final String error;
+
+        private Result(String name, long nanos, String output,
+                       Map<String,Integer> variables, String error) {
+            this.name = name;
+            this.nanos = nanos;
+            this.output = output;
+            this.variables = variables;
+            this.error = error;
+        }
+
+        /**
+         * @return the name of the program's file
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return how long reading and running the program took, in
+         * nanoseconds
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return everything the program printed, as it would have
+         * appeared on the console
+         */
+        public String getOutput() {
+            return this.output;
+        }
+
+        /**
+         * @return the program's final variables, or null if it failed
+         */
+        public Map<String,Integer> getVariables() {
+            return this.variables;
+        }
+
+        /**
+         * @return why the program failed, or null if it did not
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        /**
+         * @return true if the program ran to completion
+         */
+        public boolean succeeded() {
+            return this.error == null;
+        }
+    }
+
+    private final boolean tree;
+    private final ExecutorService workers;
+
+    /**
+     * Create a batch runner with its pool of worker threads.
+     *
+     * @param tree if true, run token programs with the tree interpreter;
+     *             if false, compile them and run them on a Machine
+     * @param threads how many programs to run at a time
+     */
+    public BatchRunner(boolean tree, int threads) {
+        this.tree = tree;
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "dendron-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start running every program in a list. They may finish in any
+     * order, but the results are returned in the order of the list.
+     *
+     * @param files the program files
+     * @return one future result per file
+     */
+    public List<Future<Result>> submit(List<Path> files) {
+        List<Future<Result>> results = new ArrayList<>(files.size());
+        for (Path file : files) {
+            results.add(this.workers.submit(() -> run(file)));
+        }
+        return results;
+    }
+
+    /**
+     * Stop the worker threads once everything submitted has run.
+     */
+    public void shutdown() {
+        this.workers.shutdown();
+    }
+
+    /**
+     * Read and run one program on the calling thread, capturing what it
+     * prints and catching whatever goes wrong.
+     *
+     * @param file the program file
+     * @return what happened
+     */
+    public Result run(Path file) {
+        String name = file.toString();
+        Output.Collector printed = new Output.Collector();
+        OutputSink previous = Output.capture(printed);
+        long start = System.nanoTime();
+        try {
+            Map<String,Integer> variables = execute(file).toMap();
+            return new Result(name, System.nanoTime() - start,
+                              printed.toString(), variables, null);
+        } catch (DendronException e) {
+            return failure(name, start, printed, e.getMessage());
+        } catch (IOException e) {
+            return failure(name, start, printed, "could not read: " + e);
+        } catch (RuntimeException | StackOverflowError e) {
+            return failure(name, start, printed, e.toString());
+        } finally {
+            Output.capture(previous);
+        }
+    }
+
+    /**
+     * Record a program that failed.
+     *
+     * @param name the name of the program's file
+     * @param start when the program started, from System.nanoTime()
+     * @param printed what it printed before it failed
+     * @param error why it failed
+     * @return the result
+     */
+    private static Result failure(String name, long start,
+                                  Output.Collector printed, String error) {
+        return new Result(name, System.nanoTime() - start,
+                          printed.toString(), null, error);
+    }
+
+    /**
+     * Read and run one program.
+     *
+     * @param file the program file
+     * @return the program's final symbol table
+     * @throws IOException if the file cannot be read
+     */
+    private SymbolTable execute(Path file) throws IOException {
+        List<Machine.Instruction> code;
+        if (file.toString().endsWith(".denm")) {
+            code = InstructionReader.assemble(file.toString());
+            if (code == null) {
+                throw new IOException(file.toString());
+            }
+        } else {
+            ParseTree program = new ParseTree(
+                    new Lexer(ByteBuffer.wrap(Files.readAllBytes(file))));
+            program.applyOptimizations();
+            if (this.tree) {
+                return program.run();
+            }
+            code = program.compile();
+        }
+        Machine machine = Machine.local();
+        machine.run(code);
+        return machine.getTable();
+    }
+
+    /**
+     * Find the programs named on the command line. A directory stands
+     * for all the files in it, in order by name. Any other file is a
+     * manifest listing one program file per line, relative to the
+     * manifest; blank lines and lines starting with '#' are skipped.
+     *
+     * @param names directories and manifests
+     * @return the program files
+     * @throws IOException if a manifest cannot be read
+     */
+    public static List<Path> programs(List<String> names) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String name : names) {
+            File dir = new File(name);
+            File[] contents = dir.listFiles(File::isFile);
+            if (contents != null) {
+                Arrays.sort(contents);
+                for (File file : contents) {
+                    files.add(file.toPath());
+                }
+            } else {
+                Path manifest = Paths.get(name);
+                Path base = manifest.toAbsolutePath().getParent();
+                for (String line : Files.readAllLines(manifest)) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        files.add(base.resolve(line).normalize());
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Show one program's result on standard output.
+     *
+     * @param result the result
+     */
+    private static void display(Result result) {
+        System.out.printf("%s: %s in %.3f ms%n", result.getName(),
+                          result.succeeded() ? "ok" : "FAILED",
+                          result.getNanos() / 1e6);
+        System.out.print(result.getOutput());
+        if (result.succeeded()) {
+            System.out.println("    variables: " + result.getVariables());
+        } else {
+            System.out.println("    error: " + result.getError());
+        }
+    }
+
+    /**
+     * Run a batch of Dendron programs and report on each, and on the
+     * whole batch.
+     *
+     * @param args optionally "-tree" to interpret token programs rather
+     *             than compile them, optionally "-threads" and a count
+     *             (default: the number of processors), then one or more
+     *             directories or manifests
+     */
+    public static void main(String... args)
+            throws IOException, InterruptedException {
+        boolean tree = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int arg = 0;
+        for (; arg < args.length && args[arg].startsWith("-"); ++arg) {
+            if (args[arg].equals("-tree")) {
+                tree = true;
+            } else if (args[arg].equals("-threads") && arg + 1 < args.length) {
+                threads = Integer.parseInt(args[++arg]);
+            } else {
+                break;
+            }
+        }
+        if (arg == args.length || args[arg].startsWith("-") || threads < 1) {
+            System.err.println("Usage: java BatchRunner [-tree] " +
+                               "[-threads n] directory-or-manifest...");
+            System.exit(1);
+        }
+
+        List<Path> files = programs(Arrays.asList(args).subList(arg, args.length));
+        BatchRunner runner = new BatchRunner(tree, threads);
+        long start = System.nanoTime();
+        List<Future<Result>> futures = runner.submit(files);
+        long[] latencies = new long[files.size()];
+        int failed = 0;
+        for (int i = 0; i < futures.size(); ++i) {
+            Result result;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                result = new Result(files.get(i).toString(), 0, "", null,
+                                    e.getCause().toString());
+            }
+            display(result);
+            latencies[i] = result.getNanos();
+            if (!result.succeeded()) {
+                ++failed;
+            }
+        }
+        long wall = System.nanoTime() - start;
+        runner.shutdown();
+
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        int n = latencies.length;
+        System.out.println();
+        System.out.printf("%d programs, %d failed, on %d threads in %.3f ms%n",
+                          n, failed, threads, wall / 1e6);
+        if (n > 0) {
+            System.out.printf("throughput: %.1f programs/s%n", n / (wall / 1e9));
+            System.out.printf("latency ms: mean %.3f  median %.3f  " +
+                              "p99 %.3f  max %.3f%n",
+                              total / 1e6 / n, latencies[n / 2] / 1e6,
+                              latencies[Math.min(n - 1, n * 99 / 100)] / 1e6,
+                              latencies[n - 1] / 1e6);
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -1,13 +1,13 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
-import dendron.Errors;
+import dendron.Operator;
+import dendron.SymbolTable;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
 
 /**
  * A calculation represented by a binary operator and its two operands.
@@ -24,9 +24,9 @@ public class BinaryOperation implements ExpressionNode {
     /** The operator symbol used for division */
     public static final String DIV = "/";
     /** Container of all legal binary operators, for use by parsers */
-    public static final Collection<String> OPERATORS = new ArrayList<>(Arrays.asList(ADD,SUB,MUL,DIV));
+    public static final Collection<String> OPERATORS = Operator.symbols(2);
 
-    private String operator;
+    private Operator operator;
     private ExpressionNode leftChild;
     private ExpressionNode rightChild;
 
@@ -39,51 +39,67 @@ public class BinaryOperation implements ExpressionNode {
      * @rit.pre OPERATORS.contains( operator ), leftChild != null, rightChild != null
      */
     public BinaryOperation(String operator, ExpressionNode leftChild, ExpressionNode rightChild) {
+        this(Operator.forSymbol(operator), leftChild, rightChild);
+    }
+
+    /**
+     * Create a new BinaryOperation node from a registry entry.
+     *
+     * @param operator the operator
+     * @param leftChild the left operand
+     * @param rightChild the right operand
+     * @rit.pre operator.getArity() == 2, leftChild != null, rightChild != null
+     */
+    public BinaryOperation(Operator operator, ExpressionNode leftChild, ExpressionNode rightChild) {
         this.operator = operator;
         this.leftChild = leftChild;
         this.rightChild = rightChild;
     }
 
+    /**
+     * @return the operator
+     */
+    Operator operator() {
+        return this.operator;
+    }
+
+    /**
+     * @return the left operand
+     */
+    ExpressionNode left() {
+        return this.leftChild;
+    }
+
+    /**
+     * @return the right operand
+     */
+    ExpressionNode right() {
+        return this.rightChild;
+    }
+
     /**
      * Compute the result of evaluating both operands and applying the operator
-     * to them.
+     * to them. The tree is walked without recursion, so it may be of any depth.
      *
      * @param symTab symbol table, needed to evaluate the child trees
      * @return the result of the computation
+     * @see TreeWalker#evaluate
      */
     @Override
-    public int evaluate(Map<String, Integer> symTab) {
-        int result;
-        if (this.operator.equals(ADD)) {
-            result = this.leftChild.evaluate(symTab) + this.rightChild.evaluate(symTab);
-        } else if (this.operator.equals(SUB)) {
-            result = this.leftChild.evaluate(symTab) - this.rightChild.evaluate(symTab);
-        } else if (this.operator.equals(MUL)) {
-            result = this.leftChild.evaluate(symTab) * this.rightChild.evaluate(symTab);
-        } else {
-            int left = this.leftChild.evaluate(symTab);
-            int right = this.rightChild.evaluate(symTab);
-            if (right == 0) {
-                Errors.report(Errors.Type.DIVIDE_BY_ZERO,left + "/" + right);
-            }
-            result = left / right;
-        }
-
-        return result;
+    public int evaluate(SymbolTable symTab) {
+        return TreeWalker.evaluate(this, symTab);
     }
 
     /**
      * Print, on standard output, the infixDisplay of the two child nodes
      * separated by the operator and surrounded by parentheses. Blanks are
      * inserted throughout.
+     *
+     * @see TreeWalker#infixDisplay
      */
     @Override
     public void infixDisplay() {
-        System.out.print("( ");
-        this.leftChild.infixDisplay();
-        System.out.print(" " + this.operator + " ");
-        this.rightChild.infixDisplay();
-        System.out.print(" )");
+        TreeWalker.infixDisplay(this);
     }
 
     /**
@@ -92,24 +108,223 @@ public class BinaryOperation implements ExpressionNode {
      * that pops two values off the stack, applies the operator, and pushes the
      * answer.
      *
-     * @return a list containing instructions for the left operand,
-     * instructions for the right operand, and the instruction to perform the
-     * operation
+     * @param code the buffer to which the instructions for the left operand,
+     * the instructions for the right operand, and the instruction to perform
+     * the operation are appended
+     * @see TreeWalker#emit
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        TreeWalker.emit(this, code);
+    }
+
+    /**
+     * Resolve the variables used by the left and then the right operand.
+     *
+     * @param symTab the table in which identifiers are resolved
+     * @see TreeWalker#resolve
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        TreeWalker.resolve(this, symTab);
+    }
+
+    /**
+     * Simplify both operands, then this operation.
+     *
+     * @param assigned the variables certain to have a value
+     * @return the simplified expression
+     * @see TreeWalker#optimize
+     */
+    @Override
+    public ExpressionNode optimize(Set<String> assigned) {
+        return TreeWalker.optimize(this, assigned);
+    }
+
+    /**
+     * Take the simplified operands, then fold the operation if both are
+     * Constants and apply identity (x+0, x-0, x*1, x/1, 0-x) and
+     * annihilator (x*0, x-x) rules. A division by a constant zero is
+     * left in place so that it is still reported when the program runs,
+     * and an operand is only discarded if evaluating it cannot fail.
+     *
+     * @param left the simplified left operand
+     * @param right the simplified right operand
+     * @param assigned the variables certain to have a value
+     * @return the simplified expression
+     */
+    ExpressionNode simplify(ExpressionNode left, ExpressionNode right, Set<String> assigned) {
+        this.leftChild = left;
+        this.rightChild = right;
+        if (left instanceof Constant && right instanceof Constant) {
+            if (!this.operator.fails(((Constant) right).getValue())) {
+                return new Constant(this.operator.apply(((Constant) left).getValue(),
+                                                        ((Constant) right).getValue()));
+            }
+        } else if (this.operator == Operator.ADD) {
+            if (isConstant(left, 0)) {
+                return right;
+            } else if (isConstant(right, 0)) {
+                return left;
+            }
+        } else if (this.operator == Operator.SUB) {
+            if (isConstant(right, 0)) {
+                return left;
+            } else if (isConstant(left, 0)) {
+                return UnaryOperation.negate(right);
+            } else if (left instanceof Variable && right instanceof Variable
+                    && ((Variable) left).getName().equals(((Variable) right).getName())
+                    && cannotFail(left, assigned)) {
+                return new Constant(0);
+            }
+        } else if (this.operator == Operator.MUL) {
+            if (isConstant(left, 1)) {
+                return right;
+            } else if (isConstant(right, 1)) {
+                return left;
+            } else if (isConstant(left, 0) && cannotFail(right, assigned)) {
+                return left;
+            } else if (isConstant(right, 0) && cannotFail(left, assigned)) {
+                return right;
+            }
+        } else if (this.operator == Operator.DIV && isConstant(right, 1)) {
+            return left;
+        }
+        return this;
+    }
+
+    /**
+     * Number both operands, then this operation.
+     *
+     * @param vn the numbering being built
+     * @return the value number
+     * @see TreeWalker#number
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        instructions.addAll(this.leftChild.emit());
-        instructions.addAll(this.rightChild.emit());
-        if (this.operator.equals(ADD)) {
-            instructions.add(new Machine.Add());
-        } else if (this.operator.equals(SUB)){
-            instructions.add(new Machine.Subtract());
-        } else if (this.operator.equals(MUL)){
-            instructions.add(new Machine.Multiply());
-        } else {
-            instructions.add(new Machine.Divide());
+    public int number(ValueNumbering vn) {
+        return TreeWalker.number(this, vn);
+    }
+
+    /**
+     * Number this operation by its operator and its operands' numbers.
+     * The operands' numbers of a commutative operator, such as addition,
+     * are put in a fixed order.
+     *
+     * @param vn the numbering being built
+     * @param left the left operand's value number
+     * @param right the right operand's value number
+     * @return the value number
+     */
+    int number(ValueNumbering vn, int left, int right) {
+        if (this.operator.isCommutative() && right < left) {
+            return vn.number(this, this.operator, right, left);
         }
-        return instructions;
+        return vn.number(this, this.operator, left, right);
+    }
+
+    /**
+     * Reuse an earlier evaluation of this value if there is one;
+     * otherwise rewrite both operands and record this evaluation.
+     *
+     * @param vn the numbering built for the whole program
+     * @return the expression to evaluate in place of this one
+     * @see TreeWalker#eliminate
+     */
+    @Override
+    public ExpressionNode eliminate(ValueNumbering vn) {
+        return TreeWalker.eliminate(this, vn);
+    }
+
+    /**
+     * @param left the rewritten left operand
+     * @param right the rewritten right operand
+     * @return this node if neither operand changed, or else a new
+     * operation on the rewritten operands
+     */
+    ExpressionNode rebuild(ExpressionNode left, ExpressionNode right) {
+        return left == this.leftChild && right == this.rightChild ? this
+                : new BinaryOperation(this.operator, left, right);
+    }
+
+    /**
+     * Build a closure for this node's operator. The arithmetic operators
+     * get closures of their own, a constant right operand is captured
+     * directly, and a nonzero constant divisor needs no check; any other
+     * operator's closure calls its kernel.
+     *
+     * @return a closure that applies the operator to the operands' closures
+     */
+    @Override
+    public Closure.Expression closure() {
+        Closure.Expression left = this.leftChild.closure();
+        if (this.rightChild instanceof Constant) {
+            int right = ((Constant) this.rightChild).getValue();
+            switch (this.operator) {
+                case ADD:
+                    return symTab -> left.evaluate(symTab) + right;
+                case SUB:
+                    return symTab -> left.evaluate(symTab) - right;
+                case MUL:
+                    return symTab -> left.evaluate(symTab) * right;
+                case DIV:
+                    if (right != 0) {
+                        return symTab -> left.evaluate(symTab) / right;
+                    }
+                    break;
+                default:
+                    if (!this.operator.fails(right)) {
+                        IntBinaryOperator kernel = this.operator.getBinary();
+                        return symTab -> kernel.applyAsInt(left.evaluate(symTab), right);
+                    }
+            }
+        }
+        Closure.Expression right = this.rightChild.closure();
+        switch (this.operator) {
+            case ADD:
+                return symTab -> left.evaluate(symTab) + right.evaluate(symTab);
+            case SUB:
+                return symTab -> left.evaluate(symTab) - right.evaluate(symTab);
+            case MUL:
+                return symTab -> left.evaluate(symTab) * right.evaluate(symTab);
+            default:
+                IntBinaryOperator kernel = this.operator.getBinary();
+                return symTab -> {
+                    int l = left.evaluate(symTab);
+                    return kernel.applyAsInt(l, right.evaluate(symTab));
+                };
+        }
+    }
+
+    /**
+     * @return one more than the sizes of both operands
+     * @see TreeWalker#size
+     */
+    @Override
+    public int size() {
+        return TreeWalker.size(this);
+    }
+
+    /**
+     * Tell whether an expression is a particular constant.
+     *
+     * @param node the expression
+     * @param value the constant value
+     * @return true if node is a Constant holding value
+     */
+    private static boolean isConstant(ExpressionNode node, int value) {
+        return node instanceof Constant && ((Constant) node).getValue() == value;
+    }
+
+    /**
+     * Tell whether an (already simplified) expression is certain to
+     * evaluate without reporting an error, so it may be discarded.
+     *
+     * @param node the expression
+     * @param assigned the variables certain to have a value
+     * @return true if node is a Constant or an assigned Variable
+     */
+    private static boolean cannotFail(ExpressionNode node, Set<String> assigned) {
+        return node instanceof Constant
+                || (node instanceof Variable && assigned.contains(((Variable) node).getName()));
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * file: Closure.java
+ */
+
+package dendron.tree;
+
+import dendron.SymbolTable;
+
+/**
+ * The forms a parse tree takes once it is compiled for the interpreter.
+ * Each node becomes a closure specialized for its operator, with its
+ * variables already bound to symbol table slots and its constants
+ * captured, so that running it involves no decisions about what kind of
+ * node it is.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public final class Closure {
+
+    /**
+     * A compiled ExpressionNode.
+     */
+    @FunctionalInterface
+    public interface Expression {
+        /**
+         * @param symTab the table where variable values are stored
+         * @return the value of the expression
+         */
+        int evaluate(SymbolTable symTab);
+    }
+
+    /**
+     * A compiled ActionNode.
+     */
+    @FunctionalInterface
+    public interface Action {
+        /**
+         * @param symTab the table where variable values are stored
+         */
+        void execute(SymbolTable symTab);
+    }
+
+    /** Do not instantiate this class. */
+    private Closure() {}
+}
@@ -0,0 +1,307 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.SymbolTable;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The first evaluation of an expression whose value is needed again
+ * later in the program. The value is saved in a hidden temporary
+ * variable, and each later occurrence is a {@link Use} that just reads
+ * it back. Temporaries never appear in symbol table dumps.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class CommonSubexpression implements ExpressionNode {
+    /** the start of every temporary's name, which no identifier can have */
+    public static final String TEMPORARY_PREFIX = SymbolTable.TEMPORARY_PREFIX;
+
+    private ExpressionNode expr;
+    private String temp;
+    private int slot;
+    private boolean reused;
+
+    /**
+     * Wrap an expression so its value can be saved. Until the first
+     * {@link #use} the node evaluates the expression without saving it.
+     *
+     * @param expr the expression evaluated here
+     */
+    public CommonSubexpression(ExpressionNode expr) {
+        this.expr = expr;
+        this.temp = null;
+        this.slot = -1;
+        this.reused = false;
+    }
+
+    /**
+     * Create a later occurrence of this expression.
+     *
+     * @param temp the name of the temporary to hold the value, if this
+     *             is the first later occurrence
+     * @return a node that reads the saved value
+     */
+    Use use(String temp) {
+        if (!this.reused) {
+            this.reused = true;
+            this.temp = temp;
+        }
+        return new Use(this);
+    }
+
+    /**
+     * @return true if a later occurrence reads the saved value
+     */
+    boolean isReused() {
+        return this.reused;
+    }
+
+    /**
+     * @return the expression evaluated here
+     */
+    ExpressionNode operand() {
+        return this.expr;
+    }
+
+    /**
+     * Evaluate the expression, saving the result in the temporary if
+     * any later occurrence needs it.
+     *
+     * @param symTab the table where variable values are stored
+     * @return the value of the expression
+     * @see TreeWalker#evaluate
+     */
+    @Override
+    public int evaluate(SymbolTable symTab) {
+        return TreeWalker.evaluate(this, symTab);
+    }
+
+    /**
+     * Save the expression's value in the temporary, if it is reused.
+     *
+     * @param symTab the table where variable values are stored
+     * @param value the value of the expression
+     */
+    void save(SymbolTable symTab, int value) {
+        if (this.reused) {
+            symTab.put(this.slot, value);
+        }
+    }
+
+    /**
+     * Show the expression itself; the temporary is not part of the program.
+     */
+    @Override
+    public void infixDisplay() {
+        TreeWalker.infixDisplay(this);
+    }
+
+    /**
+     * Emit the expression's code, followed, if it is reused, by a DUP and
+     * a STORE that saves a copy in the temporary.
+     *
+     * @param code the buffer to which the instructions are appended
+     * @see TreeWalker#emit
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        TreeWalker.emit(this, code);
+    }
+
+    /**
+     * Emit the DUP and STORE that save the value just computed in the
+     * temporary, if it is reused.
+     *
+     * @param code the buffer to which the instructions are appended
+     */
+    void emitSave(List<Machine.Instruction> code) {
+        if (this.reused) {
+            code.add(new Machine.Dup());
+            code.add(new Machine.Store(this.temp));
+        }
+    }
+
+    /**
+     * Resolve the expression's variables and the temporary.
+     *
+     * @param symTab the table in which identifiers are resolved
+     * @see TreeWalker#resolve
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        TreeWalker.resolve(this, symTab);
+    }
+
+    /**
+     * Give the temporary its slot, if it is reused. The expression's
+     * variables must be resolved first.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    void resolveTemporary(SymbolTable symTab) {
+        if (this.reused) {
+            this.slot = symTab.slot(this.temp);
+        }
+    }
+
+    /**
+     * The expression may be shared with later uses, so it is left alone.
+     *
+     * @param assigned unused
+     * @return this node
+     */
+    @Override
+    public ExpressionNode optimize(Set<String> assigned) {
+        return this;
+    }
+
+    /**
+     * @param vn the numbering
+     * @return the value number of the wrapped expression
+     * @see TreeWalker#number
+     */
+    @Override
+    public int number(ValueNumbering vn) {
+        return TreeWalker.number(this, vn);
+    }
+
+    /**
+     * Elimination has already been done here.
+     *
+     * @param vn unused
+     * @return this node
+     */
+    @Override
+    public ExpressionNode eliminate(ValueNumbering vn) {
+        return this;
+    }
+
+    /**
+     * @return a closure for the expression that, if it is reused, also
+     * saves the value in the temporary's slot
+     */
+    @Override
+    public Closure.Expression closure() {
+        Closure.Expression expr = this.expr.closure();
+        if (!this.reused) {
+            return expr;
+        }
+        int slot = this.slot;
+        return symTab -> {
+            int result = expr.evaluate(symTab);
+            symTab.put(slot, result);
+            return result;
+        };
+    }
+
+    /**
+     * @return the size of the wrapped expression
+     */
+    @Override
+    public int size() {
+        return this.expr.size();
+    }
+
+    /**
+     * A later occurrence of a CommonSubexpression, which reads the saved
+     * value instead of evaluating the expression again.
+     */
+    public static class Use implements ExpressionNode {
+        private CommonSubexpression def;
+
+        /**
+         * @param def the evaluation whose value is reused
+         */
+        private Use(CommonSubexpression def) {
+            this.def = def;
+        }
+
+        /**
+         * Fetch the saved value.
+         *
+         * @param symTab the table where variable values are stored
+         * @return the value computed by the earlier evaluation
+         */
+        @Override
+        public int evaluate(SymbolTable symTab) {
+            return symTab.get(this.def.slot);
+        }
+
+        /**
+         * Show the expression whose value is reused.
+         */
+        @Override
+        public void infixDisplay() {
+            this.def.expr.infixDisplay();
+        }
+
+        /**
+         * Emit a LOAD of the temporary.
+         *
+         * @param code the buffer to which the LOAD is appended
+         */
+        @Override
+        public void emit(List<Machine.Instruction> code) {
+            code.add(new Machine.Load(this.def.temp));
+        }
+
+        /**
+         * The temporary is resolved by the defining evaluation.
+         *
+         * @param symTab unused
+         */
+        @Override
+        public void resolve(SymbolTable symTab) {
+        }
+
+        /**
+         * A Use cannot be simplified.
+         *
+         * @param assigned unused
+         * @return this node
+         */
+        @Override
+        public ExpressionNode optimize(Set<String> assigned) {
+            return this;
+        }
+
+        /**
+         * @param vn the numbering
+         * @return the value number of the reused expression
+         */
+        @Override
+        public int number(ValueNumbering vn) {
+            return this.def.number(vn);
+        }
+
+        /**
+         * Elimination has already been done here.
+         *
+         * @param vn unused
+         * @return this node
+         */
+        @Override
+        public ExpressionNode eliminate(ValueNumbering vn) {
+            return this;
+        }
+
+        /**
+         * @return a closure that fetches the saved value
+         */
+        @Override
+        public Closure.Expression closure() {
+            int slot = this.def.slot;
+            return symTab -> symTab.get(slot);
+        }
+
+        /**
+         * @return 1
+         */
+        @Override
+        public int size() {
+            return 1;
+        }
+    }
+}
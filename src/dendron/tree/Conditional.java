@@ -0,0 +1,210 @@
+/*
+ * file: Conditional.java
+ */
+
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.SymbolTable;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ActionNode that runs one block of actions if an expression is not
+ * zero and, optionally, another block if it is. In the source it is
+ * written "? condition { actions }" or
+ * "? condition { actions } { actions }".
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class Conditional implements ActionNode {
+    private ExpressionNode condition;
+    private final Program then;
+    private final Program otherwise;
+
+    /**
+     * Set up a Conditional node.
+     *
+     * @param condition the expression that chooses the block to run
+     * @param then the actions to run if the condition is not zero
+     * @param otherwise the actions to run if the condition is zero, or
+     *                  null if there are none
+     */
+    public Conditional(ExpressionNode condition, Program then, Program otherwise) {
+        this.condition = condition;
+        this.then = then;
+        this.otherwise = otherwise;
+    }
+
+    /**
+     * @return the actions run if the condition is not zero
+     */
+    Program getThen() {
+        return this.then;
+    }
+
+    /**
+     * @return the actions run if the condition is zero, or null
+     */
+    Program getOtherwise() {
+        return this.otherwise;
+    }
+
+    /**
+     * Evaluate the condition and run the block it chooses.
+     *
+     * @param symTab the table where variable values are stored
+     */
+    @Override
+    public void execute(SymbolTable symTab) {
+        if (this.condition.evaluate(symTab) != 0) {
+            this.then.execute(symTab);
+        } else if (this.otherwise != null) {
+            this.otherwise.execute(symTab);
+        }
+    }
+
+    /**
+     * Show this statement on standard output as the word "If" followed by
+     * the infix form of the condition and the blocks, each in braces.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print("If ");
+        this.condition.infixDisplay();
+        System.out.println(" {");
+        this.then.infixDisplay();
+        if (this.otherwise != null) {
+            System.out.println("} Else {");
+            this.otherwise.infixDisplay();
+        }
+        System.out.print("}");
+    }
+
+    /**
+     * Append the condition's code, a JZ past the first block, the first
+     * block and, if there is a second block, a JMP past it and the
+     * second block. Labels are numbered by where this statement's code
+     * starts, so they are unique in the program.
+     *
+     * @param code the buffer to which the instructions are appended
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        int start = code.size();
+        String otherwiseLabel = "$else" + start;
+        String endLabel = "$end" + start;
+        this.condition.emit(code);
+        code.add(new Machine.JumpIfZero(this.otherwise == null ? endLabel : otherwiseLabel));
+        this.then.emit(code);
+        if (this.otherwise != null) {
+            code.add(new Machine.Jump(endLabel));
+            code.add(new Machine.Label(otherwiseLabel));
+            this.otherwise.emit(code);
+        }
+        code.add(new Machine.Label(endLabel));
+    }
+
+    /**
+     * Resolve the condition, then each block.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        this.condition.resolve(symTab);
+        this.then.resolve(symTab);
+        if (this.otherwise != null) {
+            this.otherwise.resolve(symTab);
+        }
+    }
+
+    /**
+     * Simplify the condition and each block. Once this statement has run,
+     * only the variables both blocks assign are certain to have a value.
+     *
+     * @param assigned the variables certain to have a value so far
+     */
+    @Override
+    public void optimize(Set<String> assigned) {
+        this.condition = this.condition.optimize(assigned);
+        Set<String> thenAssigned = new HashSet<>(assigned);
+        this.then.optimize(thenAssigned);
+        Set<String> otherwiseAssigned = new HashSet<>(assigned);
+        if (this.otherwise != null) {
+            this.otherwise.optimize(otherwiseAssigned);
+        }
+        thenAssigned.retainAll(otherwiseAssigned);
+        assigned.addAll(thenAssigned);
+    }
+
+    /**
+     * Number the condition, then each block.
+     *
+     * @param vn the numbering being built
+     */
+    @Override
+    public void number(ValueNumbering vn) {
+        this.condition.number(vn);
+        this.then.number(vn);
+        if (this.otherwise != null) {
+            this.otherwise.number(vn);
+        }
+    }
+
+    /**
+     * Eliminate common subexpressions from the condition, then from each
+     * block. Values first evaluated in a block are not reused outside it.
+     *
+     * @param vn the numbering built for the whole program
+     */
+    @Override
+    public void eliminate(ValueNumbering vn) {
+        this.condition = this.condition.eliminate(vn);
+        Map<Integer, CommonSubexpression> saved = vn.save();
+        this.then.eliminate(vn);
+        vn.restore(saved);
+        if (this.otherwise != null) {
+            this.otherwise.eliminate(vn);
+            vn.restore(saved);
+        }
+    }
+
+    /**
+     * @return a closure that runs the closure of the block the condition
+     * closure's value chooses
+     * @see TreeWalker#closure
+     */
+    @Override
+    public Closure.Action closure() {
+        Closure.Expression condition = TreeWalker.closure(this.condition);
+        Closure.Action then = this.then.closure();
+        if (this.otherwise == null) {
+            return symTab -> {
+                if (condition.evaluate(symTab) != 0) {
+                    then.execute(symTab);
+                }
+            };
+        }
+        Closure.Action otherwise = this.otherwise.closure();
+        return symTab -> {
+            if (condition.evaluate(symTab) != 0) {
+                then.execute(symTab);
+            } else {
+                otherwise.execute(symTab);
+            }
+        };
+    }
+
+    /**
+     * @return one more than the size of the condition and the blocks
+     */
+    @Override
+    public int size() {
+        return 1 + this.condition.size() + this.then.size()
+                + (this.otherwise == null ? 0 : this.otherwise.size());
+    }
+}
@@ -1,10 +1,11 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.Operator;
+import dendron.SymbolTable;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * An expression node representing a constant, i.e., literal value
@@ -29,27 +30,97 @@ public class Constant implements ExpressionNode {
      * @return this Constant's value
      */
     @Override
-    public int evaluate(Map<String, Integer> symTab) {
+    public int evaluate(SymbolTable symTab) {
         return this.value;
     }
 
     /**
-     * Print this Constant's value on standard output.
+     * Print this Constant's value on standard output. A negative value,
+     * which folding can produce, is shown as the negation of its
+     * magnitude, e.g. "_1", as it would be written in Dendron.
      */
     @Override
     public void infixDisplay() {
-        System.out.print(this.value);
+        if (this.value < 0) {
+            System.out.print(Operator.NEG.getSymbol() + -(long) this.value);
+        } else {
+            System.out.print(this.value);
+        }
     }
 
     /**
      * Emit an instruction to push the value onto the stack.
      *
-     * @return a list containing that one instruction
+     * @param code the buffer to which that one instruction is appended
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        instructions.add(new Machine.PushConst(this.value));
-        return instructions;
+    public void emit(List<Machine.Instruction> code) {
+        code.add(new Machine.PushConst(this.value));
+    }
+
+    /**
+     * A Constant uses no variables, so there is nothing to resolve.
+     *
+     * @param symTab unused
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+    }
+
+    /**
+     * A Constant cannot be simplified.
+     *
+     * @param assigned unused
+     * @return this Constant
+     */
+    @Override
+    public ExpressionNode optimize(Set<String> assigned) {
+        return this;
+    }
+
+    /**
+     * Number this Constant by its value.
+     *
+     * @param vn the numbering being built
+     * @return the value number
+     */
+    @Override
+    public int number(ValueNumbering vn) {
+        return vn.number(this, this.value);
+    }
+
+    /**
+     * A Constant is never worth saving.
+     *
+     * @param vn unused
+     * @return this Constant
+     */
+    @Override
+    public ExpressionNode eliminate(ValueNumbering vn) {
+        return this;
+    }
+
+    /**
+     * @return a closure that returns the value
+     */
+    @Override
+    public Closure.Expression closure() {
+        int value = this.value;
+        return symTab -> value;
+    }
+
+    /**
+     * @return 1
+     */
+    @Override
+    public int size() {
+        return 1;
+    }
+
+    /**
+     * @return this Constant's value
+     */
+    public int getValue() {
+        return this.value;
     }
 }
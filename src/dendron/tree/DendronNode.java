@@ -4,7 +4,9 @@
 
 package dendron.tree;
 
+import java.util.ArrayList;
 import java.util.List;
+import dendron.SymbolTable;
 import dendron.machine.Machine;
 
 /**
@@ -27,7 +29,33 @@ public interface DendronNode {
      * the intent of this DendronNode and its descendants.
      * @return the Machine Instructions for this node
      */
-    List<  Machine.Instruction> emit();
+    default List<  Machine.Instruction> emit() {
+        List< Machine.Instruction > code = new ArrayList<>();
+        emit( code );
+        return code;
+    }
+
+    /**
+     * Append the instructions for this DendronNode and its descendants
+     * to the end of a code buffer shared by the whole tree, so that no
+     * node builds a list of its own.
+     * @param code the buffer being filled
+     */
+    void emit( List< Machine.Instruction > code );
+
+    /**
+     * Give every identifier used in the code rooted at this node a
+     * slot in the symbol table, so that execution does not have to
+     * look variables up by name.
+     * @param symTab the table in which identifiers are resolved
+     */
+    void resolve( SymbolTable symTab );
+
+    /**
+     * Count the nodes in the tree rooted at this node.
+     * @return the number of nodes, including this one
+     */
+    int size();
 }
 
 
@@ -4,7 +4,9 @@
 
 package dendron.tree;
 
-import java.util.Map;
+import dendron.SymbolTable;
+
+import java.util.Set;
 
 /**
  * An abstraction for all DendronNodes that can be evaluated to
@@ -20,5 +22,46 @@ public interface ExpressionNode extends DendronNode {
      * @param symTab symbol table, if needed, to fetch variable values
      * @return the result of the evaluation
      */
-    int evaluate( Map< String, Integer > symTab );
+    int evaluate( SymbolTable symTab );
+
+    /**
+     * Simplify the expression represented by this node: fold constant
+     * subexpressions and apply algebraic identities. Errors that
+     * evaluating the original expression would report, such as division
+     * by zero or use of an uninitialized variable, are preserved.
+     *
+     * @param assigned the variables that are certain to have a value
+     *                 when this expression is evaluated
+     * @return an equivalent, possibly smaller, expression (which may
+     * be this node)
+     */
+    ExpressionNode optimize( Set< String > assigned );
+
+    /**
+     * Hash-cons this expression: give it and its subexpressions value
+     * numbers, so that expressions computing the same value get the
+     * same number.
+     *
+     * @param vn the numbering being built
+     * @return this expression's value number
+     */
+    int number( ValueNumbering vn );
+
+    /**
+     * Replace evaluations of values that have already been computed by
+     * uses of saved temporaries. Must follow {@link #number}.
+     *
+     * @param vn the numbering built for the whole program
+     * @return the expression to evaluate in place of this one
+     */
+    ExpressionNode eliminate( ValueNumbering vn );
+
+    /**
+     * Compile the expression represented by this node into a closure
+     * that computes the same value, reporting the same errors, as
+     * {@link #evaluate}. Identifiers must already be resolved.
+     *
+     * @return the closure
+     */
+    Closure.Expression closure();
 }
@@ -0,0 +1,360 @@
+/*
+ * file: Lexer.java
+ */
+
+package dendron.tree;
+
+import dendron.Operator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Split Dendron source into tokens, one at a time, for the parser.
+ * Tokens are separated by white space. Characters are copied into a
+ * reusable buffer and classified with a lookup table, so operators and
+ * numbers are recognized without creating any Strings; only the text
+ * of identifiers (and of bad tokens) is ever turned into a String.
+ *
+ * The lexer keeps track of the line and column where each token starts,
+ * so errors can say where they were found. Tokens that were split apart
+ * before they reached the lexer are treated as one line, with a single
+ * space between each.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class Lexer {
+
+    /**
+     * The kinds of token.
+     */
+    public enum Token {
+        /** the assignment keyword ":=" */
+        ASSIGN,
+        /** a unary operator */
+        UNARY,
+        /** a binary operator */
+        BINARY,
+        /** a name starting with a letter */
+        IDENT,
+        /** an optionally signed decimal integer */
+        NUMBER,
+        /** anything else, such as the print keyword "@" or a brace */
+        OTHER,
+        /** no more input */
+        END
+    }
+
+    /** character classes */
+    private static final byte SPACE = 1, LETTER = 2, DIGIT = 3, SIGN = 4;
+
+    private static final byte[] CLASSES = new byte[ 128 ];
+    static {
+        for ( char c: " \t\n\r\f\u000B".toCharArray() ) {
+            CLASSES[ c ] = SPACE;
+        }
+        for ( char c = 'a'; c <= 'z'; ++c ) {
+            CLASSES[ c ] = LETTER;
+            CLASSES[ Character.toUpperCase( c ) ] = LETTER;
+        }
+        for ( char c = '0'; c <= '9'; ++c ) {
+            CLASSES[ c ] = DIGIT;
+        }
+        CLASSES[ '+' ] = SIGN;
+        CLASSES[ '-' ] = SIGN;
+    }
+
+    /** how many characters to read from a Reader at a time */
+    private static final int CHUNK = 8192;
+
+    private final CharSequence chars;
+    private final Reader reader;
+    private final List< String > tokens;
+    private char[] chunk;
+    private int position;
+    private int limit;
+    private int nextLine;
+    private int nextColumn;
+    private int line;
+    private int column;
+
+    private char[] text;
+    private int length;
+    private char[] previousText;
+    private int previousLength;
+    private Token kind;
+    private Operator operator;
+    private int value;
+
+    /**
+     * Read tokens from a sequence of characters.
+     * @param chars the source text
+     */
+    public Lexer( CharSequence chars ) {
+        this( chars, null, null );
+    }
+
+    /**
+     * Read tokens from a character stream.
+     * @param reader the source text
+     */
+    public Lexer( Reader reader ) {
+        this( null, reader, null );
+        this.chunk = new char[ CHUNK ];
+    }
+
+    /**
+     * Read tokens from UTF-8 encoded bytes.
+     * @param bytes the source text
+     */
+    public Lexer( ByteBuffer bytes ) {
+        this( StandardCharsets.UTF_8.decode( bytes ) );
+    }
+
+    /**
+     * Read tokens that have already been split apart.
+     * @param tokens the token list (Strings); it is not modified
+     */
+    public Lexer( List< String > tokens ) {
+        this( null, null, tokens );
+    }
+
+    private Lexer( CharSequence chars, Reader reader, List< String > tokens ) {
+        this.chars = chars;
+        this.reader = reader;
+        this.tokens = tokens;
+        this.position = 0;
+        this.limit = 0;
+        this.nextLine = 1;
+        this.nextColumn = 1;
+        this.line = 1;
+        this.column = 1;
+        this.text = new char[ 32 ];
+        this.previousText = new char[ 32 ];
+        this.kind = null;
+    }
+
+    /**
+     * Tell whether a name can be used as a variable, i.e., starts
+     * with a letter.
+     * @param ident the name
+     * @return true if it is a legal identifier
+     */
+    public static boolean isIdentifier( String ident ) {
+        if ( ident.isEmpty() ) {
+            return false;
+        }
+        char first = ident.charAt( 0 );
+        return first < 128 && CLASSES[ first ] == LETTER;
+    }
+
+    /**
+     * Move to the next token.
+     * @return the kind of the new current token
+     */
+    public Token next() {
+        char[] swap = this.previousText;
+        this.previousText = this.text;
+        this.previousLength = this.length;
+        this.text = swap;
+        this.length = 0;
+        if ( this.tokens != null ) {
+            this.column = this.nextColumn;
+            if ( this.position == this.tokens.size() ) {
+                return this.kind = Token.END;
+            }
+            String token = this.tokens.get( this.position++ );
+            this.nextColumn += token.length() + 1;
+            for ( int i = 0; i < token.length(); ++i ) {
+                append( token.charAt( i ) );
+            }
+        }
+        else {
+            int c = read();
+            while ( c >= 0 && isSpace( c ) ) {
+                c = read();
+            }
+            this.line = this.nextLine;
+            this.column = c < 0 ? this.nextColumn : this.nextColumn - 1;
+            if ( c < 0 ) {
+                return this.kind = Token.END;
+            }
+            while ( c >= 0 && !isSpace( c ) ) {
+                append( ( char )c );
+                c = read();
+            }
+        }
+        return this.kind = classify();
+    }
+
+    /**
+     * @return the kind of the current token
+     */
+    public Token kind() {
+        return this.kind;
+    }
+
+    /**
+     * @return the current UNARY or BINARY token's operator
+     */
+    public Operator operator() {
+        return this.operator;
+    }
+
+    /**
+     * @return the current NUMBER token's value
+     */
+    public int value() {
+        return this.value;
+    }
+
+    /**
+     * @return the line where the current token starts, counting from 1;
+     * for END, the line where the input ran out
+     */
+    public int line() {
+        return this.line;
+    }
+
+    /**
+     * @return the column where the current token starts, counting from 1;
+     * for END, the column where the input ran out
+     */
+    public int column() {
+        return this.column;
+    }
+
+    /**
+     * @return the current token's text
+     */
+    public String text() {
+        return new String( this.text, 0, this.length );
+    }
+
+    /**
+     * Compare the current token's text with a word, without making a
+     * String of the token.
+     * @param word the text to look for
+     * @return true if the current token is exactly that word
+     */
+    public boolean matches( String word ) {
+        if ( this.kind == Token.END || this.length != word.length() ) {
+            return false;
+        }
+        for ( int i = 0; i < this.length; ++i ) {
+            if ( this.text[ i ] != word.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the text of the token before the current one
+     */
+    public String previousText() {
+        return new String( this.previousText, 0, this.previousLength );
+    }
+
+    private static boolean isSpace( int c ) {
+        return c < 128 ? CLASSES[ c ] == SPACE : Character.isWhitespace( c );
+    }
+
+    private static byte classOf( char c ) {
+        return c < 128 ? CLASSES[ c ] : 0;
+    }
+
+    private void append( char c ) {
+        if ( this.length == this.text.length ) {
+            this.text = Arrays.copyOf( this.text, 2 * this.length );
+        }
+        this.text[ this.length++ ] = c;
+    }
+
+    /**
+     * Read the next character, keeping count of lines and columns.
+     * @return the character, or -1 at the end of the input
+     */
+    private int read() {
+        int c = readChar();
+        if ( c == '\n' ) {
+            ++this.nextLine;
+            this.nextColumn = 1;
+        }
+        else if ( c >= 0 ) {
+            ++this.nextColumn;
+        }
+        return c;
+    }
+
+    private int readChar() {
+        if ( this.chars != null ) {
+            return this.position < this.chars.length() ?
+                   this.chars.charAt( this.position++ ) : -1;
+        }
+        if ( this.position == this.limit ) {
+            try {
+                this.limit = this.reader.read( this.chunk );
+            }
+            catch ( IOException ioe ) {
+                throw new UncheckedIOException( ioe );
+            }
+            this.position = 0;
+            if ( this.limit <= 0 ) {
+                this.limit = 0;
+                return -1;
+            }
+        }
+        return this.chunk[ this.position++ ];
+    }
+
+    /**
+     * Work out what kind of token is in the text buffer.
+     * @return the kind
+     */
+    private Token classify() {
+        if ( this.length == 0 ) {
+            return Token.OTHER;
+        }
+        char first = this.text[ 0 ];
+        byte firstClass = classOf( first );
+        if ( firstClass == LETTER ) {
+            return Token.IDENT;
+        }
+        Operator op = Operator.forSymbol( this.text, this.length );
+        if ( op != null ) {
+            this.operator = op;
+            return op.getArity() == 1 ? Token.UNARY : Token.BINARY;
+        }
+        if ( this.length == 2 && first == ':' && this.text[ 1 ] == '=' ) {
+            return Token.ASSIGN;
+        }
+        int i = firstClass == SIGN ? 1 : 0;
+        if ( i == this.length ) {
+            return Token.OTHER;
+        }
+        long number = 0;
+        for ( ; i < this.length; ++i ) {
+            if ( classOf( this.text[ i ] ) != DIGIT ) {
+                return Token.OTHER;
+            }
+            number = number * 10 + ( this.text[ i ] - '0' );
+            if ( number > ( long )Integer.MAX_VALUE + 1 ) {
+                return Token.OTHER;
+            }
+        }
+        if ( first == '-' ) {
+            number = -number;
+        }
+        if ( number > Integer.MAX_VALUE ) {
+            return Token.OTHER;
+        }
+        this.value = ( int )number;
+        return Token.NUMBER;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * file: Loop.java
+ */
+
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.SymbolTable;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ActionNode that runs a block of actions for as long as an expression
+ * is not zero. In the source it is written "?? condition { actions }".
+ * The block is compiled once, and the Machine jumps back to it.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class Loop implements ActionNode {
+    private ExpressionNode condition;
+    private final Program body;
+
+    /**
+     * Set up a Loop node.
+     *
+     * @param condition the expression tested before each run of the body
+     * @param body the actions to repeat
+     */
+    public Loop(ExpressionNode condition, Program body) {
+        this.condition = condition;
+        this.body = body;
+    }
+
+    /**
+     * Evaluate the condition, and run the body each time it is not zero.
+     *
+     * @param symTab the table where variable values are stored
+     */
+    @Override
+    public void execute(SymbolTable symTab) {
+        while (this.condition.evaluate(symTab) != 0) {
+            this.body.execute(symTab);
+        }
+    }
+
+    /**
+     * Show this statement on standard output as the word "While" followed
+     * by the infix form of the condition and the body in braces.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print("While ");
+        this.condition.infixDisplay();
+        System.out.println(" {");
+        this.body.infixDisplay();
+        System.out.print("}");
+    }
+
+    /**
+     * Append a JMP to the test, the body, and then the test: the
+     * condition's code and a JNZ back to the body. Putting the test at
+     * the bottom means each iteration runs one branch, not two. Labels
+     * are numbered by where this statement's code starts, so they are
+     * unique in the program.
+     *
+     * @param code the buffer to which the instructions are appended
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        int start = code.size();
+        String bodyLabel = "$body" + start;
+        String testLabel = "$test" + start;
+        code.add(new Machine.Jump(testLabel));
+        code.add(new Machine.Label(bodyLabel));
+        this.body.emit(code);
+        code.add(new Machine.Label(testLabel));
+        this.condition.emit(code);
+        code.add(new Machine.JumpIfNotZero(bodyLabel));
+    }
+
+    /**
+     * Resolve the condition, then the body.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        this.condition.resolve(symTab);
+        this.body.resolve(symTab);
+    }
+
+    /**
+     * Simplify the condition and the body. The body may not run at all,
+     * so it adds no variable to those certain to have a value.
+     *
+     * @param assigned the variables certain to have a value so far
+     */
+    @Override
+    public void optimize(Set<String> assigned) {
+        this.condition = this.condition.optimize(assigned);
+        this.body.optimize(new HashSet<>(assigned));
+    }
+
+    /**
+     * Number the condition and then the body, after recording an
+     * assignment to every variable the body assigns, since from the
+     * second iteration on they hold the body's values.
+     *
+     * @param vn the numbering being built
+     */
+    @Override
+    public void number(ValueNumbering vn) {
+        Set<String> assigns = new HashSet<>();
+        assignedIn(this.body, assigns);
+        for (String ident : assigns) {
+            vn.assign(ident);
+        }
+        this.condition.number(vn);
+        this.body.number(vn);
+    }
+
+    /**
+     * Eliminate common subexpressions from the condition and the body.
+     * Values first evaluated in the loop are not reused after it.
+     *
+     * @param vn the numbering built for the whole program
+     */
+    @Override
+    public void eliminate(ValueNumbering vn) {
+        Map<Integer, CommonSubexpression> saved = vn.save();
+        this.condition = this.condition.eliminate(vn);
+        this.body.eliminate(vn);
+        vn.restore(saved);
+    }
+
+    /**
+     * @return a closure that runs the body closure while the condition
+     * closure's value is not zero
+     * @see TreeWalker#closure
+     */
+    @Override
+    public Closure.Action closure() {
+        Closure.Expression condition = TreeWalker.closure(this.condition);
+        Closure.Action body = this.body.closure();
+        return symTab -> {
+            while (condition.evaluate(symTab) != 0) {
+                body.execute(symTab);
+            }
+        };
+    }
+
+    /**
+     * @return one more than the size of the condition and the body
+     */
+    @Override
+    public int size() {
+        return 1 + this.condition.size() + this.body.size();
+    }
+
+    /**
+     * Collect the variables an action, or any action within it, assigns.
+     *
+     * @param node the action
+     * @param into where to add the variables' names
+     */
+    private static void assignedIn(ActionNode node, Set<String> into) {
+        if (node instanceof Assignment) {
+            into.add(((Assignment) node).getIdent());
+        } else if (node instanceof Program) {
+            for (ActionNode child : ((Program) node).programs) {
+                assignedIn(child, into);
+            }
+        } else if (node instanceof Conditional) {
+            Conditional conditional = (Conditional) node;
+            assignedIn(conditional.getThen(), into);
+            if (conditional.getOtherwise() != null) {
+                assignedIn(conditional.getOtherwise(), into);
+            }
+        } else if (node instanceof Loop) {
+            assignedIn(((Loop) node).body, into);
+        }
+    }
+}
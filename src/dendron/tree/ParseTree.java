@@ -5,15 +5,24 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.machine.PeepholeOptimizer;
 import dendron.tree.ActionNode;
 import dendron.tree.ExpressionNode;
 import dendron.tree.UnaryOperation;
 import dendron.tree.BinaryOperation;
 import dendron.Errors;
+import dendron.Operator;
+import dendron.Output;
+import dendron.Profile;
+import dendron.SymbolTable;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Operations that are done on a Dendron code parse tree.
@@ -21,38 +30,82 @@ import java.util.Map;
  * @author Jesse Burdick-Pless jb4411@g.rit.edu
  */
 public class ParseTree {
+
+    /**
+     * the property naming the optimizations {@link #applyOptimizations()}
+     * does, separated by commas
+     */
+    public static final String OPTIMIZE = "dendron.optimize";
+
+    /** the optimizations the property names */
+    private static final Set<String> PASSES = passes(System.getProperty(OPTIMIZE));
+
     private Program root;
-    private Map<String,Integer> symTab;
+    private SymbolTable symTab;
+    private List< Machine.Instruction > compiled;
+    private int[] statementStarts;
+    private Closure.Action interpreter;
+    private PeepholeOptimizer peephole;
 
     /**
      * Parse the entire list of program tokens. The program is a
      * sequence of actions (statements), each of which modifies something
      * in the program's set of variables. The resulting parse tree is
-     * stored internally.
-     * @param program the token list (Strings)
+     * stored internally, with every identifier resolved to a symbol
+     * table slot.
+     * @param program the token list (Strings); it is not modified
      */
     public ParseTree( List< String > program ) {
+        this( new Lexer( program ) );
+    }
+
+    /**
+     * Parse the entire program, pulling tokens from a Lexer until its
+     * input runs out.
+     * @param program the source of tokens
+     * @see #ParseTree(List)
+     */
+    public ParseTree( Lexer program ) {
         this.root = new Program();
-        this.symTab = new HashMap<>();
-        while (program.size() > 0) {
+        this.symTab = Profile.isEnabled() ? new Profile.CountingTable() : new SymbolTable();
+        program.next();
+        while (program.kind() != Lexer.Token.END) {
             this.root.addAction(parseAction(program));
         }
+        this.root.resolve(this.symTab);
     }
 
     /**
-     * Parse the next action (statement) in the list.
+     * Parse the next action (statement) from the lexer.
      * (This method is not required, just suggested.)
-     * @param program the list of tokens
+     * @param program the source of tokens, positioned at the statement
      * @return a parse tree for the action
      */
-    private ActionNode parseAction( List< String > program ) {
+    static ActionNode parseAction( Lexer program ) {
+        if (program.matches("?") || program.matches("??")) {
+            return parseControl(program);
+        }
+        if (program.matches("{") || program.matches("}")) {
+            Errors.report(Errors.Type.ILLEGAL_VALUE, program.text(),
+                          program.line(), program.column());
+        }
         ActionNode result;
-        String currentToken = program.remove(0);
-        if (program.isEmpty()) {
-            Errors.report(Errors.Type.EXTRA_TOKENS, currentToken);
+        boolean assignment = program.kind() == Lexer.Token.ASSIGN;
+        if (program.next() == Lexer.Token.END) {
+            Errors.report(Errors.Type.EXTRA_TOKENS, program.previousText(),
+                          program.line(), program.column());
         }
-        if (currentToken.equals(":=")) {
-            result = new Assignment(program.remove(0),parseExpr(program));
+        if (assignment) {
+            String ident = program.text();
+            int line = program.line();
+            int column = program.column();
+            program.next();
+            ExpressionNode rhs = parseExpr(program);
+            if (!Lexer.isIdentifier(ident)) {
+                Errors.report(Errors.Type.ILLEGAL_VALUE, ident + " :=",
+                              line, column);
+            }
+            result = new Assignment(ident, rhs);
         } else {
             result = new Print(parseExpr(program));
         }
@@ -60,33 +113,230 @@ public class ParseTree {
     }
 
     /**
-     * Parse the next expression in the list.
+     * Parse a conditional, "? condition { actions }" with an optional
+     * second block run when the condition is zero, or a loop,
+     * "?? condition { actions }".
+     * @param program the source of tokens, positioned at "?" or "??"
+     * @return a parse tree for the statement
+     */
+    private static ActionNode parseControl( Lexer program ) {
+        boolean loop = program.matches("??");
+        program.next();
+        ExpressionNode condition = parseExpr(program);
+        Program body = parseBlock(program);
+        if (loop) {
+            return new Loop(condition, body);
+        }
+        Program otherwise = program.matches("{") ? parseBlock(program) : null;
+        return new Conditional(condition, body, otherwise);
+    }
+
+    /**
+     * Parse a block of actions in braces.
+     * @param program the source of tokens, positioned at the "{"
+     * @return the actions, in order
+     */
+    private static Program parseBlock( Lexer program ) {
+        if (program.kind() == Lexer.Token.END) {
+            Errors.report(Errors.Type.PREMATURE_END, "missing {",
+                          program.line(), program.column());
+        }
+        if (!program.matches("{")) {
+            Errors.report(Errors.Type.ILLEGAL_VALUE, program.text(),
+                          program.line(), program.column());
+        }
+        program.next();
+        Program block = new Program();
+        while (!program.matches("}")) {
+            if (program.kind() == Lexer.Token.END) {
+                Errors.report(Errors.Type.PREMATURE_END, "missing }",
+                              program.line(), program.column());
+            }
+            block.addAction(parseAction(program));
+        }
+        program.next();
+        return block;
+    }
+
+    /**
+     * Parse the next expression from the lexer.
      * (This method is not required, just suggested.)
-     * @param program the list of tokens
+     * Operators whose operands are still to come are kept on a stack
+     * rather than in recursive calls, so expressions may be nested as
+     * deeply as memory allows.
+     * @param program the source of tokens, positioned at the expression
      * @return a parse tree for this expression
      */
-    private ExpressionNode parseExpr( List< String > program ) {
-        ExpressionNode result;
-        if (program.isEmpty()) {
-            Errors.report(Errors.Type.PREMATURE_END, null);
-        }
-        String currentToken = program.remove(0);
-        if (UnaryOperation.OPERATORS.contains(currentToken)) {
-            result = new UnaryOperation(currentToken, parseExpr(program));
-        } else if (BinaryOperation.OPERATORS.contains(currentToken)) {
-            ExpressionNode left = parseExpr(program);
-            ExpressionNode right = parseExpr(program);
-            result = new BinaryOperation(currentToken, left, right);
-        } else if (currentToken.matches( "^[a-zA-Z].*" )){
-            result = new Variable(currentToken);
-        } else {
-            if (!currentToken.matches("[-+]?\\d+")) {
-                Errors.report(Errors.Type.ILLEGAL_VALUE, currentToken);
+    static ExpressionNode parseExpr( Lexer program ) {
+        Operator[] operators = new Operator[16];
+        ExpressionNode[] lefts = new ExpressionNode[16];
+        int top = 0;
+        while (true) {
+            ExpressionNode result = null;
+            switch (program.kind()) {
+                case END:
+                    Errors.report(Errors.Type.PREMATURE_END, null,
+                                  program.line(), program.column());
+                    break;
+                case UNARY:
+                case BINARY:
+                    if (top == operators.length) {
+                        operators = Arrays.copyOf(operators, 2 * top);
+                        lefts = Arrays.copyOf(lefts, 2 * top);
+                    }
+                    operators[top] = program.operator();
+                    lefts[top++] = null;
+                    program.next();
+                    continue;
+                case IDENT:
+                    result = new Variable(program.text());
+                    program.next();
+                    break;
+                case NUMBER:
+                    result = new Constant(program.value());
+                    program.next();
+                    break;
+                default:
+                    Errors.report(Errors.Type.ILLEGAL_VALUE, program.text(),
+                                  program.line(), program.column());
+            }
+            // Complete every operator that now has all its operands.
+            while (top > 0) {
+                Operator operator = operators[top - 1];
+                if (operator.getArity() == 1) {
+                    result = new UnaryOperation(operator, result);
+                } else if (lefts[top - 1] == null) {
+                    lefts[top - 1] = result;
+                    break;
+                } else {
+                    result = new BinaryOperation(operator, lefts[top - 1], result);
+                    lefts[top - 1] = null;
+                }
+                --top;
+            }
+            if (top == 0) {
+                return result;
             }
-            int cons = Integer.parseInt(currentToken);
-            result = new Constant(cons);
         }
-        return result;
+    }
+
+    /**
+     * Simplify the tree by folding constant subexpressions and applying
+     * algebraic identities. Both {@link #interpret()} and
+     * {@link #compile()} then work on the smaller tree. Division by a
+     * constant zero is not folded, so it is still reported at run time.
+     * @return the number of nodes removed from the tree
+     * @see ExpressionNode#optimize(java.util.Set)
+     */
+    public int optimize() {
+        int before = this.root.size();
+        this.root.optimize(new HashSet<>());
+        this.compiled = null;
+        this.interpreter = null;
+        return before - this.root.size();
+    }
+
+    /**
+     * Apply the optimizations named by the dendron.optimize property,
+     * which is read once. With the property unset, the tree is left as
+     * parsed. The names are
+     * <ul>
+     *     <li>"fold": {@link #optimize()}</li>
+     *     <li>"cse": {@link #eliminateCommonSubexpressions()}</li>
+     *     <li>"peephole": {@link #setPeepholeOptimizer} with every rule,
+     *     after which the program is compiled</li>
+     * </ul>
+     * and "all" stands for every one of them; other names are ignored.
+     * They are done in that order, whatever order they are named in, so
+     * that expressions are compared after they have been simplified.
+     * @return a line for each optimization done, saying what it changed;
+     * empty if none was done
+     */
+    public String applyOptimizations() {
+        StringBuilder summary = new StringBuilder();
+        if (isEnabled("fold")) {
+            summary.append("fold: ").append(optimize())
+                   .append(" nodes removed\n");
+        }
+        if (isEnabled("cse")) {
+            summary.append("cse: ").append(eliminateCommonSubexpressions())
+                   .append(" evaluations eliminated\n");
+        }
+        if (isEnabled("peephole")) {
+            PeepholeOptimizer optimizer = new PeepholeOptimizer();
+            setPeepholeOptimizer(optimizer);
+            compile();
+            int total = 0;
+            StringBuilder rules = new StringBuilder();
+            for (Map.Entry<PeepholeOptimizer.Rule,Integer> hit : optimizer.getHits().entrySet()) {
+                if (hit.getValue() > 0) {
+                    total += hit.getValue();
+                    rules.append(rules.length() == 0 ? " (" : ", ")
+                         .append(hit.getKey()).append(' ').append(hit.getValue());
+                }
+            }
+            summary.append("peephole: ").append(total).append(" rewrites")
+                   .append(rules).append(rules.length() == 0 ? "\n" : ")\n");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Have {@link #compile()} pass the code through a peephole optimizer.
+     * Each top-level statement's code is optimized on its own, so that
+     * {@link #getStatementStarts()} still says where each statement
+     * starts; the stack is empty between statements, so little is lost.
+     * @param optimizer the optimizer, whose hit counts then include this
+     *                  program's; or null to compile without one
+     */
+    public void setPeepholeOptimizer(PeepholeOptimizer optimizer) {
+        this.peephole = optimizer;
+        this.compiled = null;
+    }
+
+    /**
+     * @param pass the name of an optimization
+     * @return true if the dendron.optimize property names it, directly
+     * or through "all"
+     */
+    private static boolean isEnabled(String pass) {
+        return PASSES.contains(pass) || PASSES.contains("all");
+    }
+
+    /**
+     * Split the value of the dendron.optimize property into names.
+     * @param value the property's value, or null if it is unset
+     * @return the names, without surrounding spaces
+     */
+    private static Set<String> passes(String value) {
+        Set<String> names = new HashSet<>();
+        if (value != null) {
+            for (String name : value.split(",")) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Find expressions that are computed more than once with the same
+     * operand values, and compute each of them only once. The first
+     * evaluation saves its value in a hidden temporary (left out of
+     * symbol table dumps), and later ones read the temporary instead.
+     * An assignment to a variable ends the reuse of every saved value
+     * that depends on it. Both {@link #interpret()} and
+     * {@link #compile()} see the rewritten tree.
+     * @return the number of evaluations that were eliminated
+     * @see ValueNumbering
+     */
+    public int eliminateCommonSubexpressions() {
+        ValueNumbering vn = new ValueNumbering();
+        this.root.number(vn);
+        this.root.eliminate(vn);
+        this.root.resolve(this.symTab);
+        this.compiled = null;
+        this.interpreter = null;
+        return vn.getReuses();
     }
 
     /**
@@ -100,18 +350,73 @@ public class ParseTree {
     }
 
     /**
-     * Run the program represented by the tree directly
-     * @see ActionNode#execute(Map)
+     * Run the program represented by the tree directly. The tree is
+     * first compiled into closures specialized for each operator, so
+     * running it does no operator dispatch; the closures are kept until
+     * the tree is rewritten. If the dendron.profile property is set, the
+     * run is profiled and the profile is reported last.
+     * @see ActionNode#closure()
+     * @see Profile
      */
     public void interpret() {
         System.out.println("\nInterpreting the parse tree...");
-        this.root.execute(symTab);
+        Profile profile = Profile.isEnabled() ? profile() : null;
+        if (profile == null) {
+            run();
+        }
+        Output.flush();
         System.out.println("\nInterpretation complete.\n");
+        displaySymbolTable(this.symTab);
+        if (profile != null) {
+            profile.report();
+        }
+    }
+
+    /**
+     * Run the program represented by the tree directly, as
+     * {@link #interpret()} does, but without reporting anything.
+     * @return the symbol table holding the program's variables
+     */
+    public SymbolTable run() {
+        if (this.interpreter == null) {
+            this.interpreter = this.root.closure();
+        }
+        this.interpreter.execute(this.symTab);
+        return this.symTab;
+    }
 
+    /**
+     * Run the program represented by the tree directly, timing each
+     * statement. If the tree was built with profiling on, the loads and
+     * stores of each variable are counted too.
+     * @return the profile of the run
+     */
+    public Profile profile() {
+        Profile profile = new Profile("tree");
+        int index = 0;
+        for (ActionNode action : this.root.programs) {
+            Closure.Action closure = action.closure();
+            long start = System.nanoTime();
+            closure.execute(this.symTab);
+            profile.time(index++, -1, -1, System.nanoTime() - start);
+        }
+        if (this.symTab instanceof Profile.CountingTable) {
+            ((Profile.CountingTable) this.symTab).collect(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Show the contents of an interpreter's symbol table on standard output.
+     * @param symTab the table
+     */
+    static void displaySymbolTable(SymbolTable symTab) {
+        Output.flush();
         System.out.println("Symbol Table Contents\n=====================\n");
 
-        for (String var : symTab.keySet()) {
-            String output = var + " :        " + symTab.get(var);
+        Map<String,Integer> contents = symTab.toMap();
+        for (String var : contents.keySet()) {
+            String output = var + " :        " + contents.get(var);
             if (var.length() < 12) {
                 StringBuilder temp = new StringBuilder("");
                 for (int i = 0; i < 12-var.length(); i++) {
@@ -126,12 +431,64 @@ public class ParseTree {
 
     /**
      * Build the list of machine instructions for
-     * the program represented by the tree.
-     * @return the Machine.Instruction list
-     * @see Machine.Instruction#execute()
+     * the program represented by the tree, passing them through the
+     * peephole optimizer if one has been set. The tree is left intact, and
+     * the instructions are kept, so compiling again costs nothing until
+     * the tree is rewritten by {@link #optimize()} or
+     * {@link #eliminateCommonSubexpressions()}.
+     * @return the Machine.Instruction list, which must not be modified
+     * @see Machine.Instruction#execute(Machine)
      */
     public List< Machine.Instruction > compile() {
-        return this.root.emit();
+        if (this.compiled == null) {
+            ArrayList< Machine.Instruction > code = new ArrayList<>();
+            int[] starts = new int[this.root.programs.size()];
+            int index = 0;
+            for (ActionNode action : this.root.programs) {
+                starts[index++] = code.size();
+                action.emit(code);
+            }
+            if (this.peephole != null) {
+                code = optimizeStatements(code, starts);
+            }
+            code.trimToSize();
+            this.compiled = Collections.unmodifiableList(code);
+            this.statementStarts = starts;
+        }
+        return this.compiled;
+    }
+
+    /**
+     * Pass each statement's code through the peephole optimizer on its
+     * own. The whole program is emitted first, so that the labels, which
+     * are numbered by position, are unique in it.
+     * @param code the whole program's instructions
+     * @param starts the index of each statement's first instruction;
+     *               updated to index the optimized instructions
+     * @return the optimized instructions
+     */
+    private ArrayList< Machine.Instruction > optimizeStatements(
+            List< Machine.Instruction > code, int[] starts) {
+        ArrayList< Machine.Instruction > optimized = new ArrayList<>(code.size());
+        for (int i = 0; i < starts.length; ++i) {
+            int end = i + 1 < starts.length ? starts[i + 1] : code.size();
+            List< Machine.Instruction > statement = code.subList(starts[i], end);
+            starts[i] = optimized.size();
+            optimized.addAll(this.peephole.optimize(statement));
+        }
+        return optimized;
+    }
+
+    /**
+     * Find where each statement's code starts in the instructions
+     * {@link #compile()} builds, so that a profile can charge each
+     * instruction to the statement it came from.
+     * @return the index of each top-level statement's first instruction
+     * @see Machine#execute(List, int[])
+     */
+    public int[] getStatementStarts() {
+        compile();
+        return this.statementStarts.clone();
     }
 
 }
@@ -1,10 +1,11 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.Output;
+import dendron.SymbolTable;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * A node that represents the displaying of the value of an expression on the
@@ -13,6 +14,9 @@ import java.util.Map;
  * @author Jesse Burdick-Pless jb4411@g.rit.edu
  */
 public class Print implements ActionNode {
+    /** what precedes each value the interpreter prints */
+    private static final String PREFIX = "=== ";
+
     private ExpressionNode printee;
     /**
      * Set up a Print node.
@@ -24,14 +28,15 @@ public class Print implements ActionNode {
     }
 
     /**
-     * Evaluate the expression and display the result on the console. Precede
-     * it with three equal signs so it stands out a little.
+     * Evaluate the expression and display the result on the console, through
+     * the current {@link dendron.OutputSink}. Precede it with three equal signs
+     * so it stands out a little.
      *
      * @param symTab the table where variable values are stored
      */
     @Override
-    public void execute(Map<String, Integer> symTab) {
-        System.out.print("=== " + this.printee.evaluate(symTab));
+    public void execute(SymbolTable symTab) {
+        Output.current().print(PREFIX, this.printee.evaluate(symTab), "");
     }
 
     /**
@@ -45,17 +50,72 @@ public class Print implements ActionNode {
     }
 
     /**
-     * This method returns the code emitted by the printee node that pushes the
+     * This method appends the code emitted by the printee node that pushes the
      * value of the printee expression onto the stack, followed by a PRINT instruction
      *
-     * @return a list of instructions ending in the ones that compute the value
-     * to be printed, and print it.
+     * @param code the buffer to which the instructions are appended
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.printee.emit(code);
+        code.add(new Machine.Print());
+    }
+
+    /**
+     * Resolve the variables used by the printee expression.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        this.printee.resolve(symTab);
+    }
+
+    /**
+     * Simplify the printee expression.
+     *
+     * @param assigned the variables certain to have a value so far
+     */
+    @Override
+    public void optimize(Set<String> assigned) {
+        this.printee = this.printee.optimize(assigned);
+    }
+
+    /**
+     * Number the printee expression.
+     *
+     * @param vn the numbering being built
+     */
+    @Override
+    public void number(ValueNumbering vn) {
+        this.printee.number(vn);
+    }
+
+    /**
+     * Eliminate common subexpressions from the printee expression.
+     *
+     * @param vn the numbering built for the whole program
+     */
+    @Override
+    public void eliminate(ValueNumbering vn) {
+        this.printee = this.printee.eliminate(vn);
+    }
+
+    /**
+     * @return a closure that displays the printee closure's value
+     * @see TreeWalker#closure
+     */
+    @Override
+    public Closure.Action closure() {
+        Closure.Expression printee = TreeWalker.closure(this.printee);
+        return symTab -> Output.current().print(PREFIX, printee.evaluate(symTab), "");
+    }
+
+    /**
+     * @return one more than the size of the printee expression
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        instructions.addAll(this.printee.emit());
-        instructions.add(new Machine.Print());
-        return instructions;
+    public int size() {
+        return 1 + this.printee.size();
     }
 }
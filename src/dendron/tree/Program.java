@@ -1,11 +1,11 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.SymbolTable;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * An ActionNode used to represent a sequence of other ActionNodes. The main
@@ -37,15 +37,10 @@ public class Program implements ActionNode, DendronNode {
      *
      * @param symTab the table of variable values
      */
-    public void execute(Map<String,Integer> symTab) {
-        LinkedList<ActionNode> temp = new LinkedList<>();
-        ActionNode current;
-        while (!this.programs.isEmpty()) {
-            current = this.programs.removeFirst();
-            temp.add(current);
+    public void execute(SymbolTable symTab) {
+        for (ActionNode current : this.programs) {
             current.execute(symTab);
         }
-        this.programs = temp;
     }
 
     /**
@@ -54,32 +49,103 @@ public class Program implements ActionNode, DendronNode {
      */
     @Override
     public void infixDisplay() {
-        LinkedList<ActionNode> temp = new LinkedList<>();
-        ActionNode current;
-        while (!this.programs.isEmpty()) {
-            current = this.programs.removeFirst();
-            temp.add(current);
+        for (ActionNode current : this.programs) {
             current.infixDisplay();
             System.out.print("\n");
+        }
+    }
+
+    /**
+     * Append the instructions emitted by each child, from the first-added
+     * child to the last-added. The children are left in place, so the
+     * program can be emitted again.
+     *
+     * @param code the buffer to which all children's instructions are appended
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        for (ActionNode current : this.programs) {
+            current.emit(code);
+        }
+    }
+
+    /**
+     * Resolve the variables of each child, from first-added to last-added,
+     * so that slots are handed out in program order.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        for (ActionNode current : this.programs) {
+            current.resolve(symTab);
+        }
+    }
 
+    /**
+     * Simplify each child, from first-added to last-added.
+     *
+     * @param assigned the variables certain to have a value so far
+     */
+    @Override
+    public void optimize(Set<String> assigned) {
+        for (ActionNode current : this.programs) {
+            current.optimize(assigned);
         }
-        this.programs = temp;
     }
 
     /**
-     * Create a list of instructions emitted by each child, from the
-     * first-added child to the last-added.
+     * Number each child, from first-added to last-added.
      *
-     * @return the concatenated instructions lists from all children
+     * @param vn the numbering being built
+     */
+    @Override
+    public void number(ValueNumbering vn) {
+        for (ActionNode current : this.programs) {
+            current.number(vn);
+        }
+    }
+
+    /**
+     * Eliminate common subexpressions from each child, from first-added
+     * to last-added.
+     *
+     * @param vn the numbering built for the whole program
+     */
+    @Override
+    public void eliminate(ValueNumbering vn) {
+        for (ActionNode current : this.programs) {
+            current.eliminate(vn);
+        }
+    }
+
+    /**
+     * @return a closure that runs the children's closures, from
+     * first-added to last-added
+     */
+    @Override
+    public Closure.Action closure() {
+        Closure.Action[] actions = new Closure.Action[this.programs.size()];
+        int i = 0;
+        for (ActionNode current : this.programs) {
+            actions[i++] = current.closure();
+        }
+        return symTab -> {
+            for (Closure.Action action : actions) {
+                action.execute(symTab);
+            }
+        };
+    }
+
+    /**
+     * @return one more than the total size of all children
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        ActionNode current;
-        while (!this.programs.isEmpty()) {
-            current = this.programs.removeFirst();
-            instructions.addAll(current.emit());
+    public int size() {
+        int result = 1;
+        for (ActionNode current : this.programs) {
+            result += current.size();
         }
-        return instructions;
+        return result;
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * file: StreamingInterpreter.java
+ */
+
+package dendron.tree;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.SymbolTable;
+import dendron.machine.Machine;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Run a Dendron program while it is still being read. Each statement is
+ * parsed, executed against a symbol table that lives for the whole run,
+ * and then thrown away, so memory use does not grow with the length of
+ * the program and output appears as soon as each statement arrives.
+ * Statements can be run either by the tree interpreter or by compiling
+ * each one and executing its code on a Machine.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class StreamingInterpreter {
+    private final Lexer lexer;
+    private final SymbolTable symTab;
+    private final Machine machine;
+
+    /**
+     * Prepare to run statements from a lexer.
+     *
+     * @param lexer the source of tokens
+     * @param compiled if true, compile each statement and execute it on
+     *                 a Machine; if false, interpret its tree
+     */
+    public StreamingInterpreter(Lexer lexer, boolean compiled) {
+        this.lexer = lexer;
+        this.symTab = new SymbolTable();
+        this.machine = compiled ? new Machine() : null;
+        this.lexer.next();
+    }
+
+    /**
+     * Parse and run the next statement.
+     *
+     * @return false if there were no more statements
+     */
+    public boolean step() {
+        if (this.lexer.kind() == Lexer.Token.END) {
+            return false;
+        }
+        ActionNode statement = ParseTree.parseAction(this.lexer);
+        if (this.machine == null) {
+            statement.resolve(this.symTab);
+            statement.execute(this.symTab);
+        } else {
+            this.machine.resume(statement.emit());
+        }
+        return true;
+    }
+
+    /**
+     * Run statements until the input runs out.
+     */
+    public void run() {
+        while (step()) {
+            // each statement has already been run
+        }
+    }
+
+    /**
+     * Show the final variable values, in the same format as the
+     * corresponding non-streaming execution.
+     */
+    public void report() {
+        if (this.machine == null) {
+            System.out.println();
+            ParseTree.displaySymbolTable(this.symTab);
+        } else {
+            this.machine.report();
+        }
+    }
+
+    /**
+     * Run a Dendron program from a file or from standard input.
+     *
+     * @param args optionally "-machine" to execute compiled code, then
+     *             optionally the name of the source file
+     */
+    public static void main(String... args) throws IOException {
+        boolean compiled = args.length > 0 && args[0].equals("-machine");
+        int fileArg = compiled ? 1 : 0;
+        if (args.length > fileArg + 1) {
+            System.err.println("Usage: java StreamingInterpreter [-machine] [source-file]");
+            System.exit(1);
+        }
+        try (InputStream in = args.length > fileArg ?
+                new FileInputStream(args[fileArg]) : System.in) {
+            StreamingInterpreter interpreter = new StreamingInterpreter(
+                    new Lexer(new InputStreamReader(in, StandardCharsets.UTF_8)), compiled);
+            interpreter.run();
+            interpreter.report();
+        } catch (DendronException e) {
+            Errors.exit(e);
+        }
+    }
+}
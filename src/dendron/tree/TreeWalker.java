@@ -0,0 +1,711 @@
+/*
+ * file: TreeWalker.java
+ */
+
+package dendron.tree;
+
+import dendron.SymbolTable;
+import dendron.machine.Machine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Walk expression trees of any depth, so that how deep an expression can
+ * be is limited by the heap and not by the Java call stack. The operation
+ * nodes (BinaryOperation, UnaryOperation and CommonSubexpression) hand
+ * their evaluation, emission, display, resolution and counting, and the
+ * optimize, number and eliminate passes, to this class; any other node
+ * is a leaf, and its own method is called.
+ *
+ * The top {@link #RECURSION_DEPTH} levels of a tree are walked by plain
+ * recursion, which is fastest for the shallow trees real programs have.
+ * Any subtree below that is walked with explicit work stacks instead.
+ *
+ * Children are visited left to right, exactly as the recursive methods
+ * visited them, so errors are reported, variables resolved and
+ * instructions emitted in the same order.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+final class TreeWalker {
+
+    /**
+     * How many levels of an expression are walked by recursion before the
+     * work stacks take over. Expressions deeper than this are also not
+     * turned into nested closures, which would recurse once per level both
+     * when built and when run; they are evaluated by {@link #evaluate}
+     * instead.
+     */
+    static final int RECURSION_DEPTH = 1000;
+
+    /** Do not instantiate this class. */
+    private TreeWalker() {}
+
+    /**
+     * A stack of nodes still to visit. Each operation node is visited
+     * twice: once to push its operands, and once, marked as expanded,
+     * after they are done.
+     */
+    private static final class Work {
+        private ExpressionNode[] nodes = new ExpressionNode[16];
+        private boolean[] expanded = new boolean[16];
+        private int top = 0;
+
+        private Work(ExpressionNode root) {
+            push(root, false);
+        }
+
+        private void push(ExpressionNode node, boolean isExpanded) {
+            if (this.top == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, 2 * this.top);
+                this.expanded = Arrays.copyOf(this.expanded, 2 * this.top);
+            }
+            this.nodes[this.top] = node;
+            this.expanded[this.top++] = isExpanded;
+        }
+
+        /**
+         * If a node popped for the first time is an operation, push it
+         * back, marked expanded, above its operands, so its operands are
+         * visited left to right before it is visited again.
+         * @param node the node just popped
+         * @return true if the node was expanded, false if it is a leaf
+         */
+        private boolean expand(ExpressionNode node) {
+            if (node instanceof CommonSubexpression) {
+                push(node, true);
+                push(((CommonSubexpression) node).operand(), false);
+                return true;
+            }
+            return expandOperation(node);
+        }
+
+        /**
+         * Expand a node as {@link #expand} does if it is a
+         * BinaryOperation or UnaryOperation. A CommonSubexpression is
+         * left as a leaf, as the rewriting passes must leave the
+         * expression it shares with its uses alone.
+         * @param node the node just popped
+         * @return true if the node was expanded, false if it is a leaf
+         */
+        private boolean expandOperation(ExpressionNode node) {
+            if (node instanceof BinaryOperation) {
+                BinaryOperation op = (BinaryOperation) node;
+                push(op, true);
+                push(op.right(), false);
+                push(op.left(), false);
+            } else if (node instanceof UnaryOperation) {
+                push(node, true);
+                push(((UnaryOperation) node).operand(), false);
+            } else {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A stack of expressions: the rewritten operands visited so far.
+     */
+    private static final class Nodes {
+        private ExpressionNode[] nodes = new ExpressionNode[16];
+        private int top = 0;
+
+        private void push(ExpressionNode node) {
+            if (this.top == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, 2 * this.top);
+            }
+            this.nodes[this.top++] = node;
+        }
+
+        private ExpressionNode pop() {
+            ExpressionNode node = this.nodes[--this.top];
+            this.nodes[this.top] = null;
+            return node;
+        }
+    }
+
+    /**
+     * A stack of ints: the values of the operands visited so far.
+     */
+    private static final class Values {
+        private int[] values = new int[16];
+        private int top = 0;
+
+        private void push(int value) {
+            if (this.top == this.values.length) {
+                this.values = Arrays.copyOf(this.values, 2 * this.top);
+            }
+            this.values[this.top++] = value;
+        }
+    }
+
+    /**
+     * Evaluate an expression.
+     * @param root the expression
+     * @param symTab symbol table, if needed, to fetch variable values
+     * @return the value
+     * @see ExpressionNode#evaluate
+     */
+    static int evaluate(ExpressionNode root, SymbolTable symTab) {
+        return evaluate(root, symTab, RECURSION_DEPTH);
+    }
+
+    /**
+     * Evaluate an expression by recursion, down to a given depth.
+     * @param node the expression
+     * @param symTab symbol table, if needed, to fetch variable values
+     * @param levels how many more levels may be recursed through
+     * @return the value
+     */
+    private static int evaluate(ExpressionNode node, SymbolTable symTab,
+                                int levels) {
+        if (levels == 0) {
+            return evaluateDeep(node, symTab);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            int left = evaluate(op.left(), symTab, levels - 1);
+            int right = evaluate(op.right(), symTab, levels - 1);
+            return op.operator().apply(left, right);
+        } else if (node instanceof UnaryOperation) {
+            UnaryOperation op = (UnaryOperation) node;
+            return op.operator().apply(evaluate(op.operand(), symTab, levels - 1));
+        } else if (node instanceof CommonSubexpression) {
+            CommonSubexpression cse = (CommonSubexpression) node;
+            int result = evaluate(cse.operand(), symTab, levels - 1);
+            cse.save(symTab, result);
+            return result;
+        }
+        return node.evaluate(symTab);
+    }
+
+    /**
+     * Evaluate an expression with work stacks.
+     * @param root the expression
+     * @param symTab symbol table, if needed, to fetch variable values
+     * @return the value
+     */
+    private static int evaluateDeep(ExpressionNode root, SymbolTable symTab) {
+        Work work = new Work(root);
+        Values stack = new Values();
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expand(node)) {
+                continue;
+            }
+            int[] values = stack.values;
+            int top = stack.top;
+            if (!expanded) {
+                stack.push(node.evaluate(symTab));
+            } else if (node instanceof BinaryOperation) {
+                values[top - 2] = ((BinaryOperation) node).operator()
+                        .apply(values[top - 2], values[top - 1]);
+                stack.top = top - 1;
+            } else if (node instanceof UnaryOperation) {
+                values[top - 1] = ((UnaryOperation) node).operator()
+                        .apply(values[top - 1]);
+            } else {
+                ((CommonSubexpression) node).save(symTab, values[top - 1]);
+            }
+        }
+        return stack.values[0];
+    }
+
+    /**
+     * Append the instructions that compute an expression.
+     * @param root the expression
+     * @param code the buffer being filled
+     * @see DendronNode#emit(List)
+     */
+    static void emit(ExpressionNode root, List<Machine.Instruction> code) {
+        emit(root, code, RECURSION_DEPTH);
+    }
+
+    /**
+     * Append the instructions that compute an expression, by recursion
+     * down to a given depth.
+     * @param node the expression
+     * @param code the buffer being filled
+     * @param levels how many more levels may be recursed through
+     */
+    private static void emit(ExpressionNode node, List<Machine.Instruction> code,
+                             int levels) {
+        if (levels == 0) {
+            emitDeep(node, code);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            emit(op.left(), code, levels - 1);
+            emit(op.right(), code, levels - 1);
+            code.add(Machine.instruction(op.operator()));
+        } else if (node instanceof UnaryOperation) {
+            UnaryOperation op = (UnaryOperation) node;
+            emit(op.operand(), code, levels - 1);
+            code.add(Machine.instruction(op.operator()));
+        } else if (node instanceof CommonSubexpression) {
+            CommonSubexpression cse = (CommonSubexpression) node;
+            emit(cse.operand(), code, levels - 1);
+            cse.emitSave(code);
+        } else {
+            node.emit(code);
+        }
+    }
+
+    /**
+     * Append the instructions that compute an expression, using a work
+     * stack.
+     * @param root the expression
+     * @param code the buffer being filled
+     */
+    private static void emitDeep(ExpressionNode root, List<Machine.Instruction> code) {
+        Work work = new Work(root);
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expand(node)) {
+                continue;
+            }
+            if (!expanded) {
+                node.emit(code);
+            } else if (node instanceof BinaryOperation) {
+                code.add(Machine.instruction(((BinaryOperation) node).operator()));
+            } else if (node instanceof UnaryOperation) {
+                code.add(Machine.instruction(((UnaryOperation) node).operator()));
+            } else {
+                ((CommonSubexpression) node).emitSave(code);
+            }
+        }
+    }
+
+    /**
+     * Give the identifiers in an expression their symbol table slots.
+     * @param root the expression
+     * @param symTab the table in which identifiers are resolved
+     * @see DendronNode#resolve
+     */
+    static void resolve(ExpressionNode root, SymbolTable symTab) {
+        resolve(root, symTab, RECURSION_DEPTH);
+    }
+
+    /**
+     * Resolve the identifiers in an expression by recursion, down to a
+     * given depth.
+     * @param node the expression
+     * @param symTab the table in which identifiers are resolved
+     * @param levels how many more levels may be recursed through
+     */
+    private static void resolve(ExpressionNode node, SymbolTable symTab, int levels) {
+        if (levels == 0) {
+            resolveDeep(node, symTab);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            resolve(op.left(), symTab, levels - 1);
+            resolve(op.right(), symTab, levels - 1);
+        } else if (node instanceof UnaryOperation) {
+            resolve(((UnaryOperation) node).operand(), symTab, levels - 1);
+        } else if (node instanceof CommonSubexpression) {
+            CommonSubexpression cse = (CommonSubexpression) node;
+            resolve(cse.operand(), symTab, levels - 1);
+            cse.resolveTemporary(symTab);
+        } else {
+            node.resolve(symTab);
+        }
+    }
+
+    /**
+     * Resolve the identifiers in an expression using a work stack.
+     * @param root the expression
+     * @param symTab the table in which identifiers are resolved
+     */
+    private static void resolveDeep(ExpressionNode root, SymbolTable symTab) {
+        Work work = new Work(root);
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expand(node)) {
+                continue;
+            }
+            if (!expanded) {
+                node.resolve(symTab);
+            } else if (node instanceof CommonSubexpression) {
+                ((CommonSubexpression) node).resolveTemporary(symTab);
+            }
+        }
+    }
+
+    /**
+     * Count the nodes in an expression.
+     * @param root the expression
+     * @return the number of nodes
+     * @see DendronNode#size
+     */
+    static int size(ExpressionNode root) {
+        return size(root, RECURSION_DEPTH);
+    }
+
+    /**
+     * Count the nodes in an expression by recursion, down to a given depth.
+     * @param node the expression
+     * @param levels how many more levels may be recursed through
+     * @return the number of nodes
+     */
+    private static int size(ExpressionNode node, int levels) {
+        if (levels == 0) {
+            return sizeDeep(node);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            return 1 + size(op.left(), levels - 1) + size(op.right(), levels - 1);
+        } else if (node instanceof UnaryOperation) {
+            return 1 + size(((UnaryOperation) node).operand(), levels - 1);
+        } else if (node instanceof CommonSubexpression) {
+            return size(((CommonSubexpression) node).operand(), levels - 1);
+        }
+        return node.size();
+    }
+
+    /**
+     * Count the nodes in an expression using a work stack.
+     * @param root the expression
+     * @return the number of nodes
+     */
+    private static int sizeDeep(ExpressionNode root) {
+        Work work = new Work(root);
+        int size = 0;
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            if (work.expanded[work.top]) {
+                size += node instanceof CommonSubexpression ? 0 : 1;
+            } else if (!work.expand(node)) {
+                size += node.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Simplify an expression, its operands first.
+     * @param root the expression
+     * @param assigned the variables certain to have a value
+     * @return the simplified expression
+     * @see ExpressionNode#optimize
+     */
+    static ExpressionNode optimize(ExpressionNode root, Set<String> assigned) {
+        return optimize(root, assigned, RECURSION_DEPTH);
+    }
+
+    /**
+     * Simplify an expression by recursion, down to a given depth.
+     * @param node the expression
+     * @param assigned the variables certain to have a value
+     * @param levels how many more levels may be recursed through
+     * @return the simplified expression
+     */
+    private static ExpressionNode optimize(ExpressionNode node, Set<String> assigned,
+                                           int levels) {
+        if (levels == 0) {
+            return optimizeDeep(node, assigned);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            ExpressionNode left = optimize(op.left(), assigned, levels - 1);
+            ExpressionNode right = optimize(op.right(), assigned, levels - 1);
+            return op.simplify(left, right, assigned);
+        } else if (node instanceof UnaryOperation) {
+            UnaryOperation op = (UnaryOperation) node;
+            return op.simplify(optimize(op.operand(), assigned, levels - 1));
+        }
+        return node.optimize(assigned);
+    }
+
+    /**
+     * Simplify an expression using work stacks.
+     * @param root the expression
+     * @param assigned the variables certain to have a value
+     * @return the simplified expression
+     */
+    private static ExpressionNode optimizeDeep(ExpressionNode root, Set<String> assigned) {
+        Work work = new Work(root);
+        Nodes done = new Nodes();
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expandOperation(node)) {
+                continue;
+            }
+            if (!expanded) {
+                done.push(node.optimize(assigned));
+            } else if (node instanceof BinaryOperation) {
+                ExpressionNode right = done.pop();
+                ExpressionNode left = done.pop();
+                done.push(((BinaryOperation) node).simplify(left, right, assigned));
+            } else {
+                done.push(((UnaryOperation) node).simplify(done.pop()));
+            }
+        }
+        return done.pop();
+    }
+
+    /**
+     * Give an expression and its subexpressions value numbers, operands
+     * first.
+     * @param root the expression
+     * @param vn the numbering being built
+     * @return the expression's value number
+     * @see ExpressionNode#number
+     */
+    static int number(ExpressionNode root, ValueNumbering vn) {
+        return number(root, vn, RECURSION_DEPTH);
+    }
+
+    /**
+     * Number an expression by recursion, down to a given depth.
+     * @param node the expression
+     * @param vn the numbering being built
+     * @param levels how many more levels may be recursed through
+     * @return the expression's value number
+     */
+    private static int number(ExpressionNode node, ValueNumbering vn, int levels) {
+        if (levels == 0) {
+            return numberDeep(node, vn);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            int left = number(op.left(), vn, levels - 1);
+            int right = number(op.right(), vn, levels - 1);
+            return op.number(vn, left, right);
+        } else if (node instanceof UnaryOperation) {
+            UnaryOperation op = (UnaryOperation) node;
+            return vn.number(op, op.operator(), number(op.operand(), vn, levels - 1));
+        } else if (node instanceof CommonSubexpression) {
+            return number(((CommonSubexpression) node).operand(), vn, levels - 1);
+        }
+        return node.number(vn);
+    }
+
+    /**
+     * Number an expression using work stacks.
+     * @param root the expression
+     * @param vn the numbering being built
+     * @return the expression's value number
+     */
+    private static int numberDeep(ExpressionNode root, ValueNumbering vn) {
+        Work work = new Work(root);
+        Values numbers = new Values();
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expand(node)) {
+                continue;
+            }
+            int[] values = numbers.values;
+            int top = numbers.top;
+            if (!expanded) {
+                numbers.push(node.number(vn));
+            } else if (node instanceof BinaryOperation) {
+                values[top - 2] = ((BinaryOperation) node)
+                        .number(vn, values[top - 2], values[top - 1]);
+                numbers.top = top - 1;
+            } else if (node instanceof UnaryOperation) {
+                UnaryOperation op = (UnaryOperation) node;
+                values[top - 1] = vn.number(op, op.operator(), values[top - 1]);
+            }
+        }
+        return numbers.values[0];
+    }
+
+    /**
+     * Replace the evaluations in an expression of values already
+     * computed by uses of saved temporaries. Each operation is first
+     * looked up, and only if its value is new are its operands visited.
+     * @param root the expression, numbered by {@link #number}
+     * @param vn the numbering built for the whole program
+     * @return the expression to evaluate in place of root
+     * @see ExpressionNode#eliminate
+     */
+    static ExpressionNode eliminate(ExpressionNode root, ValueNumbering vn) {
+        return eliminate(root, vn, RECURSION_DEPTH);
+    }
+
+    /**
+     * Eliminate common subexpressions by recursion, down to a given depth.
+     * @param node the expression
+     * @param vn the numbering built for the whole program
+     * @param levels how many more levels may be recursed through
+     * @return the expression to evaluate in place of node
+     */
+    private static ExpressionNode eliminate(ExpressionNode node, ValueNumbering vn,
+                                            int levels) {
+        if (levels == 0) {
+            return eliminateDeep(node, vn);
+        } else if (node instanceof BinaryOperation) {
+            ExpressionNode result = vn.reuse(node);
+            if (result == null) {
+                BinaryOperation op = (BinaryOperation) node;
+                ExpressionNode left = eliminate(op.left(), vn, levels - 1);
+                ExpressionNode right = eliminate(op.right(), vn, levels - 1);
+                result = vn.define(op, op.rebuild(left, right));
+            }
+            return result;
+        } else if (node instanceof UnaryOperation) {
+            ExpressionNode result = vn.reuse(node);
+            if (result == null) {
+                UnaryOperation op = (UnaryOperation) node;
+                result = vn.define(op, op.rebuild(eliminate(op.operand(), vn, levels - 1)));
+            }
+            return result;
+        }
+        return node.eliminate(vn);
+    }
+
+    /**
+     * Eliminate common subexpressions using work stacks.
+     * @param root the expression
+     * @param vn the numbering built for the whole program
+     * @return the expression to evaluate in place of root
+     */
+    private static ExpressionNode eliminateDeep(ExpressionNode root, ValueNumbering vn) {
+        Work work = new Work(root);
+        Nodes done = new Nodes();
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded) {
+                ExpressionNode reused = node instanceof BinaryOperation
+                        || node instanceof UnaryOperation ? vn.reuse(node) : null;
+                if (reused != null) {
+                    done.push(reused);
+                } else if (!work.expandOperation(node)) {
+                    done.push(node.eliminate(vn));
+                }
+            } else if (node instanceof BinaryOperation) {
+                ExpressionNode right = done.pop();
+                ExpressionNode left = done.pop();
+                done.push(vn.define(node, ((BinaryOperation) node).rebuild(left, right)));
+            } else {
+                done.push(vn.define(node, ((UnaryOperation) node).rebuild(done.pop())));
+            }
+        }
+        return done.pop();
+    }
+
+    /**
+     * Measure how deep an expression is, stopping early once it is
+     * deeper than a limit.
+     * @param root the expression
+     * @param limit the greatest depth of interest
+     * @return the number of operation nodes on the longest path from the
+     * root to a leaf, or limit + 1 if that is more than limit
+     */
+    static int depth(ExpressionNode root, int limit) {
+        Work work = new Work(root);
+        Values depths = new Values();
+        while (work.top > 0) {
+            ExpressionNode node = work.nodes[--work.top];
+            boolean expanded = work.expanded[work.top];
+            if (!expanded && work.expand(node)) {
+                if (work.top > 2 * limit + 2) {
+                    return limit + 1;
+                }
+                continue;
+            }
+            int[] values = depths.values;
+            int top = depths.top;
+            if (!expanded) {
+                depths.push(0);
+            } else if (node instanceof BinaryOperation) {
+                values[top - 2] = 1 + Math.max(values[top - 2], values[top - 1]);
+                depths.top = top - 1;
+            } else {
+                values[top - 1] += 1;
+            }
+            if (depths.values[depths.top - 1] > limit) {
+                return limit + 1;
+            }
+        }
+        return depths.values[0];
+    }
+
+    /**
+     * Build a closure for an expression if it is shallow enough to be
+     * run as nested closures, or else one that evaluates it with
+     * {@link #evaluate}.
+     * @param root the expression, with its identifiers resolved
+     * @return the closure
+     */
+    static Closure.Expression closure(ExpressionNode root) {
+        if (depth(root, RECURSION_DEPTH) <= RECURSION_DEPTH) {
+            return root.closure();
+        }
+        return symTab -> evaluate(root, symTab);
+    }
+
+    /**
+     * Show an expression in infix form on standard output.
+     * @param root the expression
+     * @see DendronNode#infixDisplay
+     */
+    static void infixDisplay(ExpressionNode root) {
+        infixDisplay(root, RECURSION_DEPTH);
+    }
+
+    /**
+     * Show an expression in infix form by recursion, down to a given depth.
+     * @param node the expression
+     * @param levels how many more levels may be recursed through
+     */
+    private static void infixDisplay(ExpressionNode node, int levels) {
+        if (levels == 0) {
+            infixDisplayDeep(node);
+        } else if (node instanceof BinaryOperation) {
+            BinaryOperation op = (BinaryOperation) node;
+            System.out.print("( ");
+            infixDisplay(op.left(), levels - 1);
+            System.out.print(" " + op.operator().getSymbol() + " ");
+            infixDisplay(op.right(), levels - 1);
+            System.out.print(" )");
+        } else if (node instanceof UnaryOperation) {
+            UnaryOperation op = (UnaryOperation) node;
+            System.out.print(op.operator().getSymbol());
+            infixDisplay(op.operand(), levels - 1);
+        } else if (node instanceof CommonSubexpression) {
+            infixDisplay(((CommonSubexpression) node).operand(), levels - 1);
+        } else {
+            node.infixDisplay();
+        }
+    }
+
+    /**
+     * Show an expression in infix form using a work stack of nodes and
+     * the text between them.
+     * @param root the expression
+     */
+    private static void infixDisplayDeep(ExpressionNode root) {
+        Object[] work = new Object[16];
+        int top = 0;
+        work[top++] = root;
+        while (top > 0) {
+            Object item = work[--top];
+            if (top + 4 > work.length) {
+                work = Arrays.copyOf(work, 2 * work.length);
+            }
+            if (item instanceof String) {
+                System.out.print((String) item);
+            } else if (item instanceof BinaryOperation) {
+                BinaryOperation op = (BinaryOperation) item;
+                System.out.print("( ");
+                work[top++] = " )";
+                work[top++] = op.right();
+                work[top++] = " " + op.operator().getSymbol() + " ";
+                work[top++] = op.left();
+            } else if (item instanceof UnaryOperation) {
+                UnaryOperation op = (UnaryOperation) item;
+                System.out.print(op.operator().getSymbol());
+                work[top++] = op.operand();
+            } else if (item instanceof CommonSubexpression) {
+                work[top++] = ((CommonSubexpression) item).operand();
+            } else {
+                ((ExpressionNode) item).infixDisplay();
+            }
+        }
+    }
+}
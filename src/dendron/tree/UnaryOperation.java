@@ -1,8 +1,11 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
+import dendron.Operator;
+import dendron.SymbolTable;
 
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A calculation represented by a unary operator and its operand.
@@ -15,9 +18,9 @@ public class UnaryOperation implements ExpressionNode {
     /** square root operator */
     public static final String SQRT = "#";
     /** Container of all legal unary operators, for use by parsers */
-    public static final Collection<String> OPERATORS = new ArrayList<>(Arrays.asList(NEG,SQRT));
+    public static final Collection<String> OPERATORS = Operator.symbols(1);
 
-    private String operator;
+    private Operator operator;
     private ExpressionNode expr;
 
     /**
@@ -28,36 +31,58 @@ public class UnaryOperation implements ExpressionNode {
      * @rit.pre OPERATORS.contains( operator ), expr != null
      */
     public UnaryOperation(String operator, ExpressionNode expr) {
+        this(Operator.forSymbol(operator), expr);
+    }
+
+    /**
+     * Create a new UnaryOperation node from a registry entry.
+     *
+     * @param operator the operator
+     * @param expr the operand
+     * @rit.pre operator.getArity() == 1, expr != null
+     */
+    public UnaryOperation(Operator operator, ExpressionNode expr) {
         this.operator = operator;
         this.expr = expr;
     }
 
+    /**
+     * @return the operator
+     */
+    Operator operator() {
+        return this.operator;
+    }
+
+    /**
+     * @return the operand
+     */
+    ExpressionNode operand() {
+        return this.expr;
+    }
+
     /**
      * Compute the result of evaluating the expression and applying the
-     * operator to it.
+     * operator to it. The tree is walked without recursion, so it may be
+     * of any depth.
      *
      * @param symTab symbol table, needed to evaluate the child tree
      * @return the result of the computation
+     * @see TreeWalker#evaluate
      */
     @Override
-    public int evaluate(Map<String, Integer> symTab) {
-        int result;
-        if (this.operator.equals(NEG)) {
-            result = -1*this.expr.evaluate(symTab);
-        } else {
-            result = (int) Math.sqrt((double) this.expr.evaluate(symTab));
-        }
-        return result;
+    public int evaluate(SymbolTable symTab) {
+        return TreeWalker.evaluate(this, symTab);
     }
 
     /**
      * Print, on standard output, the infixDisplay of the child nodes preceded
      * by the operator and without an intervening blank.
+     *
+     * @see TreeWalker#infixDisplay
      */
     @Override
     public void infixDisplay() {
-        System.out.print(operator);
-        this.expr.infixDisplay();
+        TreeWalker.infixDisplay(this);
     }
 
     /**
@@ -66,16 +91,128 @@ public class UnaryOperation implements ExpressionNode {
      * that pops a value off the stack, applies the operator, and pushes the
      * answer.
      *
-     * @return a list containing instructions for the expression and the instruction to perform the operation
+     * @param code the buffer to which the instructions for the expression and the instruction to perform the operation are appended
+     * @see TreeWalker#emit
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        TreeWalker.emit(this, code);
+    }
+
+    /**
+     * Resolve the variables used by the operand.
+     *
+     * @param symTab the table in which identifiers are resolved
+     * @see TreeWalker#resolve
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>(this.expr.emit());
-        if (this.operator.equals(NEG)) {
-            instructions.add(new Machine.Negate());
-        } else {
-            instructions.add(new Machine.SquareRoot());
+    public void resolve(SymbolTable symTab) {
+        TreeWalker.resolve(this, symTab);
+    }
+
+    /**
+     * Simplify the operand, then this operation.
+     *
+     * @param assigned the variables certain to have a value
+     * @return the simplified expression
+     * @see TreeWalker#optimize
+     */
+    @Override
+    public ExpressionNode optimize(Set<String> assigned) {
+        return TreeWalker.optimize(this, assigned);
+    }
+
+    /**
+     * Take the simplified operand, then fold the operation if it is a
+     * Constant, or collapse a double negation.
+     *
+     * @param operand the simplified operand
+     * @return the simplified expression
+     */
+    ExpressionNode simplify(ExpressionNode operand) {
+        this.expr = operand;
+        if (this.expr instanceof Constant) {
+            return new Constant(this.operator.apply(((Constant) this.expr).getValue()));
+        }
+        if (this.operator == Operator.NEG && this.expr instanceof UnaryOperation) {
+            UnaryOperation inner = (UnaryOperation) this.expr;
+            if (inner.operator == Operator.NEG) {
+                return inner.expr;
+            }
         }
-        return instructions;
+        return this;
+    }
+
+    /**
+     * Build the negation of an already simplified expression, collapsing
+     * a double negation.
+     *
+     * @param expr the expression to negate
+     * @return an expression with the opposite value
+     */
+    static ExpressionNode negate(ExpressionNode expr) {
+        if (expr instanceof UnaryOperation && ((UnaryOperation) expr).operator == Operator.NEG) {
+            return ((UnaryOperation) expr).expr;
+        }
+        return new UnaryOperation(Operator.NEG, expr);
+    }
+
+    /**
+     * Number the operand, then number this operation by its operator and
+     * the operand's number.
+     *
+     * @param vn the numbering being built
+     * @return the value number
+     * @see TreeWalker#number
+     */
+    @Override
+    public int number(ValueNumbering vn) {
+        return TreeWalker.number(this, vn);
+    }
+
+    /**
+     * Reuse an earlier evaluation of this value if there is one;
+     * otherwise rewrite the operand and record this evaluation.
+     *
+     * @param vn the numbering built for the whole program
+     * @return the expression to evaluate in place of this one
+     * @see TreeWalker#eliminate
+     */
+    @Override
+    public ExpressionNode eliminate(ValueNumbering vn) {
+        return TreeWalker.eliminate(this, vn);
+    }
+
+    /**
+     * @param operand the rewritten operand
+     * @return this node if the operand did not change, or else a new
+     * operation on the rewritten operand
+     */
+    ExpressionNode rebuild(ExpressionNode operand) {
+        return operand == this.expr ? this : new UnaryOperation(this.operator, operand);
+    }
+
+    /**
+     * @return a closure that applies this node's operator to the
+     * operand's closure; negation gets a closure of its own, and any
+     * other operator's closure calls its kernel
+     */
+    @Override
+    public Closure.Expression closure() {
+        Closure.Expression operand = this.expr.closure();
+        if (this.operator == Operator.NEG) {
+            return symTab -> -operand.evaluate(symTab);
+        }
+        IntUnaryOperator kernel = this.operator.getUnary();
+        return symTab -> kernel.applyAsInt(operand.evaluate(symTab));
+    }
+
+    /**
+     * @return one more than the size of the operand
+     * @see TreeWalker#size
+     */
+    @Override
+    public int size() {
+        return TreeWalker.size(this);
     }
 }
@@ -0,0 +1,158 @@
+package dendron.tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bookkeeping for common subexpression elimination.
+ *
+ * In the first pass every expression node is hash-consed: it is given a
+ * value number determined by its operator and the value numbers of its
+ * operands, so structurally identical subtrees get the same number. A
+ * variable's number also depends on how many times it has been assigned
+ * so far, so an Assignment invalidates every expression that uses the
+ * old value.
+ *
+ * In the second pass, the first evaluation of a value number that occurs
+ * more than once is wrapped in a CommonSubexpression, and later
+ * evaluations of the same number become uses of that node's hidden
+ * temporary.
+ *
+ * Code that runs only some of the time, a branch of a Conditional or the
+ * body of a Loop, is handled with {@link #save()} and
+ * {@link #restore(Map)}: a value first evaluated there is forgotten
+ * when the branch or loop is left, since it may never have been saved.
+ * A Loop also calls {@link #assign(String)} for every variable it
+ * assigns before it is numbered, since its condition and body see those
+ * variables' values from the previous iteration.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class ValueNumbering {
+    private final Map<List<Object>, Integer> numbers;
+    private final Map<ExpressionNode, Integer> nodeNumbers;
+    private final Map<String, Integer> versions;
+    private final Map<Integer, Integer> occurrences;
+    private final Map<Integer, CommonSubexpression> available;
+    private int temporaries;
+    private int reuses;
+
+    /**
+     * Start an empty numbering.
+     */
+    public ValueNumbering() {
+        this.numbers = new HashMap<>();
+        this.nodeNumbers = new IdentityHashMap<>();
+        this.versions = new HashMap<>();
+        this.occurrences = new HashMap<>();
+        this.available = new HashMap<>();
+        this.temporaries = 0;
+        this.reuses = 0;
+    }
+
+    /**
+     * Give a node the value number for its structure, creating a new
+     * number if the structure has not been seen.
+     *
+     * @param node the node being numbered
+     * @param key the node's operator and its operands' value numbers
+     * @return the node's value number
+     */
+    public int number(ExpressionNode node, Object... key) {
+        Integer result = this.numbers.get(Arrays.asList(key));
+        if (result == null) {
+            result = this.numbers.size();
+            this.numbers.put(Arrays.asList(key), result);
+        }
+        this.nodeNumbers.put(node, result);
+        this.occurrences.merge(result, 1, Integer::sum);
+        return result;
+    }
+
+    /**
+     * @param ident a variable name
+     * @return how many times the variable has been assigned so far
+     */
+    public int version(String ident) {
+        return this.versions.getOrDefault(ident, 0);
+    }
+
+    /**
+     * Record an assignment, which invalidates every value number that
+     * depends on the variable's previous value.
+     *
+     * @param ident the variable being assigned
+     */
+    public void assign(String ident) {
+        this.versions.merge(ident, 1, Integer::sum);
+    }
+
+    /**
+     * Find an earlier evaluation of the same value as a node.
+     *
+     * @param node a node numbered in the first pass
+     * @return a use of the earlier evaluation's temporary, or null if
+     * this is the first evaluation of its value
+     */
+    public ExpressionNode reuse(ExpressionNode node) {
+        CommonSubexpression def = this.available.get(this.nodeNumbers.get(node));
+        if (def == null) {
+            return null;
+        }
+        this.reuses++;
+        if (def.isReused()) {
+            return def.use(null);
+        }
+        return def.use(CommonSubexpression.TEMPORARY_PREFIX + this.temporaries++);
+    }
+
+    /**
+     * Record the first evaluation of a node's value. If the value is
+     * needed again later, the evaluation is wrapped so that it saves the
+     * value in a temporary.
+     *
+     * @param node a node numbered in the first pass
+     * @param rewritten the node with its own operands already rewritten
+     * @return the expression to evaluate in place of node
+     */
+    public ExpressionNode define(ExpressionNode node, ExpressionNode rewritten) {
+        int number = this.nodeNumbers.get(node);
+        if (this.occurrences.get(number) < 2) {
+            return rewritten;
+        }
+        CommonSubexpression def = new CommonSubexpression(rewritten);
+        this.available.put(number, def);
+        return def;
+    }
+
+    /**
+     * Note which first evaluations are available so far, before entering
+     * code that may not run.
+     *
+     * @return the evaluations available now, to pass to {@link #restore}
+     */
+    public Map<Integer, CommonSubexpression> save() {
+        return new HashMap<>(this.available);
+    }
+
+    /**
+     * Forget every first evaluation made since {@link #save()}, on leaving
+     * code that may not have run.
+     *
+     * @param saved what {@link #save()} returned
+     */
+    public void restore(Map<Integer, CommonSubexpression> saved) {
+        this.available.clear();
+        this.available.putAll(saved);
+    }
+
+    /**
+     * @return how many evaluations were replaced by uses of a temporary
+     */
+    public int getReuses() {
+        return this.reuses;
+    }
+}
@@ -1,11 +1,10 @@
 package dendron.tree;
 
 import dendron.machine.Machine;
-import dendron.Errors;
+import dendron.SymbolTable;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * The ExpressionNode for a simple variable
@@ -14,9 +13,11 @@ import java.util.Map;
  */
 public class Variable implements ExpressionNode {
     private String name;
+    private int slot;
 
     public Variable(String name) {
         this.name = name;
+        this.slot = -1;
     }
 
     /**
@@ -26,11 +27,8 @@ public class Variable implements ExpressionNode {
      * @return this variable's current value in the symbol table
      */
     @Override
-    public int evaluate(Map<String, Integer> symTab) {
-        if (!symTab.containsKey(this.name)) {
-            Errors.report(Errors.Type.UNINITIALIZED,this.name);
-        }
-        return symTab.get(this.name);
+    public int evaluate(SymbolTable symTab) {
+        return symTab.get(this.slot);
     }
 
     /**
@@ -44,12 +42,78 @@ public class Variable implements ExpressionNode {
     /**
      * Emit a LOAD instruction that pushes the Variable's value onto the stack.
      *
-     * @return a list containing a single LOAD instruction
+     * @param code the buffer to which the LOAD is appended
      */
     @Override
-    public List<Machine.Instruction> emit() {
-        List<Machine.Instruction> instructions = new ArrayList<>();
-        instructions.add(new Machine.Load(this.name));
-        return instructions;
+    public void emit(List<Machine.Instruction> code) {
+        code.add(new Machine.Load(this.name));
+    }
+
+    /**
+     * Look up (or allocate) this Variable's slot in the symbol table.
+     *
+     * @param symTab the table in which identifiers are resolved
+     */
+    @Override
+    public void resolve(SymbolTable symTab) {
+        this.slot = symTab.slot(this.name);
+    }
+
+    /**
+     * A Variable cannot be simplified.
+     *
+     * @param assigned unused
+     * @return this Variable
+     */
+    @Override
+    public ExpressionNode optimize(Set<String> assigned) {
+        return this;
+    }
+
+    /**
+     * Number this Variable by its name and by how many times it has been
+     * assigned, so that a new assignment gives it a new number.
+     *
+     * @param vn the numbering being built
+     * @return the value number
+     */
+    @Override
+    public int number(ValueNumbering vn) {
+        return vn.number(this, this.name, vn.version(this.name));
+    }
+
+    /**
+     * A Variable is never worth saving.
+     *
+     * @param vn unused
+     * @return this Variable
+     */
+    @Override
+    public ExpressionNode eliminate(ValueNumbering vn) {
+        return this;
+    }
+
+    /**
+     * @return a closure that fetches the value from this Variable's slot
+     */
+    @Override
+    public Closure.Expression closure() {
+        int slot = this.slot;
+        return symTab -> symTab.get(slot);
+    }
+
+    /**
+     * @return 1
+     */
+    @Override
+    public int size() {
+        return 1;
+    }
+
+    /**
+     * @return this Variable's name
+     */
+    public String getName() {
+        return this.name;
     }
 }
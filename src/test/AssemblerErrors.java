@@ -0,0 +1,88 @@
+/*
+ * file: AssemblerErrors.java
+ */
+
+package test;
+
+import dendron.DendronException;
+import dendron.Errors;
+import dendron.machine.InstructionReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Assemble programs that are wrong in one place each, and check that
+ * the assembler reports the right kind of error at the right line and
+ * column. An operand missing at the end of the file is reported at its
+ * instruction's mnemonic.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class AssemblerErrors {
+
+    /**
+     * One faulty program and where its fault is.
+     */
+    private static final class Case {
+        private final String text;
+        private final Errors.Type type;
+        private final int line;
+        private final int column;
+
+        private Case( String text, Errors.Type type, int line, int column ) {
+            this.text = text;
+            this.type = type;
+            this.line = line;
+            this.column = column;
+        }
+    }
+
+    private static final Case[] CASES = {
+        new Case( "PUSH\n", Errors.Type.PREMATURE_END, 1, 1 ),
+        new Case( "PUSH 1\n  LOAD", Errors.Type.PREMATURE_END, 2, 3 ),
+        new Case( "PUSH 1 PRINT JNZ", Errors.Type.PREMATURE_END, 1, 14 ),
+        new Case( "   STORE   \n\n", Errors.Type.PREMATURE_END, 1, 4 ),
+        new Case( "PUSH 1\nPUSH x7\n", Errors.Type.ILLEGAL_VALUE, 2, 6 ),
+        new Case( "PUSH 1\n\tFROB\n", Errors.Type.ILLEGAL_INSTRUCTION, 2, 2 ),
+        new Case( "LABEL a\nLABEL a\n", Errors.Type.ILLEGAL_LABEL, 2, 7 ),
+        new Case( "JMP nowhere\nPUSH 1\nJZ nowhere\n",
+                  Errors.Type.ILLEGAL_LABEL, 1, 5 )
+    };
+
+    /**
+     * Run the check.
+     * @param args unused
+     */
+    public static void main( String... args ) throws IOException {
+        Path dir = Files.createTempDirectory( "dendron" );
+        int failures = 0;
+        for ( int i = 0; i < CASES.length; ++i ) {
+            Case test = CASES[ i ];
+            Path file = dir.resolve( "bad" + i + ".denm" );
+            Files.write( file, test.text.getBytes( StandardCharsets.UTF_8 ) );
+            String expected = test.type.getMessage() + " at " + file + ":" +
+                              test.line + ":" + test.column;
+            String actual;
+            try {
+                InstructionReader.assemble( file.toString() );
+                actual = "no error";
+            }
+            catch ( DendronException e ) {
+                actual = e.getType().getMessage() + " at " + e.getPosition();
+            }
+            if ( !actual.equals( expected ) ) {
+                System.out.println( "FAIL: " + test.text.replace( "\n", "\\n" ) +
+                                    "\n    expected " + expected +
+                                    "\n    got      " + actual );
+                ++failures;
+            }
+            Files.delete( file );
+        }
+        Files.delete( dir );
+        System.out.println( CASES.length + " programs: " + failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+}
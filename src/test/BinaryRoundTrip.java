@@ -0,0 +1,79 @@
+/*
+ * file: BinaryRoundTrip.java
+ */
+
+package test;
+
+import dendron.machine.BinaryProgram;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Convert every assembly file in a directory to the binary program
+ * format, load it back, and check that the listing and the execution
+ * output are the same as for the assembled original.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class BinaryRoundTrip {
+
+    /**
+     * Run the round-trip test.
+     * @param args optionally, the directory of assembly files
+     *             (default "assy")
+     */
+    public static void main( String... args ) throws IOException {
+        String dirName = args.length > 0 ? args[ 0 ] : "assy";
+        File[] files = new File( dirName ).listFiles(
+                ( dir, name ) -> name.endsWith( ".denm" ) );
+        if ( files == null ) {
+            System.err.println( "Provided directory " + dirName +
+                                " does not exist." );
+            System.exit( 1 );
+        }
+
+        int failures = 0;
+        File binary = File.createTempFile( "dendron", ".dnb" );
+        binary.deleteOnExit();
+        for ( File file: files ) {
+            List< Machine.Instruction > original =
+                    InstructionReader.assemble( file.getPath() );
+            BinaryProgram.write( original, binary.getPath() );
+            List< Machine.Instruction > loaded =
+                    BinaryProgram.load( binary.getPath() );
+            boolean same = original.toString().equals( loaded.toString() ) &&
+                           run( original ).equals( run( loaded ) );
+            System.out.printf( "%-28s %6d bytes  %s\n", file.getName(),
+                               binary.length(), same ? "ok" : "MISMATCH" );
+            if ( !same ) {
+                ++failures;
+            }
+        }
+        System.out.println( failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    /**
+     * Execute a program, capturing what it prints.
+     * @param program the instructions
+     * @return the standard output of the run
+     */
+    private static String run( List< Machine.Instruction > program ) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut( new PrintStream( captured ) );
+        try {
+            Machine.execute( program );
+        }
+        finally {
+            System.setOut( stdout );
+        }
+        return captured.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * file: ControlFlow.java
+ */
+
+package test;
+
+import dendron.DendronException;
+import dendron.Output;
+import dendron.machine.InstructionReader;
+import dendron.machine.JitCompiler;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+import dendron.machine.RegisterProgram;
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Check that programs with loops and conditionals do the same thing on
+ * every back end that runs branches. Each program is interpreted as a
+ * tree, and compiled and run both on a Machine and as a PackedProgram.
+ * Every run must print the same values, leave the same variables and
+ * fail, if it fails, with the same message as the interpretation.
+ *
+ * The Machine must count as many back edges as the loops of a program
+ * go round, and the PackedProgram the same back edges as the Machine.
+ * RegisterProgram and JitCompiler do not take branches; they must
+ * refuse such a program rather than run it wrongly.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class ControlFlow {
+
+    /** programs that branch, with how many times their loops go round */
+    private static final Object[][] WRITTEN = {
+            { ":= i 0 := s 0 ?? < i 5 { := j 0 " +
+              "?? < j i { := s + s j := j + j 1 } := i + i 1 } @ s", 15 },
+            { ":= n 0 ?? n { @ 1 } @ 2", 0 },
+            { ":= n 7 ?? > n 1 { ? % n 2 { := n + * 3 n 1 } " +
+              "{ := n / n 2 } @ n }", 16 },
+            { ":= k 3 ?? 1 { @ / 10 - k 1 := k - k 1 }", 3 },
+            { ":= a 3 := b 5 ? > a b { @ a } " +
+              "{ ? == a b { @ 0 } { @ b } }", 0 },
+            { ":= x 0 ?? < x 3 { := x + x 1 ? == x 2 { @ * x 10 } { @ x } }", 3 },
+            { ":= p 1 ? p { } { @ p } @ p", 0 },
+            { ":= t 4 ?? t { := t - t 1 ?? 0 { @ t } } @ t", 4 }
+    };
+
+    /** the source files with loops, and how many times they go round */
+    private static final Object[][] SOURCE = {
+            { "loop-sum.txt", 10 },
+            { "if-else.txt", 0 }
+    };
+
+    /** the assembly file with a loop, and how many times it goes round */
+    private static final String ASSEMBLY = "assy/loop-sum.denm";
+    private static final int ASSEMBLY_LOOPS = 10;
+
+    /**
+     * Run the check.
+     * @param args optionally, the directory of source files
+     *             (default "source")
+     */
+    public static void main( String... args ) throws IOException {
+        String dirName = args.length > 0 ? args[ 0 ] : "source";
+        Map< String, Object[] > programs = new LinkedHashMap<>();
+        for ( Object[] source: SOURCE ) {
+            File file = new File( dirName, ( String )source[ 0 ] );
+            if ( !file.isFile() ) {
+                System.err.println( "Provided file " + file +
+                                    " does not exist." );
+                System.exit( 1 );
+            }
+            programs.put( file.getName(), new Object[] {
+                    new String( Files.readAllBytes( file.toPath() ) ),
+                    source[ 1 ] } );
+        }
+        for ( int i = 0; i < WRITTEN.length; ++i ) {
+            programs.put( "written " + i, WRITTEN[ i ] );
+        }
+
+        int failures = 0;
+        for ( Map.Entry< String, Object[] > program: programs.entrySet() ) {
+            String name = program.getKey();
+            String source = ( String )program.getValue()[ 0 ];
+            int loops = ( Integer )program.getValue()[ 1 ];
+            String expected = interpret( new ParseTree( new Lexer( source ) ) );
+            List< Machine.Instruction > code =
+                    new ParseTree( new Lexer( source ) ).compile();
+            failures += check( name, expected, code, loops );
+        }
+
+        List< Machine.Instruction > assembled =
+                InstructionReader.assemble( ASSEMBLY );
+        failures += check( ASSEMBLY, run( new Machine(), assembled ),
+                           assembled, ASSEMBLY_LOOPS );
+
+        System.out.println( ( programs.size() + 1 ) + " programs: " +
+                            failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    /**
+     * Run compiled code on the Machine and as a PackedProgram, and check
+     * both runs and the back ends that refuse branches.
+     * @param name the program's name
+     * @param expected the outcome of interpreting the program
+     * @param code the program's compiled code
+     * @param loops how many times its loops go round
+     * @return the number of problems found
+     */
+    private static int check( String name, String expected,
+                              List< Machine.Instruction > code, int loops ) {
+        int failures = 0;
+        Machine machine = new Machine();
+        failures += compare( name, "Machine", expected, run( machine, code ) );
+        int[] edges = machine.getBackEdgeCounts();
+        if ( edges == null ) {
+            System.out.println( "FAIL: " + name + " has no branches" );
+            return failures + 1;
+        }
+        failures += compare( name, "Machine back edges", "" + loops,
+                             "" + Arrays.stream( edges ).sum() );
+
+        Machine packed = new Machine();
+        failures += compare( name, "PackedProgram", expected,
+                             outcome( () -> {
+                                 PackedProgram.lower( code ).run( packed );
+                                 return packed.getTable().toMap();
+                             } ) );
+        failures += compare( name, "PackedProgram back edges",
+                             Arrays.toString( edges ),
+                             Arrays.toString( packed.getBackEdgeCounts() ) );
+
+        try {
+            RegisterProgram.translate( code );
+            System.out.println( "FAIL: " + name +
+                                " (RegisterProgram took a program with branches)" );
+            ++failures;
+        }
+        catch ( IllegalArgumentException e ) {
+            // branches are documented as unsupported
+        }
+        if ( JitCompiler.compile( code ) != null ) {
+            System.out.println( "FAIL: " + name +
+                                " (JitCompiler compiled a program with branches)" );
+            ++failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Run a tree on the tree interpreter.
+     * @param tree the tree
+     * @return what the run printed and left behind, or how it failed
+     */
+    private static String interpret( ParseTree tree ) {
+        return outcome( () -> tree.run().toMap() );
+    }
+
+    /**
+     * Run code on a Machine.
+     * @param machine the Machine
+     * @param code the code
+     * @return what the run printed and left behind, or how it failed
+     */
+    private static String run( Machine machine,
+                               List< Machine.Instruction > code ) {
+        return outcome( () -> {
+            machine.run( code );
+            return machine.getTable().toMap();
+        } );
+    }
+
+    /**
+     * A run that leaves variables behind.
+     */
+    private interface Run {
+        /**
+         * @return the final variables
+         */
+        Map< String, Integer > run();
+    }
+
+    /**
+     * Do a run, capturing what it prints.
+     * @param run the run
+     * @return the printed values followed by the final variables or by
+     * the message of the error that stopped the run
+     */
+    private static String outcome( Run run ) {
+        Output.Collector printed = new Output.Collector();
+        Output.capture( printed );
+        String result;
+        try {
+            result = "variables " + run.run();
+        }
+        catch ( DendronException e ) {
+            result = "error " + e.getMessage();
+        }
+        finally {
+            Output.capture( null );
+        }
+        return "printed " + Arrays.toString( printed.getValues() ) + ", " + result;
+    }
+
+    /**
+     * Compare one run with the expected outcome, and report a mismatch.
+     * @param program the program's name
+     * @param how how it was run
+     * @param expected the expected outcome
+     * @param actual the outcome of this run
+     * @return 1 if they differ, 0 if they agree
+     */
+    private static int compare( String program, String how,
+                                String expected, String actual ) {
+        if ( expected.equals( actual ) ) {
+            return 0;
+        }
+        System.out.println( "FAIL: " + program + " (" + how + ")\n" +
+                            "    expected " + expected + "\n" +
+                            "    got      " + actual );
+        return 1;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * file: DeepExpressions.java
+ */
+
+package test;
+
+import dendron.machine.Machine;
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Parse, interpret, display and compile expressions nested a million
+ * levels deep, on the default thread stack, and check their values:
+ * chains of "+" leaning both ways, of "_" and of "#". The tree is then
+ * parsed again and put through common subexpression elimination and
+ * optimization before being run. Every stage must finish without a
+ * StackOverflowError.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class DeepExpressions {
+
+    /**
+     * Run the stress test.
+     * @param args optionally, the depth (default 1000000)
+     */
+    public static void main( String... args ) {
+        int depth = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1_000_000;
+        int failures = 0;
+        failures += check( "+ chain, left", repeat( "+ ", depth ) + "1" +
+                           repeat( " 1", depth ), depth + 1 );
+        failures += check( "+ chain, right", repeat( "+ 1 ", depth ) + "1",
+                           depth + 1 );
+        failures += check( "_ chain", repeat( "_ ", depth ) + "7",
+                           depth % 2 == 0 ? 7 : -7 );
+        failures += check( "# chain", repeat( "# ", depth ) + "65536",
+                           depth == 0 ? 65536 : depth == 1 ? 256 :
+                           depth == 2 ? 16 : depth == 3 ? 4 :
+                           depth == 4 ? 2 : 1 );
+        System.out.println( failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    /**
+     * @param text some text
+     * @param count how many copies
+     * @return the copies, one after another
+     */
+    private static String repeat( String text, int count ) {
+        StringBuilder result = new StringBuilder( text.length() * count );
+        for ( int i = 0; i < count; ++i ) {
+            result.append( text );
+        }
+        return result.toString();
+    }
+
+    /**
+     * Put an expression through every stage and check the value it
+     * gets from the tree interpreter and from the Machine.
+     * @param name what the expression is
+     * @param expr the expression, in prefix form
+     * @param expected its value
+     * @return 1 if any stage fails, 0 otherwise
+     */
+    private static int check( String name, String expr, int expected ) {
+        long start = System.nanoTime();
+        try {
+            ParseTree tree = new ParseTree( new Lexer( ":= x " + expr ) );
+            long parsed = System.nanoTime();
+
+            int interpreted = tree.run().get( 0 );
+            long ran = System.nanoTime();
+
+            PrintStream console = System.out;
+            CountingStream counter = new CountingStream();
+            System.setOut( new PrintStream( counter ) );
+            try {
+                tree.displayProgram();
+            }
+            finally {
+                System.setOut( console );
+            }
+            long displayed = System.nanoTime();
+
+            List< Machine.Instruction > code = tree.compile();
+            Machine machine = new Machine();
+            machine.run( code );
+            int executed = machine.getTable().get( 0 );
+            long compiled = System.nanoTime();
+
+            ParseTree rewritten = new ParseTree( new Lexer( ":= x " + expr ) );
+            long reparsed = System.nanoTime();
+            rewritten.eliminateCommonSubexpressions();
+            int removed = rewritten.optimize();
+            int optimized = rewritten.run().get( 0 );
+            machine.run( rewritten.compile() );
+            int optimizedCode = machine.getTable().get( 0 );
+            long passes = System.nanoTime();
+
+            boolean ok = interpreted == expected && executed == expected &&
+                         optimized == expected && optimizedCode == expected;
+            System.out.printf( "%-16s %s: parse %d ms, interpret %d ms, " +
+                               "display %d ms (%d chars), compile and " +
+                               "execute %d ms (%d instructions), " +
+                               "eliminate, optimize and run %d ms " +
+                               "(%d nodes removed)\n",
+                               name, ok ? "ok" : "WRONG VALUE",
+                               ( parsed - start ) / 1_000_000,
+                               ( ran - parsed ) / 1_000_000,
+                               ( displayed - ran ) / 1_000_000, counter.count,
+                               ( compiled - displayed ) / 1_000_000, code.size(),
+                               ( passes - reparsed ) / 1_000_000, removed );
+            return ok ? 0 : 1;
+        }
+        catch ( StackOverflowError e ) {
+            System.out.println( name + ": stack overflow" );
+            return 1;
+        }
+    }
+
+    /**
+     * An output stream that only counts what is written to it.
+     */
+    private static class CountingStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write( int b ) {
+            ++this.count;
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+            this.count += len;
+        }
+    }
+}
@@ -4,6 +4,8 @@
 
 package test;
 
+import dendron.DendronException;
+import dendron.Errors;
 import dendron.machine.Machine;
 import dendron.tree.ParseTree;
 
@@ -148,16 +150,27 @@ public class DendronTest {
             tokenList = new LinkedList<>( Arrays.asList( args ) );
         }
 
-        ParseTree tree = new ParseTree( tokenList );
+        try {
+            ParseTree tree = new ParseTree( tokenList );
 
-        tree.displayProgram();
+            String optimized = tree.applyOptimizations();
 
-        tree.interpret();
+            tree.displayProgram();
 
-        List< Machine.Instruction > program = tree.compile();
+            if ( !optimized.isEmpty() ) {
+                System.out.print( "\nOptimizations applied:\n" + optimized );
+            }
+
+            tree.interpret();
+
+            List< Machine.Instruction > program = tree.compile();
 
-        Machine.displayInstructions( program );
+            Machine.displayInstructions( program );
 
-        Machine.execute( program );
+            Machine.execute( program, tree.getStatementStarts() );
+        }
+        catch ( DendronException e ) {
+            Errors.exit( e );
+        }
     }
 }
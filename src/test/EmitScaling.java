@@ -0,0 +1,64 @@
+/*
+ * file: EmitScaling.java
+ */
+
+package test;
+
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+/**
+ * Time how long it takes to emit code for ever deeper expressions.
+ * If emission is linear, doubling the depth should roughly double the
+ * time per compile. The parser and emitter are recursive, so the
+ * measurement runs on a thread with a large stack.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class EmitScaling {
+
+    /** how many times to emit each tree */
+    private static final int REPEATS = 20;
+
+    /**
+     * Run the measurement.
+     * @param args optionally, the deepest expression to try
+     *             (default 64000)
+     */
+    public static void main( String... args ) throws InterruptedException {
+        int maxDepth = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 64000;
+        Thread thread = new Thread( null, () -> measure( maxDepth ),
+                                    "emit", 1L << 30 );
+        thread.start();
+        thread.join();
+    }
+
+    /**
+     * Print the time per emit for depths 1000, 2000, ... up to maxDepth.
+     * @param maxDepth the deepest expression to try
+     */
+    private static void measure( int maxDepth ) {
+        System.out.printf( "%10s %14s %14s\n", "depth", "instructions", "us/emit" );
+        for ( int depth = 1000; depth <= maxDepth; depth *= 2 ) {
+            // := x + 1 + 1 ... + 1 1, nested to the right
+            StringBuilder source = new StringBuilder( ":= x " );
+            for ( int i = 0; i < depth; ++i ) {
+                source.append( "+ 1 " );
+            }
+            source.append( "1" );
+            ParseTree tree = new ParseTree( new Lexer( source ) );
+
+            int size = tree.compile().size();
+            long total = 0;
+            for ( int r = 0; r < REPEATS; ++r ) {
+                // Each tree caches its code, so build a fresh one each time.
+                tree = new ParseTree( new Lexer( source ) );
+                long start = System.nanoTime();
+                tree.compile();
+                total += System.nanoTime() - start;
+            }
+            System.out.printf( "%10d %14d %14.1f\n", depth, size,
+                               total / 1e3 / REPEATS );
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * file: JitThroughput.java
+ */
+
+package test;
+
+import dendron.machine.InstructionReader;
+import dendron.machine.JitCompiler;
+import dendron.machine.Machine;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Compare how many times per second the interpreting Machine and the
+ * JIT back end can run each print-free program in a directory of
+ * assembly files, as timed by {@link Throughput}. A program the JIT
+ * cannot compile, such as one with branches, is listed as skipped.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class JitThroughput {
+
+    /** how many runs of a program go between readings of the clock */
+    private static final int BATCH = 1000;
+
+    /**
+     * Run the comparison.
+     * @param args optionally, the directory of assembly files
+     *             (default "assy")
+     */
+    public static void main( String... args ) {
+        String dirName = args.length > 0 ? args[ 0 ] : "assy";
+        File[] files = new File( dirName ).listFiles(
+                ( dir, name ) -> name.endsWith( ".denm" ) );
+        if ( files == null ) {
+            System.err.println( "Provided directory " + dirName +
+                                " does not exist." );
+            System.exit( 1 );
+        }
+
+        Machine machine = new Machine();
+        System.out.printf( "%-28s %14s %14s %8s\n",
+                           "program", "interp runs/s", "jit runs/s", "speedup" );
+        for ( File file: files ) {
+            List< Machine.Instruction > program =
+                    InstructionReader.assemble( file.getPath() );
+            if ( program.stream().anyMatch(
+                    instr -> instr instanceof Machine.Print ) ) {
+                continue;
+            }
+            JitCompiler.Program compiled = JitCompiler.compile( program );
+            if ( compiled == null ) {
+                System.out.printf( "%-28s %14s\n", file.getName(),
+                                   "skipped: not compiled" );
+                continue;
+            }
+            double interp =
+                    Throughput.measure( () -> machine.run( program ), BATCH )[ 0 ];
+            double jit =
+                    Throughput.measure( () -> compiled.run( machine ), BATCH )[ 0 ];
+            System.out.printf( "%-28s %14.0f %14.0f %7.2fx\n",
+                               file.getName(), interp, jit, jit / interp );
+        }
+    }
+}
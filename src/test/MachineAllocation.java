@@ -0,0 +1,112 @@
+/*
+ * file: MachineAllocation.java
+ */
+
+package test;
+
+import dendron.Output;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.VerifiedProgram;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check that running a verified program on a Machine allocates nothing
+ * per instruction. After a warmup, the bytes the thread allocates are
+ * measured over N runs of a program, with printed values thrown away.
+ * The bytes per run must not grow with N, and must not grow when the
+ * program is made several times longer, so whatever a run allocates is
+ * a fixed cost (the symbol table's entries), not a cost per instruction
+ * or per run of the loop.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class MachineAllocation {
+
+    /** how many runs to warm up with */
+    private static final int WARMUP = 20000;
+
+    /** the two numbers of runs whose bytes per run are compared */
+    private static final int FEW = 10000, MANY = 100000;
+
+    /** how many copies of the program make the long version */
+    private static final int COPIES = 8;
+
+    /** how many bytes per run of difference are put down to noise */
+    private static final double SLACK = 8;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ( com.sun.management.ThreadMXBean )
+                    ManagementFactory.getThreadMXBean();
+
+    /**
+     * Run the allocation test.
+     * @param args optionally, the assembly file to run
+     *             (default "assy/print-big-var-expr.denm")
+     */
+    public static void main( String... args ) {
+        String fileName = args.length > 0 ? args[ 0 ] :
+                          "assy/print-big-var-expr.denm";
+        if ( !THREADS.isThreadAllocatedMemorySupported() ) {
+            System.err.println( "This JVM cannot measure allocation." );
+            System.exit( 1 );
+        }
+        THREADS.setThreadAllocatedMemoryEnabled( true );
+        Output.capture( Output.DISCARD );
+
+        List< Machine.Instruction > program =
+                InstructionReader.assemble( fileName );
+        List< Machine.Instruction > longer = new ArrayList<>();
+        for ( int copy = 0; copy < COPIES; ++copy ) {
+            longer.addAll( program );
+        }
+        VerifiedProgram shortProgram = VerifiedProgram.verify( program );
+        VerifiedProgram longProgram = VerifiedProgram.verify( longer );
+        Machine machine = new Machine();
+        measure( machine, shortProgram, WARMUP );
+        measure( machine, longProgram, WARMUP );
+
+        double few = measure( machine, shortProgram, FEW );
+        double many = measure( machine, shortProgram, MANY );
+        double copies = measure( machine, longProgram, FEW );
+        System.out.printf( "%-36s %10s %14s\n", "program", "runs", "bytes/run" );
+        System.out.printf( "%-36s %10d %14.2f\n", fileName, FEW, few );
+        System.out.printf( "%-36s %10d %14.2f\n", fileName, MANY, many );
+        System.out.printf( "%-36s %10d %14.2f\n", COPIES + " x " + fileName,
+                           FEW, copies );
+
+        int failures = 0;
+        if ( many > few + SLACK ) {
+            System.out.println( "FAIL: bytes per run grow with the number of runs" );
+            ++failures;
+        }
+        if ( copies > few + SLACK ) {
+            System.out.println( "FAIL: bytes per run grow with the number of instructions" );
+            ++failures;
+        }
+        System.out.println( program.size() + " and " + longer.size() +
+                            " instructions: " + failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    /**
+     * Run a program repeatedly and measure what it allocates.
+     * @param machine the Machine to run it on
+     * @param program the program
+     * @param runs how many times to run it
+     * @return the bytes the thread allocated per run
+     */
+    private static double measure( Machine machine, VerifiedProgram program,
+                                   int runs ) {
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes( thread );
+        for ( int i = 0; i < runs; ++i ) {
+            machine.run( program );
+        }
+        long after = THREADS.getThreadAllocatedBytes( thread );
+        return ( double )( after - before ) / runs;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * file: MachineStressTest.java
+ */
+
+package test;
+
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.VerifiedProgram;
+import dendron.SymbolTable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run many assembled Dendron programs at the same time, each shared by
+ * a pair of threads, and check that each thread's Machine ends with
+ * exactly the symbol table the program produces when run alone. One
+ * thread of each pair starts from a table already holding variables of
+ * its own, so the same instructions find their variables in different
+ * slots on different threads.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class MachineStressTest {
+
+    /** how many times each thread runs its program */
+    private static final int ROUNDS = 10000;
+
+    /**
+     * Run the stress test.
+     * @param args optionally, the directory of assembly files
+     *             (default "assy") and the number of threads
+     *             (default 8)
+     */
+    public static void main( String... args ) throws InterruptedException {
+        String dirName = args.length > 0 ? args[ 0 ] : "assy";
+        int numThreads = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 8;
+
+        File[] files = new File( dirName ).listFiles(
+                ( dir, name ) -> name.endsWith( ".denm" ) );
+        if ( files == null ) {
+            System.err.println( "Provided directory " + dirName +
+                                " does not exist." );
+            System.exit( 1 );
+        }
+
+        List< VerifiedProgram > programs = new ArrayList<>();
+        List< Map< String, Integer > > expected = new ArrayList<>();
+        for ( File file: files ) {
+            List< Machine.Instruction > program =
+                    InstructionReader.assemble( file.getPath() );
+            // PRINT output would interleave between threads, so only use
+            // the programs that communicate through the symbol table.
+            if ( program.stream().anyMatch(
+                    instr -> instr instanceof Machine.Print ) ) {
+                continue;
+            }
+            Machine machine = new Machine();
+            machine.run( program );
+            programs.add( VerifiedProgram.verify( program ) );
+            expected.add( machine.getTable().toMap() );
+        }
+
+        if ( programs.isEmpty() ) {
+            System.err.println( "No print-free programs found in " + dirName );
+            System.exit( 1 );
+        }
+
+        AtomicInteger failures = new AtomicInteger();
+        List< Thread > threads = new ArrayList<>();
+        for ( int t = 0; t < numThreads; ++t ) {
+            int which = t / 2 % programs.size();
+            int padding = t % 2 == 0 ? 0 : t;
+            Map< String, Integer > want = new HashMap<>( expected.get( which ) );
+            for ( int pad = 0; pad < padding; ++pad ) {
+                want.put( "pad" + pad, pad );
+            }
+            Thread thread = new Thread( () -> {
+                Machine machine = Machine.local();
+                for ( int round = 0; round < ROUNDS; ++round ) {
+                    if ( padding == 0 ) {
+                        machine.run( programs.get( which ) );
+                    }
+                    else {
+                        machine.reset();
+                        SymbolTable table = machine.getTable();
+                        for ( int pad = 0; pad < padding; ++pad ) {
+                            table.put( table.slot( "pad" + pad ), pad );
+                        }
+                        machine.resume( programs.get( which ) );
+                    }
+                    if ( !machine.getTable().toMap().equals( want ) ||
+                         machine.getStackSize() != 0 ) {
+                        failures.incrementAndGet();
+                    }
+                }
+            } );
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread: threads ) {
+            thread.join();
+        }
+
+        System.out.println( numThreads + " threads x " + ROUNDS +
+                            " runs over " + programs.size() +
+                            " programs: " + failures.get() + " failures" );
+        System.exit( failures.get() == 0 ? 0 : 1 );
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * file: OptimizedPrograms.java
+ */
+
+package test;
+
+import dendron.DendronException;
+import dendron.Operator;
+import dendron.Output;
+import dendron.SymbolTable;
+import dendron.machine.Machine;
+import dendron.machine.PeepholeOptimizer;
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Check that the optimizations of a parse tree, and the peephole
+ * optimization of the code it compiles to, do not change what a
+ * program does. Each program is parsed once as it is and once more for
+ * each optimization, and every tree is both interpreted and compiled
+ * and run on a Machine. Every run must print the same values, leave the
+ * same variables and fail, if it fails, with the same message as the
+ * interpretation of the unoptimized tree.
+ *
+ * The programs are the source files, some programs written to exercise
+ * the rewrite rules, and some generated ones. Folding must also remove
+ * nodes from the programs written for it, and show a negative result as
+ * Dendron would write it. Common subexpression elimination must compute
+ * the quadratic formula's discriminant only once, and keep its
+ * temporaries out of the symbol table dumps. Each peephole rule must
+ * fire once on a program written to need each of them once.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class OptimizedPrograms {
+
+    /** programs whose constants and identities fold */
+    private static final String[] WRITTEN = {
+            ":= x - 2 3 @ x",
+            ":= a 4 := b + * a 1 - 0 a @ * b 0 @ + 0 / a 1",
+            ":= a 5 := b - a a @ + b * 2 3 @ _ _ a",
+            ":= c * 3 4 ?? c { := c - c 1 @ * c + 1 1 }",
+            ":= d 1 ? - d d { @ 1 } { @ - 0 # 16 }",
+            "@ / 5 0",
+            "@ * 0 / 7 - 1 1",
+            "@ * 0 undefined",
+            ":= e 2 @ % + e 1 * 0 e",
+            ":= h 4 ? h { := h - h 1 @ h } { := h + h 1 } @ h",
+            ":= f 3 @ * + f 1 + 1 f := f + f 1 @ * + f 1 + 1 f",
+            ":= g 2 ?? < g 9 { := g * g g @ + g g } @ + g g",
+            ":= h 6 ? h { @ * h h } { @ - h h } @ * h h"
+    };
+
+    /** DendronTest's quadratic formula program */
+    private static final String QUADRATIC =
+            ":= a 1 := b _ 1 := c _ 6 " +
+            ":= root / + _ b # - * b b * * 4 a c * 2 a " +
+            ":= root2 / - _ b # - * b b * * 4 a c * 2 a";
+
+    /** a program on which each peephole rule fires once */
+    private static final String PEEPHOLE =
+            ":= x + 2 3 := y * x 1 := z _ _ x " +
+            "?? z { := z - z 1 @ z } @ + _ 4 y";
+
+    /** how many programs to generate */
+    private static final int GENERATED = 20;
+
+    /**
+     * Run the check.
+     * @param args optionally, the directory of source files
+     *             (default "source")
+     */
+    public static void main( String... args ) throws IOException {
+        String dirName = args.length > 0 ? args[ 0 ] : "source";
+        File[] files = new File( dirName ).listFiles(
+                ( dir, name ) -> name.endsWith( ".txt" ) );
+        if ( files == null ) {
+            System.err.println( "Provided directory " + dirName +
+                                " does not exist." );
+            System.exit( 1 );
+        }
+        Arrays.sort( files );
+
+        Map< String, String > programs = new LinkedHashMap<>();
+        for ( File file: files ) {
+            programs.put( file.getName(),
+                          new String( Files.readAllBytes( file.toPath() ) ) );
+        }
+        for ( int i = 0; i < WRITTEN.length; ++i ) {
+            programs.put( "written " + i, WRITTEN[ i ] );
+        }
+        programs.put( "peephole", PEEPHOLE );
+        programs.put( "quadratic", QUADRATIC );
+        for ( int seed = 1; seed <= GENERATED; ++seed ) {
+            WorkloadGenerator generator = new WorkloadGenerator( seed );
+            generator.setStatements( 40 );
+            generator.setVariables( 4 );
+            generator.setConstantShare( 0.4 );
+            StringWriter tokens = new StringWriter();
+            generator.generate( tokens, new StringWriter() );
+            programs.put( "generated " + seed, tokens.toString() );
+        }
+
+        Map< String, ToIntFunction< ParseTree > > passes = new LinkedHashMap<>();
+        passes.put( "fold", ParseTree::optimize );
+        passes.put( "cse", ParseTree::eliminateCommonSubexpressions );
+        passes.put( "fold, cse", tree -> tree.optimize() +
+                                         tree.eliminateCommonSubexpressions() );
+        passes.put( "peephole", OptimizedPrograms::peephole );
+        passes.put( "all", tree -> tree.optimize() +
+                                   tree.eliminateCommonSubexpressions() +
+                                   peephole( tree ) );
+
+        int failures = 0;
+        Map< String, Integer > totals = new LinkedHashMap<>();
+        for ( Map.Entry< String, String > program: programs.entrySet() ) {
+            String source = program.getValue();
+            String expected = interpret( new ParseTree( new Lexer( source ) ) );
+            failures += compare( program.getKey(), "compiled",
+                                 expected, compile( new ParseTree( new Lexer( source ) ) ) );
+            for ( Map.Entry< String, ToIntFunction< ParseTree > > pass:
+                    passes.entrySet() ) {
+                ParseTree tree = new ParseTree( new Lexer( source ) );
+                int changed = pass.getValue().applyAsInt( tree );
+                totals.merge( pass.getKey(), changed, Integer::sum );
+                failures += compare( program.getKey(), pass.getKey() + ", interpreted",
+                                     expected, interpret( tree ) );
+                failures += compare( program.getKey(), pass.getKey() + ", compiled",
+                                     expected, compile( tree ) );
+            }
+        }
+
+        failures += checkFolding();
+        failures += checkQuadratic();
+        failures += checkPeephole();
+
+        for ( Map.Entry< String, Integer > total: totals.entrySet() ) {
+            System.out.printf( "%-10s %6d changes\n", total.getKey(), total.getValue() );
+        }
+        System.out.println( programs.size() + " programs: " + failures + " failures" );
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    /**
+     * Check that folding removes the nodes it should, and that a folded
+     * negative constant is displayed as Dendron would write it.
+     * @return the number of problems found
+     */
+    private static int checkFolding() {
+        int failures = 0;
+        ParseTree tree = new ParseTree( new Lexer( ":= x - 2 3" ) );
+        int removed = tree.optimize();
+        if ( removed != 2 ) {
+            System.out.println( "FAIL: folding - 2 3 removed " + removed +
+                                " nodes, not 2" );
+            ++failures;
+        }
+        String shown = display( tree );
+        if ( !shown.contains( "x := _1" ) || shown.contains( "-1" ) ) {
+            System.out.println( "FAIL: folded - 2 3 is shown as\n" + shown );
+            ++failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Check that common subexpression elimination leaves the quadratic
+     * formula program with one square root, and so one evaluation of
+     * the discriminant, and that no temporary shows up when the tree
+     * interpreter and the Machine dump their symbol tables.
+     * @return the number of problems found
+     */
+    private static int checkQuadratic() {
+        int failures = 0;
+        ParseTree plain = new ParseTree( new Lexer( QUADRATIC ) );
+        ParseTree tree = new ParseTree( new Lexer( QUADRATIC ) );
+        int eliminated = tree.eliminateCommonSubexpressions();
+        int before = count( plain.compile(), Operator.SQRT );
+        int after = count( tree.compile(), Operator.SQRT );
+        if ( before != 2 || after != 1 ) {
+            System.out.println( "FAIL: the discriminant's square root is " +
+                                "taken " + after + " times, not once (" +
+                                before + " times without elimination)" );
+            ++failures;
+        }
+        if ( eliminated == 0 ||
+             count( tree.compile(), Operator.MUL ) >=
+             count( plain.compile(), Operator.MUL ) ) {
+            System.out.println( "FAIL: elimination removed no multiplications" );
+            ++failures;
+        }
+        String dumps = capture( () -> {
+            tree.interpret();
+            Machine.execute( tree.compile(), tree.getStatementStarts() );
+        } );
+        if ( dumps.contains( SymbolTable.TEMPORARY_PREFIX ) ) {
+            System.out.println( "FAIL: a temporary is dumped:\n" + dumps );
+            ++failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Check that each peephole rule fires exactly once on a program
+     * written for that, and that the program gets shorter.
+     * @return the number of problems found
+     */
+    private static int checkPeephole() {
+        int failures = 0;
+        ParseTree tree = new ParseTree( new Lexer( PEEPHOLE ) );
+        int before = tree.compile().size();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        tree.setPeepholeOptimizer( optimizer );
+        int after = tree.compile().size();
+        Map< PeepholeOptimizer.Rule, Integer > expected =
+                new EnumMap<>( PeepholeOptimizer.Rule.class );
+        for ( PeepholeOptimizer.Rule rule: PeepholeOptimizer.Rule.values() ) {
+            expected.put( rule, 1 );
+        }
+        if ( !optimizer.getHits().equals( expected ) ) {
+            System.out.println( "FAIL: peephole rule hits are " +
+                                optimizer.getHits() + ", not one apiece" );
+            ++failures;
+        }
+        if ( after >= before ) {
+            System.out.println( "FAIL: peephole optimization left " + after +
+                                " of " + before + " instructions" );
+            ++failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Have a tree's code peephole optimized, and compile it.
+     * @param tree the tree
+     * @return how many times the rules fired
+     */
+    private static int peephole( ParseTree tree ) {
+        PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        tree.setPeepholeOptimizer( optimizer );
+        tree.compile();
+        int hits = 0;
+        for ( int count: optimizer.getHits().values() ) {
+            hits += count;
+        }
+        return hits;
+    }
+
+    /**
+     * @param code a list of Machine instructions
+     * @param operator an operator
+     * @return how many instructions apply the operator
+     */
+    private static int count( List< Machine.Instruction > code,
+                              Operator operator ) {
+        int count = 0;
+        for ( Machine.Instruction instr: code ) {
+            if ( instr instanceof Machine.BinaryOp &&
+                 ( ( Machine.BinaryOp )instr ).getOperator() == operator ||
+                 instr instanceof Machine.UnaryOp &&
+                 ( ( Machine.UnaryOp )instr ).getOperator() == operator ) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param tree a parse tree
+     * @return what displaying its program prints
+     */
+    private static String display( ParseTree tree ) {
+        return capture( tree::displayProgram );
+    }
+
+    /**
+     * @param task something that prints on standard output
+     * @return what it printed
+     */
+    private static String capture( Runnable task ) {
+        PrintStream console = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut( new PrintStream( bytes, true ) );
+        try {
+            task.run();
+        }
+        finally {
+            System.setOut( console );
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * Run a tree on the tree interpreter.
+     * @param tree the tree
+     * @return what the run printed and left behind, or how it failed
+     */
+    private static String interpret( ParseTree tree ) {
+        return outcome( () -> tree.run().toMap() );
+    }
+
+    /**
+     * Compile a tree and run the code on a Machine.
+     * @param tree the tree
+     * @return what the run printed and left behind, or how it failed
+     */
+    private static String compile( ParseTree tree ) {
+        return outcome( () -> {
+            Machine machine = new Machine();
+            machine.run( tree.compile() );
+            return machine.getTable().toMap();
+        } );
+    }
+
+    /**
+     * A run that leaves variables behind.
+     */
+    private interface Run {
+        /**
+         * @return the final variables
+         */
+        Map< String, Integer > run();
+    }
+
+    /**
+     * Do a run, capturing what it prints.
+     * @param run the run
+     * @return the printed values followed by the final variables or by
+     * the message of the error that stopped the run
+     */
+    private static String outcome( Run run ) {
+        Output.Collector printed = new Output.Collector();
+        Output.capture( printed );
+        String result;
+        try {
+            result = "variables " + run.run();
+        }
+        catch ( DendronException e ) {
+            result = "error " + e.getMessage();
+        }
+        finally {
+            Output.capture( null );
+        }
+        return "printed " + Arrays.toString( printed.getValues() ) + ", " + result;
+    }
+
+    /**
+     * Compare one run with the expected outcome, and report a mismatch.
+     * @param program the program's name
+     * @param how how it was run
+     * @param expected the outcome of interpreting the unoptimized tree
+     * @param actual the outcome of this run
+     * @return 1 if they differ, 0 if they agree
+     */
+    private static int compare( String program, String how,
+                                String expected, String actual ) {
+        if ( expected.equals( actual ) ) {
+            return 0;
+        }
+        System.out.println( "FAIL: " + program + " (" + how + ")\n" +
+                            "    expected " + expected + "\n" +
+                            "    got      " + actual );
+        return 1;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * file: PackedThroughput.java
+ */
+
+package test;
+
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare the object interpreter in Machine with the packed int[]
+ * interpreter on long straight-line programs, timing each back end with
+ * {@link Throughput}.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class PackedThroughput {
+
+    /** how many variables the generated programs use */
+    private static final int VARIABLES = 8;
+
+    /**
+     * Run the comparison.
+     * @param args optionally, the program lengths (in statements) to try
+     *             (default 1000 10000 100000)
+     */
+    public static void main( String... args ) {
+        int[] lengths = { 1000, 10000, 100000 };
+        if ( args.length > 0 ) {
+            lengths = new int[ args.length ];
+            for ( int i = 0; i < args.length; ++i ) {
+                lengths[ i ] = Integer.parseInt( args[ i ] );
+            }
+        }
+
+        Machine machine = new Machine();
+        System.out.printf( "%10s %12s %22s %22s %8s\n", "statements",
+                           "instructions", "object runs/s", "packed runs/s",
+                           "speedup" );
+        for ( int length: lengths ) {
+            List< Machine.Instruction > program = generate( length );
+            PackedProgram packed = PackedProgram.lower( program );
+            double[] object = Throughput.measure( () -> machine.run( program ) );
+            double[] fast = Throughput.measure( () -> packed.run( machine ) );
+            System.out.printf( "%10d %12d %12.1f +- %6.1f %12.1f +- %6.1f %7.2fx\n",
+                               length, program.size(), object[ 0 ], object[ 1 ],
+                               fast[ 0 ], fast[ 1 ], fast[ 0 ] / object[ 0 ] );
+        }
+    }
+
+    /**
+     * Make a print-free straight-line program. Each statement combines
+     * two variables and a constant and stores the result in a third.
+     * @param statements how many statements to generate
+     * @return the instructions
+     */
+    private static List< Machine.Instruction > generate( int statements ) {
+        Random random = new Random( 42 );
+        List< Machine.Instruction > program = new ArrayList<>();
+        for ( int v = 0; v < VARIABLES; ++v ) {
+            program.add( new Machine.PushConst( v + 1 ) );
+            program.add( new Machine.Store( "v" + v ) );
+        }
+        for ( int s = 0; s < statements; ++s ) {
+            program.add( new Machine.Load( "v" + random.nextInt( VARIABLES ) ) );
+            program.add( new Machine.PushConst( random.nextInt( 100 ) + 1 ) );
+            switch ( random.nextInt( 4 ) ) {
+                case 0: program.add( new Machine.Add() ); break;
+                case 1: program.add( new Machine.Subtract() ); break;
+                case 2: program.add( new Machine.Multiply() ); break;
+                default: program.add( new Machine.Divide() ); break;
+            }
+            program.add( new Machine.Load( "v" + random.nextInt( VARIABLES ) ) );
+            program.add( new Machine.Add() );
+            if ( random.nextBoolean() ) {
+                program.add( new Machine.Negate() );
+            }
+            program.add( new Machine.Store( "v" + random.nextInt( VARIABLES ) ) );
+        }
+        return program;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * file: RegisterThroughput.java
+ */
+
+package test;
+
+import dendron.Output;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.RegisterProgram;
+import dendron.machine.VerifiedProgram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the stack Machine with the register machine on the assy corpus
+ * and on programs from the {@link WorkloadGenerator}. For each workload
+ * it shows how many instructions each one dispatches and how many times
+ * per second each one runs the workload, as timed by {@link Throughput}.
+ * Printed values are thrown away. Programs
+ * that branch are left out, since the register machine does not run them.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class RegisterThroughput {
+
+    /**
+     * Run the comparison.
+     * @param args optionally, the generated program lengths (in
+     *             statements) to try (default 1000 10000 100000)
+     * @throws IOException if a program cannot be written or read
+     */
+    public static void main( String... args ) throws IOException {
+        int[] lengths = { 1000, 10000, 100000 };
+        if ( args.length > 0 ) {
+            lengths = new int[ args.length ];
+            for ( int i = 0; i < args.length; ++i ) {
+                lengths[ i ] = Integer.parseInt( args[ i ] );
+            }
+        }
+        Output.capture( Output.DISCARD );
+
+        System.out.printf( "%-16s %12s %12s %8s %22s %22s %8s\n", "workload",
+                           "stack instrs", "reg instrs", "fewer",
+                           "stack runs/s", "register runs/s", "speedup" );
+        File[] files = new File( "assy" ).listFiles(
+                ( dir, name ) -> name.endsWith( ".denm" ) );
+        if ( files != null ) {
+            Arrays.sort( files );
+            List< List< Machine.Instruction > > corpus = new ArrayList<>();
+            for ( File file: files ) {
+                List< Machine.Instruction > program =
+                        InstructionReader.assemble( file.getPath() );
+                if ( !VerifiedProgram.verify( program ).hasBranches() ) {
+                    corpus.add( program );
+                }
+            }
+            compare( "assy corpus", corpus );
+        }
+        for ( int length: lengths ) {
+            WorkloadGenerator generator = new WorkloadGenerator( 42 );
+            generator.setStatements( length );
+            File assembly = File.createTempFile( "dendron", ".denm" );
+            assembly.deleteOnExit();
+            try ( PrintWriter out = new PrintWriter( assembly, "UTF-8" ) ) {
+                generator.generate( new StringWriter(), out );
+            }
+            compare( length + " statements",
+                     Arrays.asList( InstructionReader.assemble( assembly.getPath() ) ) );
+        }
+    }
+
+    /**
+     * Compare the two machines on one workload and show the results.
+     * @param name the workload
+     * @param programs the programs to run, one after another
+     */
+    private static void compare( String name,
+                                 List< List< Machine.Instruction > > programs ) {
+        int count = programs.size();
+        VerifiedProgram[] verified = new VerifiedProgram[ count ];
+        RegisterProgram[] translated = new RegisterProgram[ count ];
+        long stackInstructions = 0;
+        long registerInstructions = 0;
+        for ( int i = 0; i < count; ++i ) {
+            verified[ i ] = VerifiedProgram.verify( programs.get( i ) );
+            translated[ i ] = RegisterProgram.translate( programs.get( i ) );
+            stackInstructions += programs.get( i ).size();
+            registerInstructions += translated[ i ].length();
+        }
+        Machine machine = new Machine();
+        double[] stack = Throughput.measure( () -> {
+            for ( VerifiedProgram program: verified ) {
+                machine.run( program );
+            }
+        } );
+        double[] register = Throughput.measure( () -> {
+            for ( RegisterProgram program: translated ) {
+                program.run( machine );
+            }
+        } );
+        System.out.printf( "%-16s %12d %12d %7.1f%% %12.1f +- %6.1f %12.1f +- %6.1f %7.2fx\n",
+                           name, stackInstructions, registerInstructions,
+                           100.0 * ( stackInstructions - registerInstructions ) /
+                           stackInstructions,
+                           stack[ 0 ], stack[ 1 ], register[ 0 ], register[ 1 ],
+                           register[ 0 ] / stack[ 0 ] );
+    }
+}
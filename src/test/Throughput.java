@@ -0,0 +1,84 @@
+/*
+ * file: Throughput.java
+ */
+
+package test;
+
+/**
+ * The timing shared by the throughput comparisons. As with a JMH
+ * benchmark, a task gets a number of warmup iterations, whose results
+ * are thrown away, followed by measured iterations of a fixed length
+ * that are summarized as a mean and standard deviation.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public final class Throughput {
+
+    /** number of iterations before measuring */
+    private static final int WARMUP = 5;
+
+    /** number of measured iterations */
+    private static final int MEASURE = 10;
+
+    /** how long each iteration lasts */
+    private static final long MILLIS = 200;
+
+    /** Do not instantiate this class. */
+    private Throughput() {}
+
+    /**
+     * Warm up and then measure a task, reading the clock after every run.
+     * @param task the work to repeat
+     * @return the mean and standard deviation of the runs per second
+     * over the measured iterations
+     */
+    public static double[] measure( Runnable task ) {
+        return measure( task, 1 );
+    }
+
+    /**
+     * Warm up and then measure a task.
+     * @param task the work to repeat
+     * @param batch how many times to run the task between readings of
+     *              the clock, so that cheap tasks are not swamped by it
+     * @return the mean and standard deviation of the runs per second
+     * over the measured iterations
+     */
+    public static double[] measure( Runnable task, int batch ) {
+        for ( int i = 0; i < WARMUP; ++i ) {
+            iteration( task, batch );
+        }
+        double sum = 0;
+        double sumSquares = 0;
+        for ( int i = 0; i < MEASURE; ++i ) {
+            double rate = iteration( task, batch );
+            sum += rate;
+            sumSquares += rate * rate;
+        }
+        double mean = sum / MEASURE;
+        double variance = Math.max( 0, sumSquares / MEASURE - mean * mean );
+        return new double[] { mean, Math.sqrt( variance ) };
+    }
+
+    /**
+     * Run a task repeatedly for a fixed time.
+     * @param task the work to repeat
+     * @param batch how many times to run the task between readings of
+     *              the clock
+     * @return repetitions per second
+     */
+    private static double iteration( Runnable task, int batch ) {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + MILLIS * 1_000_000;
+        long now;
+        do {
+            for ( int i = 0; i < batch; ++i ) {
+                task.run();
+            }
+            count += batch;
+            now = System.nanoTime();
+        } while ( now < end );
+        return count * 1e9 / ( now - start );
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * file: WorkloadGenerator.java
+ */
+
+package test;
+
+import dendron.Operator;
+import dendron.Output;
+import dendron.machine.InstructionReader;
+import dendron.machine.JitCompiler;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+import dendron.machine.RegisterProgram;
+import dendron.tree.Lexer;
+import dendron.tree.ParseTree;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generate large Dendron programs for scale and stress testing. The
+ * same seed and settings always give the same program, written both as
+ * a token stream and as the matching assembly code. While generating,
+ * the program is also evaluated, so the final symbol table and the
+ * printed values are known without running any part of Dendron, and a
+ * generated program can check any back end.
+ *
+ * The settings are:
+ * <ul>
+ *     <li>statements: how many statements to generate</li>
+ *     <li>max depth and average depth: each statement's expression has
+ *         a depth drawn between 0 and the maximum, with the given mean;
+ *         the deepest path runs down one side, so a deep expression
+ *         grows in length, not exponentially</li>
+ *     <li>variables: the size of the pool of variables assigned to</li>
+ *     <li>read share: the fraction of expression leaves that read an
+ *         already assigned variable rather than being a constant, which
+ *         sets how many reads there are for each write</li>
+ *     <li>print share: the fraction of statements that print a value
+ *         rather than assign one</li>
+ *     <li>constant share: the fraction of subtrees made of constants
+ *         only, which an optimizer could fold</li>
+ *     <li>operators: the operators expressions may use</li>
+ * </ul>
+ * Division and remainder never have a zero right operand, so generated
+ * programs always run to completion.
+ *
+ * @author Jesse Burdick-Pless jb4411@g.rit.edu
+ */
+public class WorkloadGenerator {
+
+    /**
+     * What a generated program should do when run.
+     */
+    public static class Expected {
+        private final Map< String, Integer > variables;
+        private final int[] printed;
+        private final long reads;
+        private final long writes;
+
+        private Expected( Map< String, Integer > variables, int[] printed,
+                          long reads, long writes ) {
+            this.variables = variables;
+            this.printed = printed;
+            this.reads = reads;
+            this.writes = writes;
+        }
+
+        /**
+         * @return the final symbol table, in order of first assignment
+         */
+        public Map< String, Integer > getVariables() {
+            return this.variables;
+        }
+
+        /**
+         * @return the values printed, in order
+         */
+        public int[] getPrinted() {
+            return this.printed;
+        }
+
+        /**
+         * @return how many times a variable is read
+         */
+        public long getReads() {
+            return this.reads;
+        }
+
+        /**
+         * @return how many assignments there are
+         */
+        public long getWrites() {
+            return this.writes;
+        }
+    }
+
+    private final long seed;
+    private int statements = 1000;
+    private int maxDepth = 16;
+    private double averageDepth = 4;
+    private int variables = 16;
+    private double readShare = 0.5;
+    private double printShare = 0.05;
+    private double constantShare = 0.1;
+    private List< Operator > binary;
+    private List< Operator > unary;
+
+    private Random random;
+    private int[] values;
+    private int[] assigned;
+    private int assignedCount;
+    private long reads;
+
+    /**
+     * Create a generator that uses every operator.
+     * @param seed the seed for all random choices
+     */
+    public WorkloadGenerator( long seed ) {
+        this.seed = seed;
+        setOperators( Arrays.asList( Operator.values() ) );
+    }
+
+    /**
+     * @param statements how many statements to generate
+     */
+    public void setStatements( int statements ) {
+        this.statements = statements;
+    }
+
+    /**
+     * @param maxDepth the greatest depth of any expression
+     * @param averageDepth the mean depth of the expressions
+     */
+    public void setDepth( int maxDepth, double averageDepth ) {
+        if ( averageDepth < 0 || averageDepth > maxDepth ) {
+            throw new IllegalArgumentException( "average depth " + averageDepth +
+                    " is not between 0 and " + maxDepth );
+        }
+        this.maxDepth = maxDepth;
+        this.averageDepth = averageDepth;
+    }
+
+    /**
+     * @param variables the size of the pool of variables
+     */
+    public void setVariables( int variables ) {
+        this.variables = variables;
+    }
+
+    /**
+     * @param readShare the fraction of leaves that read a variable
+     */
+    public void setReadShare( double readShare ) {
+        this.readShare = readShare;
+    }
+
+    /**
+     * @param printShare the fraction of statements that print
+     */
+    public void setPrintShare( double printShare ) {
+        this.printShare = printShare;
+    }
+
+    /**
+     * @param constantShare the fraction of subtrees with no variables
+     */
+    public void setConstantShare( double constantShare ) {
+        this.constantShare = constantShare;
+    }
+
+    /**
+     * @param operators the operators expressions may use; at least one
+     * must be binary
+     */
+    public void setOperators( List< Operator > operators ) {
+        this.binary = new ArrayList<>();
+        this.unary = new ArrayList<>();
+        for ( Operator op: operators ) {
+            ( op.getArity() == 2 ? this.binary : this.unary ).add( op );
+        }
+        if ( this.binary.isEmpty() ) {
+            throw new IllegalArgumentException( "no binary operator" );
+        }
+    }
+
+    /**
+     * Generate the program, one statement per line.
+     * @param tokens where to write the token stream, or null
+     * @param assembly where to write the assembly code, or null
+     * @return what the program should do
+     * @throws IOException if writing fails
+     */
+    public Expected generate( Writer tokens, Writer assembly ) throws IOException {
+        this.random = new Random( this.seed );
+        this.values = new int[ this.variables ];
+        this.assigned = new int[ this.variables ];
+        this.assignedCount = 0;
+        this.reads = 0;
+        boolean[] isAssigned = new boolean[ this.variables ];
+        int[] printed = new int[ 16 ];
+        int printCount = 0;
+        long writes = 0;
+        StringBuilder text = new StringBuilder();
+        StringBuilder code = new StringBuilder();
+        for ( int s = 0; s < this.statements; ++s ) {
+            text.setLength( 0 );
+            code.setLength( 0 );
+            boolean print = this.random.nextDouble() < this.printShare;
+            int target = print ? -1 : this.random.nextInt( this.variables );
+            text.append( print ? "@" : ":= v" + target );
+            int value = expression( text, code, depth(), false );
+            if ( print ) {
+                code.append( "PRINT\n" );
+                if ( printCount == printed.length ) {
+                    printed = Arrays.copyOf( printed, 2 * printCount );
+                }
+                printed[ printCount++ ] = value;
+            }
+            else {
+                code.append( "STORE v" ).append( target ).append( '\n' );
+                if ( !isAssigned[ target ] ) {
+                    isAssigned[ target ] = true;
+                    this.assigned[ this.assignedCount++ ] = target;
+                }
+                this.values[ target ] = value;
+                ++writes;
+            }
+            text.append( '\n' );
+            if ( tokens != null ) {
+                tokens.append( text );
+            }
+            if ( assembly != null ) {
+                assembly.append( code );
+            }
+        }
+        Map< String, Integer > table = new LinkedHashMap<>();
+        for ( int i = 0; i < this.assignedCount; ++i ) {
+            table.put( "v" + this.assigned[ i ], this.values[ this.assigned[ i ] ] );
+        }
+        return new Expected( table, Arrays.copyOf( printed, printCount ),
+                             this.reads, writes );
+    }
+
+    /**
+     * Choose a statement's expression depth: the number of successes in
+     * max depth trials, so it is never deeper than the maximum and is on
+     * average the average depth.
+     * @return the depth
+     */
+    private int depth() {
+        double p = this.maxDepth == 0 ? 0 : this.averageDepth / this.maxDepth;
+        int depth = 0;
+        for ( int i = 0; i < this.maxDepth; ++i ) {
+            if ( this.random.nextDouble() < p ) {
+                ++depth;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Append a random expression of exactly the given depth to both the
+     * token stream and the assembly code, and evaluate it.
+     * @param text the token stream, in prefix order
+     * @param code the assembly code, in postfix order
+     * @param depth the depth of the expression
+     * @param constant if true, use no variables
+     * @return the expression's value
+     */
+    private int expression( StringBuilder text, StringBuilder code,
+                            int depth, boolean constant ) {
+        text.append( ' ' );
+        if ( depth == 0 ) {
+            if ( !constant && this.assignedCount > 0 &&
+                 this.random.nextDouble() < this.readShare ) {
+                int variable = this.assigned[ this.random.nextInt( this.assignedCount ) ];
+                text.append( 'v' ).append( variable );
+                code.append( "LOAD v" ).append( variable ).append( '\n' );
+                ++this.reads;
+                return this.values[ variable ];
+            }
+            int value = this.random.nextInt( 201 ) - 100;
+            text.append( value );
+            code.append( "PUSH " ).append( value ).append( '\n' );
+            return value;
+        }
+        constant = constant || this.random.nextDouble() < this.constantShare;
+        if ( !this.unary.isEmpty() && this.random.nextInt( 4 ) == 0 ) {
+            Operator op = this.unary.get( this.random.nextInt( this.unary.size() ) );
+            text.append( op.getSymbol() );
+            int value = expression( text, code, depth - 1, constant );
+            code.append( op.getMnemonic() ).append( '\n' );
+            return op.apply( value );
+        }
+        Operator op = this.binary.get( this.random.nextInt( this.binary.size() ) );
+        text.append( op.getSymbol() );
+        int shallow = this.random.nextInt( Math.min( depth, 3 ) );
+        boolean deepLeft = this.random.nextBoolean();
+        int left = expression( text, code, deepLeft ? depth - 1 : shallow, constant );
+        int textMark = text.length();
+        int codeMark = code.length();
+        long readMark = this.reads;
+        int right = expression( text, code, deepLeft ? shallow : depth - 1, constant );
+        if ( op.fails( right ) ) {
+            text.setLength( textMark );
+            code.setLength( codeMark );
+            this.reads = readMark;
+            right = this.random.nextInt( 9 ) + 1;
+            text.append( ' ' ).append( right );
+            code.append( "PUSH " ).append( right ).append( '\n' );
+        }
+        code.append( op.getMnemonic() ).append( '\n' );
+        return op.apply( left, right );
+    }
+
+    /**
+     * Write the expected symbol table, one "name value" line per
+     * variable, in order of first assignment.
+     * @param expected what the program should do
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public static void writeExpected( Expected expected, Writer out )
+            throws IOException {
+        for ( Map.Entry< String, Integer > entry:
+                expected.getVariables().entrySet() ) {
+            out.append( entry.getKey() ).append( ' ' )
+               .append( String.valueOf( entry.getValue() ) ).append( '\n' );
+        }
+    }
+
+    /**
+     * Run a generated program on every back end and compare what each
+     * one prints and leaves in its symbol table with what was expected.
+     * @param tokens the token stream file
+     * @param assembly the assembly code file
+     * @param expected what the program should do
+     * @return the number of back ends that disagree
+     * @throws IOException if a file cannot be read
+     */
+    public static int check( String tokens, String assembly, Expected expected )
+            throws IOException {
+        Output.Collector printed = new Output.Collector();
+        Output.capture( printed );
+        int failures = 0;
+        try {
+            ParseTree tree;
+            try ( BufferedReader in = Files.newBufferedReader(
+                    Paths.get( tokens ), StandardCharsets.UTF_8 ) ) {
+                tree = new ParseTree( new Lexer( in ) );
+            }
+            failures += compare( "tree interpreter", expected,
+                                 tree.run().toMap(), printed );
+
+            Machine machine = new Machine();
+            machine.run( tree.compile() );
+            failures += compare( "compiled tree", expected,
+                                 machine.getTable().toMap(), printed );
+
+            List< Machine.Instruction > code = InstructionReader.assemble( assembly );
+            machine.run( code );
+            failures += compare( "Machine", expected,
+                                 machine.getTable().toMap(), printed );
+
+            PackedProgram.lower( code ).run( machine );
+            failures += compare( "PackedProgram", expected,
+                                 machine.getTable().toMap(), printed );
+
+            RegisterProgram.translate( code ).run( machine );
+            failures += compare( "RegisterProgram", expected,
+                                 machine.getTable().toMap(), printed );
+
+            JitCompiler.Program compiled = JitCompiler.compile( code );
+            if ( compiled == null ) {
+                System.out.printf( "%-18s skipped\n", "JitCompiler" );
+            }
+            else {
+                compiled.run( machine );
+                failures += compare( "JitCompiler", expected,
+                                     machine.getTable().toMap(), printed );
+            }
+        }
+        finally {
+            Output.capture( null );
+        }
+        return failures;
+    }
+
+    /**
+     * Compare one back end's results with what was expected, and say
+     * whether they agree.
+     * @param name the back end
+     * @param expected what the program should do
+     * @param variables the back end's final symbol table
+     * @param printed the values it printed, which are then cleared
+     * @return 1 if they disagree, 0 if they agree
+     */
+    private static int compare( String name, Expected expected,
+                                Map< String, Integer > variables,
+                                Output.Collector printed ) {
+        boolean same = variables.equals( expected.getVariables() ) &&
+                       Arrays.equals( printed.getValues(), expected.getPrinted() );
+        printed.clear();
+        System.out.printf( "%-18s %s\n", name, same ? "ok" : "MISMATCH" );
+        return same ? 0 : 1;
+    }
+
+    /**
+     * Generate a program into files: name.txt holds the tokens,
+     * name.denm the assembly code and name.expected the final symbol
+     * table. With -check, also run it on every back end.
+     * @param args options, each followed by its value: -seed (default
+     *             42), -statements (1000), -max-depth (16), -avg-depth
+     *             (4), -variables (16), -reads (0.5), -prints (0.05),
+     *             -constants (0.1), and -ops, the operator symbols to
+     *             use separated by commas (all); then optionally -check;
+     *             then the name of the files to write
+     */
+    public static void main( String... args ) throws IOException {
+        long seed = 42;
+        int maxDepth = 16;
+        double averageDepth = 4;
+        String ops = null;
+        boolean check = false;
+        List< String[] > settings = new ArrayList<>();
+        int arg = 0;
+        for ( ; arg < args.length && args[ arg ].startsWith( "-" ); ++arg ) {
+            if ( args[ arg ].equals( "-check" ) ) {
+                check = true;
+            }
+            else if ( arg + 1 < args.length ) {
+                settings.add( new String[] { args[ arg ], args[ ++arg ] } );
+            }
+        }
+        if ( arg != args.length - 1 ) {
+            System.err.println( "Usage: java WorkloadGenerator [-seed n] " +
+                    "[-statements n] [-max-depth n] [-avg-depth x] " +
+                    "[-variables n] [-reads x] [-prints x] [-constants x] " +
+                    "[-ops symbols] [-check] name" );
+            System.exit( 1 );
+        }
+        for ( String[] setting: settings ) {
+            if ( setting[ 0 ].equals( "-seed" ) ) {
+                seed = Long.parseLong( setting[ 1 ] );
+            }
+        }
+        WorkloadGenerator generator = new WorkloadGenerator( seed );
+        for ( String[] setting: settings ) {
+            String value = setting[ 1 ];
+            switch ( setting[ 0 ] ) {
+                case "-seed": break;
+                case "-statements": generator.setStatements( Integer.parseInt( value ) ); break;
+                case "-max-depth": maxDepth = Integer.parseInt( value ); break;
+                case "-avg-depth": averageDepth = Double.parseDouble( value ); break;
+                case "-variables": generator.setVariables( Integer.parseInt( value ) ); break;
+                case "-reads": generator.setReadShare( Double.parseDouble( value ) ); break;
+                case "-prints": generator.setPrintShare( Double.parseDouble( value ) ); break;
+                case "-constants": generator.setConstantShare( Double.parseDouble( value ) ); break;
+                case "-ops": ops = value; break;
+                default:
+                    System.err.println( "Unknown option " + setting[ 0 ] );
+                    System.exit( 1 );
+            }
+        }
+        generator.setDepth( maxDepth, averageDepth );
+        if ( ops != null ) {
+            List< Operator > operators = new ArrayList<>();
+            for ( String symbol: ops.split( "," ) ) {
+                Operator op = Operator.forSymbol( symbol );
+                if ( op == null ) {
+                    System.err.println( "Unknown operator " + symbol );
+                    System.exit( 1 );
+                }
+                operators.add( op );
+            }
+            generator.setOperators( operators );
+        }
+
+        String name = args[ arg ];
+        Expected expected;
+        try ( Writer tokens = Files.newBufferedWriter( Paths.get( name + ".txt" ) );
+              Writer assembly = Files.newBufferedWriter( Paths.get( name + ".denm" ) );
+              Writer table = Files.newBufferedWriter( Paths.get( name + ".expected" ) ) ) {
+            expected = generator.generate( tokens, assembly );
+            writeExpected( expected, table );
+        }
+        System.out.println( "Wrote " + name + ".txt, " + name + ".denm and " +
+                            name + ".expected: " + expected.getWrites() +
+                            " writes, " + expected.getReads() + " reads, " +
+                            expected.getPrinted().length + " prints" );
+        if ( check ) {
+            int failures = check( name + ".txt", name + ".denm", expected );
+            System.out.println( failures + " failures" );
+            System.exit( failures == 0 ? 0 : 1 );
+        }
+    }
+}